@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+import bench.AssemblerCalls;
+
+public class BenchCalls implements AssemblerCalls {
+
+    @Override
+    public int advanceAll(String inputFileName, boolean lexer) {
+        CommandReader reader = lexer ? new Lexer(inputFileName) : new Parser(inputFileName);
+
+        while (reader.hasMoreCommands()) {
+            reader.advance();
+        }
+        return reader.getLineNumber();
+    }
+
+    @Override
+    public int addEntries(String[] symbols) {
+        SymbolTable symbolTable = new SymbolTable();
+        int added = 0;
+
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbolTable.addEntry(symbols[i], 16 + i)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public Object filledSymbolTable(String[] symbols) {
+        SymbolTable symbolTable = new SymbolTable();
+
+        for (int i = 0; i < symbols.length; i++) {
+            symbolTable.addEntry(symbols[i], 16 + i);
+        }
+        return symbolTable;
+    }
+
+    @Override
+    public int getAddresses(Object table, String[] symbols) {
+        SymbolTable symbolTable = (SymbolTable) table;
+        int sum = 0;
+
+        for (String symbol : symbols) {
+            if (symbolTable.contains(symbol)) {
+                sum += symbolTable.getAddress(symbol);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public int encodeInstructions(String[] comps, String[] dests, String[] jumps) {
+        int sum = 0;
+
+        for (int i = 0; i < comps.length; i++) {
+            sum += CInstructionMapper.instruction(comps[i], dests[i], jumps[i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public int decimalToBinary(int[] values) {
+        int sum = 0;
+
+        for (int value : values) {
+            sum += Assembler.decimalToBinary(value).charAt(15);
+        }
+        return sum;
+    }
+
+    @Override
+    public int assemble(String inputFileName, String... options) {
+        try {
+            return Assembler.assembleFile(inputFileName, AssemblerOptions.parse(options));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public short[] assembleRom(String inputFileName, String... options) {
+        AssemblerOptions parsed = AssemblerOptions.parse(options);
+
+        try {
+            Assembler.assembleFile(inputFileName, parsed, new PrintStream(OutputStream.nullOutputStream()));
+            return HackReader.read(parsed.outputFileName(inputFileName));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public int[] runToHalt(short[] rom, int[] ram, long cycles) {
+        HackEmulator hack = new HackEmulator(rom);
+
+        for (int i = 0; i < ram.length; i++) {
+            hack.writeRam(i, ram[i]);
+        }
+        hack.run(cycles);
+        if (!hack.isHalted() || hack.isPastEnd()) {
+            return null;
+        }
+        int[] state = new int[HackEmulator.RAM_SIZE + 1];
+
+        for (int i = 0; i < HackEmulator.RAM_SIZE; i++) {
+            state[i] = hack.readRam(i);
+        }
+        state[HackEmulator.RAM_SIZE] = hack.getD();
+        return state;
+    }
+
+    @Override
+    public int assembleInMemory(String source) {
+        return InMemoryAssembler.assemble(source).getRom().length;
+    }
+
+    @Override
+    public Object emulator(String source, boolean translate) {
+        return new HackEmulator(InMemoryAssembler.assemble(source).getRom(), translate);
+    }
+
+    @Override
+    public int emulate(Object emulator, long cycles) {
+        HackEmulator hack = (HackEmulator) emulator;
+
+        hack.run(cycles);
+        return hack.getD();
+    }
+}
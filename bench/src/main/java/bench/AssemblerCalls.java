@@ -0,0 +1,59 @@
+package bench;
+
+/**
+ * Operations measured by the benchmarks.
+ *
+ * <p>The assembler lives in the unnamed package, which JMH does not allow for benchmark classes
+ * and which named packages cannot import. {@code BenchCalls} (unnamed package, compiled into this
+ * module) implements this interface against the real classes; {@link #load()} finds it by name.
+ */
+public interface AssemblerCalls {
+
+    /** Reads every line of the file with Parser (or Lexer), returns the instruction count. */
+    int advanceAll(String inputFileName, boolean lexer);
+
+    /** Fresh SymbolTable, addEntry for every symbol, returns number of entries added. */
+    int addEntries(String[] symbols);
+
+    /** SymbolTable already holding every symbol, for {@link #getAddresses}. */
+    Object filledSymbolTable(String[] symbols);
+
+    /** contains + getAddress for every symbol (as secondPass does), returns sum of addresses. */
+    int getAddresses(Object symbolTable, String[] symbols);
+
+    /** CInstructionMapper word for every (comp, dest, jump), returns sum of words. */
+    int encodeInstructions(String[] comps, String[] dests, String[] jumps);
+
+    /** Assembler.decimalToBinary for every value, returns sum of last digits. */
+    int decimalToBinary(int[] values);
+
+    /** Assembler.assembleFile with the given command line options, returns instruction count. */
+    int assemble(String inputFileName, String... options);
+
+    /** Assembler.assembleFile with the given options (reports dropped), returns the ROM it wrote. */
+    short[] assembleRom(String inputFileName, String... options);
+
+    /**
+     * HackEmulator on the ROM with RAM from address 0 preset to ram, run for at most cycles
+     * instructions; returns the whole RAM followed by D, or null unless the end-of-program loop
+     * was reached.
+     */
+    int[] runToHalt(short[] rom, int[] ram, long cycles);
+
+    /** InMemoryAssembler.assemble on program text, returns ROM size. */
+    int assembleInMemory(String source);
+
+    /** HackEmulator loaded with the assembled program text (translated to bytecode if asked), for {@link #emulate}. */
+    Object emulator(String source, boolean translate);
+
+    /** Runs the emulator for the given number of instructions, returns D so the work can't be dropped. */
+    int emulate(Object emulator, long cycles);
+
+    static AssemblerCalls load() {
+        try {
+            return (AssemblerCalls) Class.forName("BenchCalls").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BenchCalls missing from benchmark jar", ex);
+        }
+    }
+}
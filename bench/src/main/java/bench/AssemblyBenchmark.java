@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole files to .hack: firstPass + secondPass, or the single-pass variants. The bigger sizes
+ * are corpora of several programs, since one program has to fit the 32K ROM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AssemblyBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int lines;
+
+    @Param({"two-pass", "single-pass", "single-pass-lexer", "parallel-lexer"})
+    public String mode;
+
+    private AssemblerCalls calls;
+    private List<String> inputs;
+    private String[] options;
+
+    @Setup
+    public void setUp() {
+        calls = AssemblerCalls.load();
+        inputs = Inputs.corpus(lines);
+        switch (mode) {
+            case "single-pass": options = new String[] {"--single-pass"}; break;
+            case "single-pass-lexer": options = new String[] {"--single-pass", "--lexer"}; break;
+            case "parallel-lexer": options = new String[] {"--parallel", "--lexer"}; break;
+            default: options = new String[0];
+        }
+    }
+
+    @Benchmark
+    public int assemble() {
+        int instructions = 0;
+
+        for (String input : inputs) {
+            instructions += calls.assemble(input, options);
+        }
+        return instructions;
+    }
+}
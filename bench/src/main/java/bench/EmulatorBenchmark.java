@@ -0,0 +1,64 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** HackEmulator on a loop that counts, sums, branches and draws, interpreted and translated (--aot); score is instructions per second. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EmulatorBenchmark {
+
+    private static final int CYCLES = 10_000_000;
+
+    // never halts: counts i up to 1000 and over again, adding it to sum and flipping a screen word
+    private static final String PROGRAM = String.join("\n",
+            "@i", "M=0",
+            "(LOOP)",
+            "@i", "M=M+1", "D=M",
+            "@sum", "M=D+M",
+            "@1000", "D=D-A",
+            "@SKIP", "D;JLT",
+            "@i", "M=0",
+            "(SKIP)",
+            "@SCREEN", "D=A",
+            "@i", "A=D+M", "M=!M",
+            "@LOOP", "0;JMP", "");
+
+    private AssemblerCalls calls;
+    private Object emulator;
+    private Object translated;
+
+    @Setup
+    public void setUp() {
+        calls = AssemblerCalls.load();
+        emulator = calls.emulator(PROGRAM, false);
+        translated = calls.emulator(PROGRAM, true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int run() {
+        return calls.emulate(emulator, CYCLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int runTranslated() {
+        return calls.emulate(translated, CYCLES);
+    }
+}
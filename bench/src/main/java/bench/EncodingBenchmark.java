@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** CInstructionMapper lookups and Assembler.decimalToBinary, per instruction. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private static final int COUNT = 4096;
+
+    private AssemblerCalls calls;
+    private String[][] fields;
+    private int[] values;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+
+        calls = AssemblerCalls.load();
+        fields = Inputs.cInstructions(COUNT, 7);
+        values = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = random.nextInt(32768);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int cInstructionMapper() {
+        return calls.encodeInstructions(fields[0], fields[1], fields[2]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int decimalToBinary() {
+        return calls.decimalToBinary(values);
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated .asm inputs, written once per size to target/bench-inputs and reused by later runs.
+ */
+public final class Inputs {
+
+    private static final String[] COMPS = {
+            "0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A", "D|A",
+            "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M"};
+    private static final String[] DESTS = {"M", "D", "MD", "A", "AM", "AD", "AMD"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+
+    private Inputs() {
+    }
+
+    /**
+     * Program with the given number of source lines (at most {@link ProgramGenerator#MAX_LINES})
+     * from {@link ProgramGenerator}, seeded with the line count.
+     */
+    public static String program(int lines) {
+        Path file = Paths.get("target", "bench-inputs", "program-" + lines + "-v" + ProgramGenerator.VERSION + ".asm");
+
+        if (!Files.exists(file)) {
+            new ProgramGenerator(lines, lines).write(file);
+        }
+        return file.toString();
+    }
+
+    /**
+     * Corpus with the given number of source lines in total, as programs that each fit the ROM
+     * ({@link ProgramGenerator#corpus}, seeded with the line count).
+     */
+    public static List<String> corpus(int lines) {
+        Path directory = Paths.get("target", "bench-inputs", "corpus-" + lines + "-v" + ProgramGenerator.VERSION);
+        List<String> files = new ArrayList<>();
+
+        for (Path file : ProgramGenerator.corpus(lines, lines, directory)) {
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    /** Distinct symbol names (labels and variables mixed). */
+    public static String[] symbols(int count, long seed) {
+        Random random = new Random(seed);
+        String[] symbols = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            symbols[i] = (random.nextBoolean() ? "LOOP_" : "var.") + i;
+        }
+        return symbols;
+    }
+
+    /** Random valid C-instruction fields; dest/jump are "NULL" where left out, as Parser returns them. */
+    public static String[][] cInstructions(int count, long seed) {
+        Random random = new Random(seed);
+        String[][] fields = new String[3][count];
+
+        for (int i = 0; i < count; i++) {
+            boolean jump = random.nextInt(5) == 0;
+            fields[0][i] = COMPS[random.nextInt(COMPS.length)];
+            fields[1][i] = jump ? "NULL" : DESTS[random.nextInt(DESTS.length)];
+            fields[2][i] = jump ? JUMPS[random.nextInt(JUMPS.length)] : "NULL";
+        }
+        return fields;
+    }
+}
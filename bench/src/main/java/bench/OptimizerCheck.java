@@ -0,0 +1,266 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Side-by-side check of {@code --optimize}: assembles seeded random programs with and without it,
+ * runs both ROMs in HackEmulator from the same RAM and compares RAM and D once both halted. Fails
+ * (exit status 1) if the optimized program ends differently, or doesn't end where the plain one does.
+ *
+ * <p>The programs are blocks of random instructions that end in jumps to other blocks, by label or
+ * by numeric address, with C-instructions between the A-instruction and the jump, jumps through
+ * addresses stored in R13 ({@code A=M}), and jumps to whatever a data constant left in A. Programs
+ * that don't halt within the cycle limit are skipped. Regressions found earlier run first.
+ *
+ * <p>Run from bench/: {@code java -cp target/benchmarks.jar bench.OptimizerCheck [--seed=1]
+ * [--programs=2000]}.
+ */
+public final class OptimizerCheck {
+
+    public static final long DEFAULT_SEED = 1;
+    public static final int DEFAULT_PROGRAMS = 2000;
+    public static final long MAX_CYCLES = 100_000;
+    // RAM presets per program, and how many words from address 0 each one sets
+    public static final int RUNS = 3;
+    public static final int PRESET_WORDS = 24;
+    // holds the addresses of jumps through A=M; only the stores before them write it, as a number
+    // found in RAM could be any address and optimizing only keeps the ones the program loads
+    private static final int JUMP_REGISTER = 13;
+
+    /** Option sets the optimized program is assembled with. */
+    private static final String[][] OPTIMIZED = {{"--optimize"}, {"--optimize", "--pipeline"}};
+
+    /** Programs that were miscompiled once, with the RAM they went wrong from. */
+    private static final String[][] REGRESSIONS = {
+            // jump target loaded before a C-instruction that keeps A (@4, D=D, D;JGT)
+            {"@R1\nM=0\n@R1\nM=0\n@R1\nM=M+1\n@R0\nMD=M-1\n@4\nD=D\nD;JGT\n@11\n0;JMP\n", "3"}};
+
+    private static final String[] COMPS = {
+            "0", "1", "-1", "D", "A", "!D", "-D", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A", "D|A",
+            "M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M", "!M", "-M"};
+    // comps that don't read A or M
+    private static final String[] COMPS_NO_A = {"0", "1", "-1", "D", "!D", "-D", "D+1", "D-1"};
+    private static final String[] DESTS = {"", "M", "D", "MD", "A", "AM", "AD", "AMD"};
+    // dests that keep A
+    private static final String[] DESTS_NO_A = {"", "M", "D", "MD"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+
+    private OptimizerCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = DEFAULT_SEED;
+        int programs = DEFAULT_PROGRAMS;
+
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--programs=")) {
+                programs = Integer.parseInt(arg.substring("--programs=".length()));
+            } else {
+                System.err.println("Unknown option " + arg + " (use --seed=N or --programs=N)");
+                System.exit(1);
+            }
+        }
+
+        AssemblerCalls calls = AssemblerCalls.load();
+        Path directory = Files.createTempDirectory("optimizer-check");
+        Path input = directory.resolve("Check.asm");
+        int failures = 0;
+        int compared = 0;
+        int shortened = 0;
+
+        try {
+            for (String[] regression : REGRESSIONS) {
+                int[] ram = Arrays.stream(regression[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                Result result = check(calls, input, regression[0], List.of(ram));
+
+                failures += result.failures;
+                compared += result.compared;
+            }
+            for (long program = seed; program < seed + programs; program++) {
+                Random random = new Random(program);
+                String source = generate(random);
+                List<int[]> presets = new ArrayList<>();
+
+                for (int run = 0; run < RUNS; run++) {
+                    int[] ram = new int[PRESET_WORDS];
+
+                    for (int i = 0; i < ram.length; i++) {
+                        ram[i] = i == JUMP_REGISTER ? 0 : random.nextInt(21) - 10;
+                    }
+                    presets.add(ram);
+                }
+                Result result = check(calls, input, source, presets);
+
+                if (result.failures > 0) {
+                    System.out.println("seed " + program + ":");
+                    System.out.print(source);
+                }
+                failures += result.failures;
+                compared += result.compared;
+                shortened += result.shortened ? 1 : 0;
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(directory.resolve("Check.hack"));
+            Files.deleteIfExists(directory);
+        }
+
+        System.out.println(programs + " programs (" + shortened + " shortened), " + compared + " runs compared, "
+                + failures + " differ");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Outcome of one program: runs compared, runs that differ, whether optimizing removed anything. */
+    private static final class Result {
+        int compared;
+        int failures;
+        boolean shortened;
+    }
+
+    private static Result check(AssemblerCalls calls, Path input, String source, List<int[]> presets) throws IOException {
+        Files.writeString(input, source);
+        short[] plain = calls.assembleRom(input.toString());
+        Result result = new Result();
+
+        for (String[] options : OPTIMIZED) {
+            short[] optimized = calls.assembleRom(input.toString(), options);
+
+            result.shortened |= optimized.length < plain.length;
+            for (int[] ram : presets) {
+                int[] expected = calls.runToHalt(plain, ram, MAX_CYCLES);
+
+                if (expected == null) {
+                    continue;
+                }
+                int[] actual = calls.runToHalt(optimized, ram, MAX_CYCLES);
+
+                result.compared++;
+                if (actual == null || !Arrays.equals(expected, actual)) {
+                    result.failures++;
+                    System.out.println(String.join(" ", options) + " from RAM " + Arrays.toString(ram) + ": "
+                            + (actual == null ? "doesn't halt" : "ends with different RAM or D"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Random program text. Block jumps are written as "#b" (numeric address of block b) or "?b"
+     * (its label if it has one, else its address) and filled in once the addresses are known.
+     */
+    static String generate(Random random) {
+        int blocks = 2 + random.nextInt(12);
+        List<String> lines = new ArrayList<>();
+        List<Integer> blockStarts = new ArrayList<>();
+        Set<Integer> labelled = new HashSet<>();
+
+        for (int b = 0; b < blocks; b++) {
+            if (random.nextInt(4) != 0) {
+                lines.add("(L" + b + ")");
+                labelled.add(b);
+            }
+            blockStarts.add(lines.size());
+            lines.add("@" + data(random));
+
+            int body = random.nextInt(10);
+            for (int k = 0; k < body; k++) {
+                int kind = random.nextInt(12);
+
+                if (kind < 3) {
+                    lines.add("@" + data(random));
+                } else if (kind < 4) {
+                    lines.add("@v" + random.nextInt(4));
+                } else if (kind < 5) {
+                    // jump to whatever the last A-instruction loaded as data
+                    lines.add(pick(random, COMPS_NO_A) + ";" + pick(random, JUMPS));
+                } else if (kind < 6) {
+                    // address for a later jump through R13
+                    lines.add("#" + random.nextInt(blocks + 1));
+                    lines.add("D=A");
+                    lines.add("@R" + JUMP_REGISTER);
+                    lines.add("M=D");
+                } else {
+                    lines.add(dest(pick(random, DESTS)) + pick(random, COMPS));
+                }
+            }
+
+            int target = random.nextInt(blocks + 1);
+            int kind = random.nextInt(10);
+            if (kind < 2) {
+                lines.add("@R" + JUMP_REGISTER);
+                lines.add("A=M");
+                lines.add("0;JMP");
+            } else {
+                // a label target moves, so only a numeric one may serve as data on the way to the jump
+                boolean numeric = random.nextBoolean();
+                int keeping = kind < 6 ? 0 : 1 + random.nextInt(2);
+
+                lines.add((numeric ? "#" : "?") + target);
+                for (int k = 0; k < keeping; k++) {
+                    lines.add(numeric ? dest(pick(random, DESTS_NO_A)) + pick(random, COMPS) : "D=" + pick(random, COMPS_NO_A));
+                }
+                String jump = pick(random, JUMPS);
+                lines.add(numeric && random.nextInt(4) == 0 ? "M=D;" + jump : pick(random, COMPS_NO_A) + ";" + jump);
+                if (jump.equals("JMP") && random.nextInt(3) == 0) {
+                    // unreachable unless a numeric jump lands here
+                    lines.add("@7");
+                    lines.add("M=1");
+                }
+            }
+        }
+        blockStarts.add(lines.size());
+        lines.add("(END)");
+        lines.add("@END");
+        lines.add("0;JMP");
+        labelled.add(blocks);
+
+        int[] addresses = new int[lines.size()];
+        int address = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            addresses[i] = address;
+            if (!lines.get(i).startsWith("(")) {
+                address++;
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            if (line.startsWith("#") || line.startsWith("?")) {
+                int block = Integer.parseInt(line.substring(1));
+                boolean label = line.startsWith("?") && labelled.contains(block);
+
+                // END's label is the line before the block start, both have the same address
+                line = label ? "@" + (block == blocks ? "END" : "L" + block) : "@" + addresses[blockStarts.get(block)];
+            }
+            source.append(line).append('\n');
+        }
+        return source.toString();
+    }
+
+    private static int data(Random random) {
+        int address = random.nextInt(15);
+
+        return address < JUMP_REGISTER ? address : address + 1;
+    }
+
+    private static String dest(String dest) {
+        return dest.isEmpty() ? "" : dest + "=";
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parser.advance (or Lexer.advance) over whole generated files (a corpus of several programs for the bigger sizes). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int lines;
+
+    @Param({"parser", "lexer"})
+    public String reader;
+
+    private AssemblerCalls calls;
+    private List<String> inputs;
+
+    @Setup
+    public void setUp() {
+        calls = AssemblerCalls.load();
+        inputs = Inputs.corpus(lines);
+    }
+
+    @Benchmark
+    public int advance() {
+        int instructions = 0;
+
+        for (String input : inputs) {
+            instructions += calls.advanceAll(input, reader.equals("lexer"));
+        }
+        return instructions;
+    }
+}
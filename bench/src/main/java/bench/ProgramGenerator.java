@@ -0,0 +1,307 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of valid Hack assembly, shaped like compiled VM code: stack pushes and pops
+ * through SP, arithmetic, compares that branch to labels, calls and returns through R13, plus
+ * plain C-instructions, label definitions, comments, blank lines and mixed indentation. The same
+ * seed and settings always give the same text (java.util.Random is specified bit for bit), so
+ * corpora can be checked against stored digests.
+ *
+ * <p>A program has at most {@link #MAX_LINES} lines. Every line holds at most one instruction
+ * or label, so each program fits the 32K ROM and every label fits an A-instruction. Bigger
+ * inputs are corpora of several programs ({@link #corpus}).
+ *
+ * <p>Command line: {@code java -cp benchmarks.jar bench.ProgramGenerator LINES [SEED] [OUT]};
+ * OUT is an .asm file, or the directory of the corpus if LINES is more than {@link #MAX_LINES}.
+ */
+public final class ProgramGenerator {
+
+    /** Bumped whenever the output for a seed changes, so cached corpora are not reused. */
+    public static final int VERSION = 1;
+
+    /** Defaults: one label every 40 lines, one variable per 250 lines (at most 2000). */
+    public static final int DEFAULT_LINES_PER_LABEL = 40;
+    public static final int DEFAULT_LINES_PER_VARIABLE = 250;
+    public static final int MAX_VARIABLES = 2000;
+
+    /** Most lines of one program: the words of the Hack ROM. */
+    public static final int MAX_LINES = 1 << 15;
+
+    private static final String[] COMPS = {
+            "0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A", "D|A",
+            "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M"};
+    private static final String[] DESTS = {"M", "D", "MD", "A", "AM", "AD", "AMD"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] BINARY = {"D+M", "M-D", "D&M", "D|M"};
+    private static final String[] SEGMENTS = {"LCL", "ARG", "THIS", "THAT"};
+    private static final String[] INDENTS = {"", "", "    ", "    ", "\t", "  "};
+
+    private final Random random;
+    private final int lines;
+    private final int labels;
+    private final int variables;
+    private final String prefix;
+
+    private int written;
+    private int nextLabel;
+
+    /** Generator with the default mix. */
+    public ProgramGenerator(long seed, int lines) {
+        this(seed, lines, DEFAULT_LINES_PER_LABEL, DEFAULT_LINES_PER_VARIABLE);
+    }
+
+    /** Generator with {@code lines / linesPerLabel} labels and {@code lines / linesPerVariable} variables (at least one of each). */
+    public ProgramGenerator(long seed, int lines, int linesPerLabel, int linesPerVariable) {
+        if (lines < 1 || lines > MAX_LINES) {
+            throw new IllegalArgumentException("A program has 1 to " + MAX_LINES + " lines, not " + lines
+                    + " (generate a corpus for more)");
+        }
+        this.random = new Random(seed);
+        this.lines = lines;
+        this.labels = Math.max(1, lines / linesPerLabel);
+        this.variables = Math.min(MAX_VARIABLES, Math.max(1, lines / linesPerVariable));
+        this.prefix = "f" + Long.toHexString(seed & 0xFFFF) + ".";
+    }
+
+    /** Writes exactly the generator's number of lines; every label used is defined once. */
+    public void generate(Writer out) throws IOException {
+        written = 0;
+        nextLabel = 0;
+        while (written < lines) {
+            int kind = random.nextInt(100);
+
+            // like VM translator output, many snippets start with the command they came from
+            if (random.nextInt(3) == 0) {
+                line(out, "// " + comment());
+            }
+
+            if (kind < 22) {
+                pushConstant(out);
+            } else if (kind < 34) {
+                pushSegment(out);
+            } else if (kind < 46) {
+                popVariable(out);
+            } else if (kind < 56) {
+                binary(out);
+            } else if (kind < 64) {
+                compare(out);
+            } else if (kind < 68) {
+                goTo(out);
+            } else if (kind < 71) {
+                call(out);
+            } else if (kind < 73) {
+                returnFromCall(out);
+            } else if (kind < 85) {
+                plain(out);
+            } else if (kind < 93) {
+                line(out, "// " + comment());
+            } else {
+                line(out, random.nextInt(4) == 0 ? "   " : "");
+            }
+        }
+    }
+
+    /** Writes the program to file (through a temporary file, so a crash never leaves half a corpus). */
+    public void write(Path file) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+
+            try (BufferedWriter out = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+                generate(out);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Corpus of {@code lines} lines in total: programs of {@link #MAX_LINES} lines (the last one
+     * shorter) named part-000.asm, part-001.asm, ... in directory, each with its own seed drawn
+     * from {@code seed}. Parts already in the directory are kept, so pass a directory named
+     * after seed, lines and {@link #VERSION}.
+     *
+     * @return the files in program order
+     */
+    public static List<Path> corpus(long seed, int lines, Path directory) {
+        Random seeds = new Random(seed);
+        List<Path> files = new ArrayList<>();
+
+        for (int from = 0; from < lines; from += MAX_LINES) {
+            Path file = directory.resolve(String.format("part-%03d.asm", files.size()));
+            long partSeed = seeds.nextLong();
+
+            if (!Files.exists(file)) {
+                new ProgramGenerator(partSeed, Math.min(MAX_LINES, lines - from)).write(file);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: bench.ProgramGenerator LINES [SEED] [OUT]");
+            System.exit(1);
+        }
+        int lines = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : lines;
+        String name = "gen-" + lines + "-" + seed;
+
+        if (lines > MAX_LINES) {
+            Path directory = Paths.get(args.length > 2 ? args[2] : name);
+            List<Path> files = corpus(seed, lines, directory);
+
+            System.out.println("Wrote " + lines + " lines as " + files.size() + " programs to " + directory);
+        } else {
+            Path file = Paths.get(args.length > 2 ? args[2] : name + ".asm");
+
+            new ProgramGenerator(seed, lines).write(file);
+            System.out.println("Wrote " + lines + " lines to " + file);
+        }
+    }
+
+    private void pushConstant(Writer out) throws IOException {
+        line(out, "@" + constant());
+        line(out, "D=A");
+        push(out);
+    }
+
+    private void pushSegment(Writer out) throws IOException {
+        line(out, "@" + random.nextInt(8));
+        line(out, "D=A");
+        line(out, "@" + SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        line(out, "A=D+M");
+        line(out, "D=M");
+        push(out);
+    }
+
+    private void popVariable(Writer out) throws IOException {
+        pop(out);
+        line(out, "@" + variable());
+        line(out, "M=D" + inlineComment());
+    }
+
+    private void binary(Writer out) throws IOException {
+        pop(out);
+        line(out, "A=A-1");
+        line(out, "M=" + BINARY[random.nextInt(BINARY.length)]);
+    }
+
+    private void compare(Writer out) throws IOException {
+        pop(out);
+        line(out, "@" + label());
+        line(out, "D;" + JUMPS[random.nextInt(JUMPS.length - 1)]);
+    }
+
+    private void goTo(Writer out) throws IOException {
+        line(out, "@" + label());
+        line(out, "0;JMP" + inlineComment());
+    }
+
+    private void call(Writer out) throws IOException {
+        String target = label();
+
+        line(out, "@" + target);
+        line(out, "D=A");
+        line(out, "@R13");
+        line(out, "M=D");
+        line(out, "@" + label());
+        line(out, "0;JMP");
+    }
+
+    private void returnFromCall(Writer out) throws IOException {
+        line(out, "@R13");
+        line(out, "A=M");
+        line(out, "0;JMP");
+    }
+
+    private void plain(Writer out) throws IOException {
+        if (random.nextInt(10) == 0) {
+            line(out, COMPS[random.nextInt(COMPS.length)] + ";" + JUMPS[random.nextInt(JUMPS.length)]);
+        } else {
+            line(out, DESTS[random.nextInt(DESTS.length)] + "=" + COMPS[random.nextInt(COMPS.length)] + inlineComment());
+        }
+    }
+
+    private void push(Writer out) throws IOException {
+        line(out, "@SP");
+        line(out, "A=M");
+        line(out, "M=D");
+        line(out, "@SP");
+        line(out, "M=M+1");
+    }
+
+    private void pop(Writer out) throws IOException {
+        line(out, "@SP");
+        line(out, "AM=M-1");
+        line(out, "D=M");
+    }
+
+    /** Writes one line, first the label definitions due by this point (spread evenly over the program). */
+    private void line(Writer out, String text) throws IOException {
+        while (written < lines && nextLabel < labels && (long) nextLabel * lines / labels <= written) {
+            emit(out, "(" + labelName(nextLabel++) + ")");
+        }
+        if (written < lines) {
+            emit(out, text.isEmpty() || text.startsWith("(") ? text : INDENTS[random.nextInt(INDENTS.length)] + text);
+        }
+    }
+
+    private void emit(Writer out, String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+        written++;
+    }
+
+    /** A label of this program; all are defined by the end, so forward references are fine. */
+    private String label() {
+        return labelName(random.nextInt(labels));
+    }
+
+    private String labelName(int index) {
+        return prefix + "L" + index;
+    }
+
+    private String variable() {
+        return prefix + "v" + random.nextInt(variables);
+    }
+
+    /** Small constants mostly, like compiled code; now and then a screen address or a big number. */
+    private int constant() {
+        int kind = random.nextInt(10);
+
+        if (kind < 7) {
+            return random.nextInt(16);
+        }
+        if (kind < 9) {
+            return 16384 + random.nextInt(8192);
+        }
+        return random.nextInt(32768);
+    }
+
+    private String inlineComment() {
+        return random.nextInt(8) == 0 ? " // " + comment() : "";
+    }
+
+    private String comment() {
+        return random.nextBoolean() ? "push " + SEGMENTS[random.nextInt(SEGMENTS.length)].toLowerCase() + " " + random.nextInt(8)
+                : "line " + written;
+    }
+}
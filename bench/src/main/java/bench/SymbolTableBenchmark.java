@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** SymbolTable.addEntry and contains/getAddress with many symbols. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SymbolTableBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int symbols;
+
+    private AssemblerCalls calls;
+    private String[] names;
+    private Object filled;
+
+    @Setup
+    public void setUp() {
+        calls = AssemblerCalls.load();
+        names = Inputs.symbols(symbols, 42);
+        filled = calls.filledSymbolTable(names);
+    }
+
+    @Benchmark
+    public int addEntry() {
+        return calls.addEntries(names);
+    }
+
+    @Benchmark
+    public int getAddress() {
+        return calls.getAddresses(filled, names);
+    }
+}
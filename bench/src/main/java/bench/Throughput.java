@@ -0,0 +1,286 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * End-to-end throughput regression check: assembles corpora from {@link ProgramGenerator} (one
+ * program of 20K lines, then 200K and 1M lines as several programs that each fit the ROM) in
+ * every mode, checks their ROMs against the stored SHA-256 digest and reports lines/s, MB/s,
+ * peak heap and allocation rate. Fails (exit status 1) if a digest differs or a mode's
+ * lines/s drops more than the tolerance below the stored baseline.
+ *
+ * <p>Run from bench/: {@code java -cp target/benchmarks.jar bench.Throughput [--update]
+ * [--tolerance=0.25] [--runs=3] [--baseline=throughput-baseline.properties]}.
+ * {@code --update} writes the measured numbers and digests as the new baseline; baselines
+ * are only comparable on the machine they were measured on.
+ */
+public final class Throughput {
+
+    public static final String DEFAULT_BASELINE = "throughput-baseline.properties";
+    public static final double DEFAULT_TOLERANCE = 0.25;
+    public static final int DEFAULT_RUNS = 3;
+    public static final long WARMUP_NANOS = 1_000_000_000L;
+    // short assemblies are repeated until a measured run lasts this long
+    public static final long MIN_RUN_NANOS = 250_000_000L;
+
+    /** Lines (in total) and seed of every corpus. */
+    private static final long[][] CORPORA = {{20_000, 1}, {200_000, 2}, {1_000_000, 3}};
+
+    /** Mode name, then the assembler options it runs with. */
+    private static final String[][] MODES = {
+            {"two-pass"},
+            {"lexer", "--lexer"},
+            {"single-pass", "--single-pass"},
+            {"parallel", "--parallel"}};
+
+    private Throughput() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path baselineFile = Paths.get(DEFAULT_BASELINE);
+        double tolerance = DEFAULT_TOLERANCE;
+        int runs = DEFAULT_RUNS;
+        boolean update = false;
+
+        for (String arg : args) {
+            if (arg.equals("--update")) {
+                update = true;
+            } else if (arg.startsWith("--tolerance=")) {
+                tolerance = Double.parseDouble(arg.substring("--tolerance=".length()));
+            } else if (arg.startsWith("--runs=")) {
+                runs = Math.max(1, Integer.parseInt(arg.substring("--runs=".length())));
+            } else if (arg.startsWith("--baseline=")) {
+                baselineFile = Paths.get(arg.substring("--baseline=".length()));
+            } else {
+                System.err.println("Unknown option " + arg
+                        + " (use --update, --tolerance=FRACTION, --runs=N or --baseline=FILE)");
+                System.exit(1);
+            }
+        }
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselineFile)) {
+            try (InputStream in = Files.newInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+        } else if (!update) {
+            System.out.println("No baseline " + baselineFile + ", only reporting (write one with --update)");
+        }
+
+        AssemblerCalls calls = AssemblerCalls.load();
+        Map<String, String> measured = new TreeMap<>();
+        List<String> failures = new ArrayList<>();
+
+        // every mode once through the JIT before anything is timed, so the first corpus isn't
+        // measured while the compiler threads still work on code the later modes share
+        List<Path> warmup = corpusFiles(CORPORA[0]);
+        for (String[] mode : MODES) {
+            long end = System.nanoTime() + WARMUP_NANOS;
+            do {
+                assembleAll(calls, warmup, Arrays.copyOfRange(mode, 1, mode.length));
+            } while (System.nanoTime() < end);
+        }
+
+        System.out.printf("%-14s %-12s %12s %8s %10s %12s  %s%n",
+                "corpus", "mode", "lines/s", "MB/s", "peak heap", "alloc MB/s", "result");
+        for (long[] corpus : CORPORA) {
+            int lines = (int) corpus[0];
+            String name = "gen-" + lines;
+            List<Path> inputs = corpusFiles(corpus);
+            long bytes = 0;
+
+            for (Path input : inputs) {
+                bytes += Files.size(input);
+            }
+
+            for (String[] mode : MODES) {
+                String key = name + "." + mode[0];
+                String[] options = Arrays.copyOfRange(mode, 1, mode.length);
+                Measurement best = null;
+
+                // warm-up (the corpus at least once, for at least WARMUP_NANOS) lets the JIT settle and isn't
+                // counted; it also tells how many times a run has to assemble it to last MIN_RUN_NANOS
+                long warmupStart = System.nanoTime();
+                int warmups = 0;
+                do {
+                    assembleAll(calls, inputs, options);
+                    warmups++;
+                } while (System.nanoTime() - warmupStart < WARMUP_NANOS);
+                long average = (System.nanoTime() - warmupStart) / warmups;
+                int repeats = (int) Math.max(1, (MIN_RUN_NANOS + average - 1) / Math.max(1, average));
+
+                for (int run = 0; run < runs; run++) {
+                    Measurement measurement = measure(calls, inputs, options, repeats);
+
+                    if (best == null || measurement.nanos < best.nanos) {
+                        best = measurement;
+                    }
+                }
+
+                String digest = digest(inputs);
+                long linesPerSecond = lines * 1_000_000_000L / best.nanos;
+                String expectedDigest = baseline.getProperty(name + ".digest");
+                String floor = baseline.getProperty(key + ".linesPerSecond");
+                String result = "ok";
+
+                if (measured.containsKey(name + ".digest") && !measured.get(name + ".digest").equals(digest)) {
+                    result = "FAILED: ROM differs from the other modes";
+                } else if (!update && expectedDigest != null && !expectedDigest.equals(digest)) {
+                    result = "FAILED: ROM digest " + digest.substring(0, 12) + " expected " + expectedDigest.substring(0, 12);
+                } else if (!update && floor != null && linesPerSecond < Long.parseLong(floor) * (1 - tolerance)) {
+                    result = "FAILED: below baseline " + floor + " lines/s";
+                } else if (!update && floor == null) {
+                    result = "no baseline";
+                }
+                if (result.startsWith("FAILED")) {
+                    failures.add(key + ": " + result);
+                }
+                measured.put(name + ".digest", digest);
+                measured.put(key + ".linesPerSecond", Long.toString(linesPerSecond));
+
+                System.out.printf("%-14s %-12s %,12d %8.1f %7d MB %12s  %s%n", name, mode[0], linesPerSecond,
+                        bytes * 1000.0 / best.nanos, best.peakHeap >> 20,
+                        best.allocated < 0 ? "n/a" : String.format("%,d", best.allocated * 1000L / best.nanos), result);
+            }
+        }
+
+        if (update) {
+            writeBaseline(baselineFile, measured, tolerance);
+            System.out.println("Wrote baseline " + baselineFile);
+        }
+        if (!failures.isEmpty()) {
+            System.out.println(failures.size() + " throughput check(s) failed:");
+            failures.forEach(failure -> System.out.println("  " + failure));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One run of repeated assemblies of the corpus: time per assembly of all its files, the peak
+     * heap the run reached and the bytes allocated per assembly (-1 if the JVM can't tell).
+     */
+    private static Measurement measure(AssemblerCalls calls, List<Path> inputs, String[] options, int repeats) {
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap.add(pool);
+            }
+        }
+        System.gc();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            assembleAll(calls, inputs, options);
+        }
+        long nanos = Math.max(1, (System.nanoTime() - start) / repeats);
+        long allocatedAfter = allocatedBytes();
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return new Measurement(nanos, peakHeap, allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / repeats);
+    }
+
+    /**
+     * Bytes allocated so far by all live threads (HotSpot's extension of ThreadMXBean), -1 if unsupported.
+     * Threads that end during a run drop out of the sum, the worker pools of the assembler live on.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /** Assembles every file of a corpus in order, as separate programs. */
+    private static void assembleAll(AssemblerCalls calls, List<Path> inputs, String[] options) {
+        for (Path input : inputs) {
+            calls.assemble(input.toString(), options);
+        }
+    }
+
+    /** Files of the generated corpus {lines, seed}, written once to target/bench-inputs. */
+    private static List<Path> corpusFiles(long[] corpus) {
+        Path directory = Paths.get("target", "bench-inputs",
+                "throughput-" + corpus[0] + "-" + corpus[1] + "-v" + ProgramGenerator.VERSION);
+
+        return ProgramGenerator.corpus(corpus[1], (int) corpus[0], directory);
+    }
+
+    private static Path outputFile(Path input) {
+        String name = input.getFileName().toString();
+
+        return input.resolveSibling(name.substring(0, name.length() - ".asm".length()) + ".hack");
+    }
+
+    /** SHA-256 of the ROMs of all inputs, one after the other. */
+    private static String digest(List<Path> inputs) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for (Path input : inputs) {
+                digest.update(Files.readAllBytes(outputFile(input)));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /** Writes keys in sorted order without the timestamp Properties.store() adds, so baseline diffs stay small. */
+    private static void writeBaseline(Path file, Map<String, String> measured, double tolerance) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# bench.Throughput baseline, written with --update on the machine it is checked on.\n");
+            out.write("# <corpus>.digest: SHA-256 of the ROMs the generated corpus assembles to (any machine).\n");
+            out.write("# <corpus>.<mode>.linesPerSecond: best of the measured runs; a check fails below it minus the\n");
+            out.write("# tolerance (" + tolerance + " when written).\n");
+            for (Map.Entry<String, String> entry : measured.entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static final class Measurement {
+        final long nanos;
+        final long peakHeap;
+        final long allocated;
+
+        Measurement(long nanos, long peakHeap, long allocated) {
+            this.nanos = nanos;
+            this.peakHeap = peakHeap;
+            this.allocated = allocated;
+        }
+    }
+}
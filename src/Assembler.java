@@ -1,97 +1,402 @@
-import java.io.FileOutputStream;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Map;
 
 public class Assembler {
     // DESCRIPTION: Initializes and runs the first and second pass of the assembler
+    // (or the single pass over an in-memory instruction list with --single-pass);
+    // several files, directories or globs are assembled in parallel by BatchAssembler,
+    // --incremental reuses the cache of the last run and --watch keeps assembling on changes,
+    // --pipeline runs that pass as read, parse, encode and write threads (PipelinedAssembler);
+    // --optimize shrinks the program with PeepholeOptimizer first, --stats prints AssemblyStats of every file,
+    // --source-map writes the source line of every ROM address next to the output (SourceMap),
+    // --run executes the program in HackEmulator (--aot as bytecode from HackTranslator) and --profile counts
+    // where its cycles went (HackProfiler);
+    // --disassemble turns machine code back into assembly and --verify checks that round trip (RoundTripVerifier);
+    // --link assembles every input as a relocatable module (ObjectModule) and links them into one ROM (HackLinker);
+    // if an assembler daemon is running (--daemon) the work is sent to it instead
     // PRECONDITION: An .asm file is present and is readable
     // POSTCONDITION: Generates a corresponding .hack file with machine code
     public static void main(String[] args) {
-        String inputFileName = "Rect.asm";
-        String outputFileName = inputFileName.replace(".asm", ".hack");
-        PrintWriter outputFile = null;
-        SymbolTable symbolTable;
+        AssemblerOptions options = null;
 
         try {
-            outputFile = new PrintWriter(new FileOutputStream(outputFileName));
-        } catch (FileNotFoundException ex) {
-            System.err.println("Could not open output file " + outputFileName);
-            System.exit(0);
+            options = AssemblerOptions.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
         }
 
-        symbolTable = new SymbolTable();
+        if (options.getDaemon() != null) {
+            System.exit(AssemblerDaemon.serve(options));
+        }
+        if (options.isStopDaemon()) {
+            System.exit(AssemblerDaemon.stop());
+        }
+
+        int status = AssemblerDaemon.tryRemote(args, options);
+
+        if (status < 0) {
+            status = run(options, System.out, System.err);
+        }
+        System.exit(status);
+    }
+
+
+    // DESCRIPTION: Runs the command line in this process (main() and daemon requests)
+    // PRECONDITION: options parsed, inputs readable
+    // POSTCONDITION: Output files written, messages printed to out/err, returns exit status (1 if any file failed)
+    public static int run(AssemblerOptions options, PrintStream out, PrintStream err) {
+        if (options.getInputs().isEmpty()) {
+            options.getInputs().add("Rect.asm");
+        }
+
+        if (options.isDisassemble()) {
+            return HackDisassembler.run(options, out, err) == 0 ? 0 : 1;
+        }
+        if (options.isVerify()) {
+            return RoundTripVerifier.run(options, out) == 0 ? 0 : 1;
+        }
+        if (options.getLink() != null) {
+            return HackLinker.run(options, out) == 0 ? 0 : 1;
+        }
+
+        if (options.isRun()) {
+            if (options.isWatch() || BatchAssembler.isBatch(options.getInputs())) {
+                err.println("--run takes a single .asm, .hack or .bin file");
+                return 1;
+            }
+            return runProgram(options.getInputs().get(0), options, out, err);
+        }
+
+        if (options.isWatch()) {
+            try {
+                IncrementalAssembler.watch(options);
+            } catch (IOException ex) {
+                err.println("Could not watch inputs: " + ex.getMessage());
+                return 1;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+
+        if (BatchAssembler.isBatch(options.getInputs())) {
+            return BatchAssembler.run(options, out) == 0 ? 0 : 1;
+        }
 
-        firstPass(inputFileName, symbolTable);
+        return assembleAndReport(options.getInputs().get(0), options, out, err);
+    }
 
-        secondPass(inputFileName, symbolTable, outputFile);
 
-        outputFile.close();
+    // DESCRIPTION: Assembles one file for run(), printing every error of the source to err (the --optimize and --pipeline reports to out)
+    // PRECONDITION: options parsed
+    // POSTCONDITION: Output file written, returns exit status
+    private static int assembleAndReport(String inputFileName, AssemblerOptions options, PrintStream out,
+                                         PrintStream err) {
+        try {
+            assembleFile(inputFileName, options, out);
+        } catch (AssemblyException ex) {
+            for (Diagnostic diagnostic : ex.getDiagnostics()) {
+                err.println(diagnostic);
+            }
+            err.println(ex.getMessage());
+            return 1;
+        } catch (IOException ex) {
+            err.println(ex.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+
+    // DESCRIPTION: Runs machine code in the emulator (--run, translated first with --aot): .hack and .bin files as they are,
+    // .asm files after assembling them; prints how it ended, the registers and R0-R15
+    // (with --profile, the HackProfiler report after them, using the source map next to the ROM if there is one)
+    // PRECONDITION: options.isRun()
+    // POSTCONDITION: Screen written to --screen file if given, returns exit status
+    private static int runProgram(String inputFileName, AssemblerOptions options, PrintStream out, PrintStream err) {
+        String romFileName = inputFileName;
+
+        if (!AssemblerOptions.isMachineCode(inputFileName)) {
+            int status = assembleAndReport(inputFileName, options, out, err);
+            if (status != 0) {
+                return status;
+            }
+            romFileName = options.outputFileName(inputFileName);
+        }
+
+        try {
+            short[] rom = HackReader.read(romFileName);
+            long translateStart = System.nanoTime();
+            HackEmulator emulator = new HackEmulator(rom, options.isAot());
+            HackProfiler profiler = null;
+
+            if (options.isAot()) {
+                HackTranslator translator = emulator.getTranslator();
+                String methods = translator.getGroupCount() == 1 ? " method (" : " methods (";
+
+                out.println(romFileName + ": translated " + translator.getBlockCount() + " blocks into "
+                        + translator.getGroupCount() + methods + translator.getCodeSize() / 1024 + " KB) in "
+                        + (System.nanoTime() - translateStart) / 1_000_000 + " ms");
+            }
+
+            for (Map.Entry<Integer, Integer> value : options.getRamValues().entrySet()) {
+                emulator.writeRam(value.getKey(), value.getValue());
+            }
+            if (options.getProfile() > 0) {
+                profiler = new HackProfiler(rom, emulator, readSourceMap(romFileName, rom.length, err));
+            }
+
+            long start = System.nanoTime();
+            long cycles = profiler != null ? profiler.run(options.getCycles(), options.getProfile())
+                    : emulator.run(options.getCycles());
+            long nanos = Math.max(1, System.nanoTime() - start);
+
+            String end = !emulator.isHalted() ? "stopped after --cycles=" + options.getCycles()
+                    : emulator.isPastEnd() ? "ran past the last instruction" : "halted";
+            out.println(romFileName + ": " + end + " at PC " + emulator.getPC() + ", " + cycles + " instructions in "
+                    + nanos / 1_000_000 + " ms (" + cycles * 1000 / nanos + " MIPS)");
+
+            StringBuilder registers = new StringBuilder("A=" + emulator.getA() + " D=" + emulator.getD() + " R0-R15:");
+            for (int address = 0; address < 16; address++) {
+                registers.append(' ').append(emulator.readRam(address));
+            }
+            out.println(registers);
+
+            if (profiler != null) {
+                profiler.printReport(romFileName, out);
+            }
+
+            if (options.getScreenFileName() != null) {
+                try (OutputStream screen = Files.newOutputStream(Paths.get(options.getScreenFileName()))) {
+                    emulator.writeScreen(screen);
+                }
+            }
+        } catch (IOException ex) {
+            err.println("Could not run " + romFileName + ": " + ex.getMessage());
+            return 1;
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            err.println(ex.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+
+    // DESCRIPTION: Reads the source map written next to a ROM by --source-map
+    // PRECONDITION: n/a
+    // POSTCONDITION: Returns the map, or null if there is none (a map that can't be read or is left over from
+    // another build of the ROM is reported to err)
+    private static SourceMap readSourceMap(String romFileName, int romLength, PrintStream err) {
+        String sourceMapFileName = SourceMap.fileName(romFileName);
+
+        if (!Files.exists(Paths.get(sourceMapFileName))) {
+            return null;
+        }
+        try {
+            SourceMap sourceMap = SourceMap.read(sourceMapFileName);
+
+            if (sourceMap.size() != romLength) {
+                err.println("Ignoring source map " + sourceMapFileName + ": it maps " + sourceMap.size()
+                        + " instructions, the ROM has " + romLength);
+                return null;
+            }
+            return sourceMap;
+        } catch (IOException ex) {
+            err.println("Ignoring source map " + sourceMapFileName + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+
+    // DESCRIPTION: Assembles one .asm file into its .hack (or .bin) file with its own symbol table and reader
+    // PRECONDITION: The input file exists and is readable
+    // POSTCONDITION: Output file written, returns number of instructions; throws AssemblyException holding every
+    // error of the source (and leaves no output file) for bad input, or IOException if the output can't be written
+    public static int assembleFile(String inputFileName, AssemblerOptions options) throws IOException {
+        return assembleFile(inputFileName, options, System.out);
+    }
+
+
+    // DESCRIPTION: Same as assembleFile(inputFileName, options), printing the --optimize and --pipeline reports to report
+    // PRECONDITION: The input file exists and is readable
+    // POSTCONDITION: Output file written, returns number of instructions (see above)
+    public static int assembleFile(String inputFileName, AssemblerOptions options, PrintStream report) throws IOException {
+        if (options.isIncremental()) {
+            return IncrementalAssembler.assembleFile(inputFileName, options);
+        }
+        String outputFileName = options.outputFileName(inputFileName);
+        SymbolTable symbolTable = new SymbolTable();
+        Diagnostics diagnostics = new Diagnostics(inputFileName);
+        PeepholeOptimizer optimizer = options.isOptimize() ? new PeepholeOptimizer() : null;
+        PipelinedAssembler pipeline = null;
+        SourceMap sourceMap = options.isSourceMap() ? new SourceMap(inputFileName) : null;
+        AssemblyStats stats = new AssemblyStats(inputFileName, options.isPipeline() ? AssemblyStats.PIPELINE
+                : options.isSinglePass() ? AssemblyStats.SINGLE_PASS : AssemblyStats.TWO_PASS);
+        HackWriter outputFile;
+        int instructions;
+
+        try {
+            outputFile = new HackWriter(outputFileName, options.getFormat());
+        } catch (IOException ex) {
+            throw new IOException("Could not open output file " + outputFileName, ex);
+        }
+
+        try {
+            if (options.isPipeline()) {
+                pipeline = new PipelinedAssembler(inputFileName, optimizer, sourceMap);
+                instructions = pipeline.assemble(symbolTable, outputFile, diagnostics);
+
+                for (PipelineStage stage : pipeline.getStages()) {
+                    stats.addPhase(stage.getName(), stage.getBusyNanos());
+                }
+                stats.setCounts(pipeline.getLines(), instructions, pipeline.getLabels());
+                stats.setLineCache(pipeline.getInstructionCache());
+            } else if (options.isSinglePass()) {
+                instructions = singlePass(openReader(inputFileName, options.isLexer()), symbolTable, outputFile,
+                        options.isParallel(), optimizer, sourceMap, diagnostics, stats);
+            } else {
+                stats.beginPhase("firstPass");
+                int labels = firstPass(openReader(inputFileName, options.isLexer()), symbolTable, sourceMap, diagnostics);
+                stats.endPhase();
+
+                CommandReader reader = openReader(inputFileName, options.isLexer());
+                stats.beginPhase("secondPass");
+                instructions = secondPass(reader, symbolTable, outputFile, sourceMap, diagnostics);
+                stats.endPhase();
+                stats.setCounts(reader.getSourceLine(), instructions, labels);
+                stats.setLineCache(reader.getInstructionCache());
+            }
+        } finally {
+            outputFile.close();
+        }
+
+        if (diagnostics.hasErrors()) {
+            // a half-right program would load into the emulator without complaint
+            Files.deleteIfExists(Paths.get(outputFileName));
+            throw diagnostics.toException();
+        }
+
+        stats.finish(symbolTable, outputFile);
+
+        if (sourceMap != null) {
+            String sourceMapFileName = SourceMap.fileName(outputFileName);
+
+            try {
+                sourceMap.write(sourceMapFileName);
+            } catch (IOException ex) {
+                throw new IOException("Could not write source map " + sourceMapFileName, ex);
+            }
+        }
+
+        if (optimizer != null) {
+            report.println("Optimized " + optimizer.getReport(inputFileName));
+        }
+        if (pipeline != null) {
+            for (PipelineStage stage : pipeline.getStages()) {
+                report.println("Pipeline " + inputFileName + " " + stage);
+            }
+        }
+        if (AssemblerOptions.STATS_TEXT.equals(options.getStats())) {
+            report.println(stats);
+        } else if (AssemblerOptions.STATS_JSON.equals(options.getStats())) {
+            report.println(stats.toJson());
+        }
+        if (Log.isInfo()) {
+            Log.info(inputFileName + " -> " + outputFileName);
+        }
+        return instructions;
     }
 
     //DESCRIPTION: converts integer from decimal notation to binary notation
+    // (package-private so the benchmarks can measure it)
     //PRECONDITION: number is valid size for architecture, non-negative
     //POSTCONDITION: returns 16-bit string of binary digits (first char is MSB)
-    private static String decimalToBinary(int decimal)
+    static String decimalToBinary(int decimal)
     {
-        StringBuilder binaryString = new StringBuilder();
-        binaryString.append(Integer.toBinaryString(decimal));
+        return HackWriter.toBinaryString(decimal);
+    }
 
-        for(int i = binaryString.length(); i < 16; i++)
-        {
-            binaryString.insert(0, "0");
-        }
 
-        return binaryString.toString();
+    // DESCRIPTION: Opens the input file with the Scanner based Parser or the byte level Lexer
+    // PRECONDITION: The input file exists and is readable
+    // POSTCONDITION: Returns a reader positioned at the first line of the file
+    private static CommandReader openReader(String inputFileName, boolean lexer) {
+        if (lexer) {
+            return new Lexer(inputFileName);
+        }
+        return new Parser(inputFileName);
     }
 
 
     // DESCRIPTION: Parses the input file to locate label symbols (L commands) and stores them in the symbol table with their line addresses
-    // PRECONDITION: The input file exists and is readable; the symbol table is empty or prepared for new entries
-    // POSTCONDITION: All label symbols are recorded in the symbol table with their addresses
-    private static void firstPass(String inputFileName, SymbolTable symbolTable) {
-        Parser parse = new Parser(inputFileName);
+    // PRECONDITION: The reader is open at the start of the input file; the symbol table is empty or prepared for new entries
+    // POSTCONDITION: All label symbols are recorded in the symbol table (and the source map if not null) with their
+    // addresses, bad labels and a program too big for the ROM in diagnostics; returns number of labels
+    private static int firstPass(CommandReader parse, SymbolTable symbolTable, SourceMap sourceMap,
+                                 Diagnostics diagnostics) {
         String symbol = "";
         int address;
+        int labels = 0;
 
         while(parse.hasMoreCommands())
         {
             parse.advance();
             address = parse.getLineNumber();
+            checkAddress(parse, address, diagnostics);
 
             if(parse.getCommandType() == 'L')
             {
                 symbol = parse.getSymbol();
-                symbolTable.addEntry(symbol, address);
-                System.out.println(address  + ": ADDRESS OF L");
+                labels++;
+                boolean added = symbolTable.addEntry(symbol, address);
+                checkLabel(parse, !added, diagnostics);
+                if(added && sourceMap != null) {
+                    sourceMap.addLabel(symbol, address);
+                }
+                if(Log.isTrace()) {
+                    Log.trace(address + ": ADDRESS OF L " + symbol);
+                }
             }
         }
+        return labels;
     }
 
 
     // DESCRIPTION: Parses the input file to translate A and C commands into binary code, handling symbols as needed
-    // PRECONDITION: The input file exists and is readable; the symbol table contains labels from the first pass
-    // POSTCONDITION: The binary code for each command is written to the output file
-    private static void secondPass(String inputFileName, SymbolTable symbolTable, PrintWriter outputFile) {
-        Parser parse = new Parser(inputFileName);
-        CInstructionMapper codeTable = new CInstructionMapper();
-        String output ="";
+    // PRECONDITION: The reader is open at the start of the input file; the symbol table contains labels from the first pass
+    // POSTCONDITION: The binary code for each command is written to the output file (0 for a bad one, which goes to
+    // diagnostics), returns number of instructions; the source line of each goes to the source map if not null
+    private static int secondPass(CommandReader parse, SymbolTable symbolTable, HackWriter outputFile,
+                                  SourceMap sourceMap, Diagnostics diagnostics) throws IOException {
         int address = 16;
 
         while(parse.hasMoreCommands()){
             parse.advance();
 
+            // the instruction counter only moves on for A- and C-instructions
+            if(sourceMap != null && sourceMap.size() < parse.getLineNumber()){
+                sourceMap.add(parse.getSourceLine());
+            }
+
             if(parse.getCommandType() == Parser.C_COMMAND){
-                if(codeTable.comp(parse.getComp()) == null || codeTable.dest(parse.getDest()) == null || codeTable.jump(parse.getJump()) == null){
-                    System.out.println("FINAL DEST: " + codeTable.comp(parse.getComp()));
-                    System.out.println("FINAL COMP: " + codeTable.dest(parse.getDest()));
-                    System.out.println("FINAL JUMP: " + codeTable.jump(parse.getJump()));
-                    System.exit(0);
+                int instruction = parse.getInstruction();
+
+                if(instruction == CInstructionMapper.INVALID){
+                    reportInstruction(parse, diagnostics);
+                    outputFile.write(0);
                 }
                 else{
-                    System.out.println("JUMP Code: " + parse.getJump());
-                    output = "111" + codeTable.comp(parse.getComp()) + codeTable.dest(parse.getDest()) + codeTable.jump(parse.getJump());
-                    System.out.println(output);
-                    outputFile.println(output);
+                    if(Log.isTrace()) {
+                        Log.trace(parse.getLineNumber() - 1 + ": dest=" + parse.getDest() + " comp=" + parse.getComp()
+                                + " jump=" + parse.getJump() + " -> " + decimalToBinary(instruction));
+                    }
+                    outputFile.write(instruction);
                 }
             }
             else if(parse.getCommandType() == Parser.A_COMMAND) {
@@ -100,38 +405,304 @@ public class Assembler {
                 String symbol = parse.getSymbol();
 
                 if (isNumeric(symbol)) {
-                    try {
-                        num = Integer.parseInt(symbol);
-                    } catch (NumberFormatException e) {
-                        System.out.println(e.getMessage());
-                        System.exit(0);
+                    num = parseNumber(symbol);
+                    if (num < 0) {
+                        diagnostics.error(parse, 1, numberError(symbol));
+                        num = 0;
                     }
-
-                    String outputCode = decimalToBinary(num);
-                    outputFile.println(outputCode);
+                    outputFile.write(num);
                 } else {
-                    if (!symbolTable.contains(symbol)) {
-                        symbolTable.addEntry(symbol, address);
+                    int entries = symbolTable.size();
+
+                    num = symbolTable.getOrAllocate(symbol, address);
+                    if (symbolTable.size() > entries) {
                         address++;
                     }
+                    if (num < 0) {
+                        diagnostics.error(parse, 1, symbolError(symbol));
+                        num = 0;
+                    }
+                    outputFile.write(num);
+                }
+            }
+        }
+        return parse.getLineNumber();
+    }
+
+
+    // DESCRIPTION: Reads the input file once into an instruction list, resolves labels and variables from it and encodes every instruction
+    // (with parallel, encoding and rendering of the output are split into chunks run on all cores; with an optimizer,
+    // the resolved program is shrunk before encoding and the labels in the symbol table moved to match)
+    // PRECONDITION: The reader is open at the start of the input file; the symbol table only holds predefined symbols
+    // POSTCONDITION: The output file holds the same words firstPass() + secondPass() would write (or the optimized
+    // program), returns number of instructions (nothing written if diagnostics got errors); each step is a phase of stats,
+    // the final program goes to the source map if not null
+    private static int singlePass(CommandReader parse, SymbolTable symbolTable, HackWriter outputFile, boolean parallel,
+                                  PeepholeOptimizer optimizer, SourceMap sourceMap, Diagnostics diagnostics,
+                                  AssemblyStats stats) throws IOException {
+        InstructionList program = new InstructionList();
+
+        if (sourceMap != null) {
+            program.trackSourceLines();
+        }
+        stats.beginPhase("read");
+        readProgram(parse, program, new BitSet(), diagnostics);
+        stats.endPhase();
+
+        if (diagnostics.hasErrors()) {
+            return 0;
+        }
+        stats.beginPhase("resolve");
+        int[] addresses = program.resolveSymbols(symbolTable);
+        stats.endPhase();
+
+        if (optimizer != null) {
+            stats.beginPhase("optimize");
+            optimizer.optimize(program, symbolTable, addresses);
+            stats.endPhase();
+        }
+        if (sourceMap != null) {
+            sourceMap.addProgram(program);
+        }
+        stats.beginPhase("encode");
+        short[] words = parallel ? program.toWordsParallel(addresses) : program.toWords(addresses);
+        stats.endPhase();
+        stats.setCounts(parse.getSourceLine(), words.length, program.getLabelCount());
+        stats.setLineCache(parse.getInstructionCache());
+
+        if (Log.isTrace()) {
+            for (int i = 0; i < words.length; i++) {
+                Log.trace(i + ": " + decimalToBinary(words[i]));
+            }
+        }
+        stats.beginPhase("write");
+        if (parallel) {
+            outputFile.writeParallel(words);
+        } else {
+            outputFile.write(words, 0, words.length);
+        }
+        stats.endPhase();
+        return words.length;
+    }
+
+
+    // DESCRIPTION: Reads every command of the input into an instruction list (used by singlePass() and InMemoryAssembler)
+    // PRECONDITION: The reader is open at the start of the input
+    // POSTCONDITION: Returns the program with labels recorded and nothing resolved yet; every bad command is reported
+    // to diagnostics and takes its place as @0, so the addresses of the commands after it stay right (a program
+    // too big for the ROM is reported as well, see checkAddress())
+    static InstructionList readProgram(CommandReader parse, Diagnostics diagnostics) {
+        InstructionList program = new InstructionList();
+
+        readProgram(parse, program, new BitSet(), diagnostics);
+        return program;
+    }
+
+
+    // DESCRIPTION: Appends every command of the input to program (PipelinedAssembler reads a file as several inputs)
+    // PRECONDITION: The reader is open at the start of the input; labels holds the symbol ids of the labels already in program
+    // POSTCONDITION: Commands appended as by readProgram(parse, diagnostics), labels of the input added to labels
+    static void readProgram(CommandReader parse, InstructionList program, BitSet labels, Diagnostics diagnostics) {
+        Lexer lexer = parse instanceof Lexer ? (Lexer) parse : null;
+
+        while (parse.hasMoreCommands()) {
+            parse.advance();
+            program.setSourceLine(parse.getSourceLine());
+
+            if (parse.getCommandType() == Parser.C_COMMAND) {
+                int instruction = parse.getInstruction();
+
+                if (instruction == CInstructionMapper.INVALID) {
+                    reportInstruction(parse, diagnostics);
+                    program.addLiteral(0);
+                } else {
+                    program.addCompute(instruction >>> 6 & 0x7F, instruction >>> 3 & 0b111, instruction & 0b111);
+                }
+            } else if (parse.getCommandType() == Parser.A_COMMAND && lexer != null) {
+                int symbols = program.getSymbolCount();
+
+                if (!program.addAddress(lexer.getLine(), lexer.getSymbolStart(), lexer.getSymbolEnd())) {
+                    diagnostics.error(parse, 1, numberError(parse.getSymbol()));
+                    program.addLiteral(0);
+                } else {
+                    checkSymbol(program, symbols, parse, diagnostics);
+                }
+            } else if (parse.getCommandType() == Parser.A_COMMAND) {
+                String symbol = parse.getSymbol();
+
+                if (isNumeric(symbol)) {
+                    int value = parseNumber(symbol);
+
+                    if (value < 0) {
+                        diagnostics.error(parse, 1, numberError(symbol));
+                        value = 0;
+                    }
+                    program.addLiteral(value);
+                } else {
+                    int symbols = program.getSymbolCount();
 
-                    num = symbolTable.getAddress(symbol);
-                    String outputCode = decimalToBinary(num);
-                    outputFile.println(outputCode);
+                    program.addSymbol(symbol);
+                    checkSymbol(program, symbols, parse, diagnostics);
                 }
+            } else if (parse.getCommandType() == Parser.L_COMMAND) {
+                program.addLabel(parse.getSymbol());
+
+                int id = program.getLabelSymbol(program.getLabelCount() - 1);
+                checkLabel(parse, labels.get(id), diagnostics);
+                labels.set(id);
             }
+            checkAddress(parse, program.size(), diagnostics);
         }
     }
 
 
+    // DESCRIPTION: Reports every unknown part of the reader's C-instruction (getInstruction() was INVALID)
+    // PRECONDITION: The reader's current command is a C-instruction with an unknown part
+    // POSTCONDITION: One error per bad part added to diagnostics
+    static void reportInstruction(CommandReader parse, Diagnostics diagnostics) {
+        reportInstruction(parse, CInstructionMapper.compCode(parse.getComp()), CInstructionMapper.destCode(parse.getDest()),
+                CInstructionMapper.jumpCode(parse.getJump()), diagnostics);
+    }
+
+
+    // DESCRIPTION: Reports every unknown part of a C-instruction at its column
+    // PRECONDITION: The reader's current command is a C-instruction, at least one code is INVALID
+    // POSTCONDITION: One error per bad part added to diagnostics
+    static void reportInstruction(CommandReader parse, int comp, int dest, int jump, Diagnostics diagnostics) {
+        String line = parse.getCleanLine();
+
+        if (dest == CInstructionMapper.INVALID) {
+            diagnostics.error(parse, 0, "Unknown dest '" + parse.getDest() + "'");
+        }
+        if (comp == CInstructionMapper.INVALID) {
+            int equals = line.indexOf('=');
+            diagnostics.error(parse, equals < 0 ? 0 : equals + 1, "Unknown comp '" + parse.getComp() + "'");
+        }
+        if (jump == CInstructionMapper.INVALID) {
+            diagnostics.error(parse, line.indexOf(';') + 1, "Unknown jump '" + parse.getJump() + "'");
+        }
+    }
+
+
+    // DESCRIPTION: Checks the label of the reader's current L-command
+    // PRECONDITION: The reader's current command is an L-command; defined is true if a label of that name came before
+    // POSTCONDITION: Error added to diagnostics if the label is not (NAME), its name is illegal or taken
+    static void checkLabel(CommandReader parse, boolean defined, Diagnostics diagnostics) {
+        String line = parse.getCleanLine();
+
+        if (line.length() < 2 || line.charAt(0) != '(' || line.charAt(line.length() - 1) != ')') {
+            diagnostics.error(parse, 0, "Label must be written as (NAME)");
+            return;
+        }
+        String message = labelError(parse.getSymbol(), defined);
+        if (message != null) {
+            diagnostics.error(parse, 1, message);
+        }
+    }
+
+
+    // DESCRIPTION: Describes what is wrong with a label name
+    // PRECONDITION: defined is true if a label of that name came before
+    // POSTCONDITION: Returns message, or null if the label is fine
+    static String labelError(String name, boolean defined) {
+        if (!SymbolTable.isValidName(name)) {
+            return name.isEmpty() ? "Missing label name" : "Invalid label name '" + name + "'";
+        }
+        if (SymbolTable.isPredefined(name)) {
+            return "Label '" + name + "' redefines a predefined symbol";
+        }
+        if (defined) {
+            return "Label '" + name + "' is already defined";
+        }
+        return null;
+    }
+
+
+    // DESCRIPTION: Checks that the reader's current command fits the ROM: an instruction past the last ROM word or a
+    // label whose address an A-instruction can't hold would be truncated to 16 bits without a word of warning
+    // PRECONDITION: The reader's current command was read, size is the number of instructions up to and including it
+    // (a label's address)
+    // POSTCONDITION: Error added to diagnostics for every label out of range and for the first instruction past the ROM
+    static void checkAddress(CommandReader parse, int size, Diagnostics diagnostics) {
+        if (size <= InstructionList.MAX_LITERAL) {
+            return;
+        }
+        boolean label = parse.getCommandType() == Parser.L_COMMAND;
+        String message = addressError(label ? parse.getSymbol() : null, size);
+
+        if (message != null) {
+            diagnostics.error(parse, label ? 1 : 0, message);
+        }
+    }
+
+
+    // DESCRIPTION: Describes why a command doesn't fit the ROM
+    // PRECONDITION: label is the name of an L-command, null for an A- or C-instruction; size is the number of
+    // instructions up to and including the command
+    // POSTCONDITION: Returns message, or null if the command fits
+    static String addressError(String label, int size) {
+        if (label != null && size > InstructionList.MAX_LITERAL) {
+            return "Label '" + label + "' at address " + size + " is out of range (0 to " + InstructionList.MAX_LITERAL + ")";
+        }
+        if (label == null && size == HackEmulator.ROM_SIZE + 1) {
+            return "Program exceeds " + HackEmulator.ROM_SIZE + " instructions, the size of the ROM";
+        }
+        return null;
+    }
+
+
+    // DESCRIPTION: Reports the symbol of the A-instruction just added if it is new and its name is illegal
+    // (names are checked once, so an illegal one is reported at its first use and the hot path skips known ones)
+    // PRECONDITION: The reader's current command added the last instruction of program, symbols is
+    // program.getSymbolCount() from before that
+    // POSTCONDITION: Error added to diagnostics for an illegal new name
+    static void checkSymbol(InstructionList program, int symbols, CommandReader parse, Diagnostics diagnostics) {
+        if (program.getSymbolCount() > symbols && !SymbolTable.isValidName(program.getSymbolName(symbols))) {
+            diagnostics.error(parse, 1, symbolError(program.getSymbolName(symbols)));
+        }
+    }
+
+
+    // DESCRIPTION: Converts the digits of a numeric A-instruction to its value
+    // PRECONDITION: isNumeric(symbol) is true
+    // POSTCONDITION: Returns the value, or -1 if symbol is not a decimal number from 0 to InstructionList.MAX_LITERAL
+    private static int parseNumber(String symbol) {
+        try {
+            int value = Integer.parseInt(symbol);
+            return value <= InstructionList.MAX_LITERAL ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+    // DESCRIPTION: Describes what is wrong with the constant of an A-instruction
+    // PRECONDITION: symbol starts with a digit and parseNumber() rejected it
+    // POSTCONDITION: Returns message
+    static String numberError(String symbol) {
+        if (symbol.chars().allMatch(Character::isDigit)) {
+            return "Constant @" + symbol + " is out of range (0 to " + InstructionList.MAX_LITERAL + ")";
+        }
+        return "Invalid number @" + symbol;
+    }
+
+
+    // DESCRIPTION: Describes what is wrong with the symbol of an A-instruction
+    // PRECONDITION: SymbolTable.isValidName(symbol) is false
+    // POSTCONDITION: Returns message
+    private static String symbolError(String symbol) {
+        return symbol.isEmpty() ? "Missing symbol or number after @" : "Invalid symbol name @" + symbol;
+    }
+
+
     // DESCRIPTION: Determines if the first character of a string is a numeric digit
-    // PRECONDITION: The string is non-empty
-    // POSTCONDITION: Returns true if the first character is numeric; otherwise, false
+    // PRECONDITION: n/a
+    // POSTCONDITION: Returns true if the first character is numeric; otherwise, false (also for empty string)
     //**********************************
     private static boolean isNumeric(String str)
     {
         String numbers = "0123456789";
-        return numbers.indexOf(str.charAt(0)) != -1;
+        return !str.isEmpty() && numbers.indexOf(str.charAt(0)) != -1;
     }
 
 
@@ -0,0 +1,347 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Line protocol (socket and stdin/stdout alike), UTF-8:
+//   request:  working directory, then the command line arguments, separated by tabs
+//             ("STOP" alone stops the daemon)
+//   response: "O text" / "E text" for every line the CLI would print to stdout / stderr,
+//             then "END status micros" with the exit status and the time spent on the request
+public class AssemblerDaemon {
+
+    // MODES
+    public static final String SOCKET_MODE = "socket";
+    public static final String STDIO_MODE = "stdio";
+
+    public static final String SOCKET_VARIABLE = "HACK_ASSEMBLER_SOCKET";
+    private static final String STOP = "STOP";
+    private static final int WARM_UP_ROUNDS = 30;
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static volatile boolean stopped;
+
+
+    //DESCRIPTION: runs daemon until a STOP request (socket) or end of input (stdio); every
+    // request gets its own options and symbol tables, the JIT-compiled code is shared
+    //PRECONDITION: options.getDaemon() is SOCKET_MODE or STDIO_MODE
+    //POSTCONDITION: returns exit status (1 if socket can't be opened)
+    public static int serve(AssemblerOptions options){
+        Thread warmUp = new Thread(AssemblerDaemon::warmUp, "warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+
+        if(STDIO_MODE.equals(options.getDaemon())){
+            // responses own stdout, so the daemon's own messages go to stderr
+            handle(new InputStreamReader(System.in, StandardCharsets.UTF_8), new PrintStream(System.out, true), System.err);
+            return 0;
+        }
+
+        Path socket = socketPath();
+        ExecutorService pool = Executors.newFixedThreadPool(options.getJobs());
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(socket);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            System.out.println("Assembler daemon listening on " + socket);
+
+            while(!stopped){
+                SocketChannel client = server.accept();
+
+                pool.submit(() -> {
+                    try (SocketChannel channel = client) {
+                        handle(Channels.newReader(channel, StandardCharsets.UTF_8),
+                                new PrintStream(Channels.newOutputStream(channel), true, StandardCharsets.UTF_8), System.out);
+                    } catch (IOException | UncheckedIOException ex) {
+                        System.out.println("Connection failed: " + ex.getMessage());
+                    }
+                    if(stopped){
+                        wakeUp(socket);
+                    }
+                });
+            }
+            return 0;
+        } catch (IOException ex) {
+            System.err.println("Could not open daemon socket " + socket + ": " + ex.getMessage());
+            return 1;
+        } finally {
+            pool.shutdown();
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException ex) {
+                // a stale socket file only makes the next client fall back
+            }
+        }
+    }
+
+    //DESCRIPTION: sends command line to a running daemon and prints its response like the
+    // CLI would (--no-daemon, --watch, --log and --screen always run in-process)
+    //PRECONDITION: args parsed into options without error
+    //POSTCONDITION: returns exit status of request, or -1 if no daemon answered
+    public static int tryRemote(String[] args, AssemblerOptions options){
+        Path socket = socketPath();
+
+        if(options.isNoDaemon() || isLocalOnly(args) || !Files.exists(socket)){
+            return -1;
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            String request = Paths.get("").toAbsolutePath() + "\t" + String.join("\t", args);
+            return send(channel, request, System.out, System.err);
+        } catch (IOException ex) {
+            // socket file left by a daemon that is gone
+            return -1;
+        }
+    }
+
+    //DESCRIPTION: asks running daemon to stop (--stop-daemon)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns 0 if daemon stopped, 1 if none was running
+    public static int stop(){
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath()))) {
+            return send(channel, STOP, System.out, System.err);
+        } catch (IOException ex) {
+            System.err.println("No assembler daemon running on " + socketPath());
+            return 1;
+        }
+    }
+
+    //DESCRIPTION: socket file of daemon, $HACK_ASSEMBLER_SOCKET or one per user in temp directory
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns path of socket file
+    public static Path socketPath(){
+        String path = System.getenv(SOCKET_VARIABLE);
+
+        if(path == null || path.isEmpty()){
+            return Paths.get(System.getProperty("java.io.tmpdir"), "hack-assembler-" + System.getProperty("user.name") + ".sock");
+        }
+        return Paths.get(path);
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: checks for options that only make sense in the client's own process
+    //PRECONDITION: args from command line
+    //POSTCONDITION: returns true if args hold --daemon, --watch, --log or --screen (file relative to client)
+    private static boolean isLocalOnly(String[] args){
+        for(String arg : args){
+            if(arg.startsWith("--daemon") || arg.equals("--watch") || arg.startsWith("--log=") || arg.startsWith("--screen=")){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //DESCRIPTION: answers requests read from in until end of input or STOP
+    //PRECONDITION: out is the response stream of the same connection
+    //POSTCONDITION: one response per request written to out, one log line per request to log
+    private static void handle(Reader in, PrintStream out, PrintStream log){
+        BufferedReader requests = new BufferedReader(in);
+
+        try {
+            String request;
+            while((request = requests.readLine()) != null){
+                if(request.equals(STOP)){
+                    stopped = true;
+                    out.println("O Assembler daemon stopped");
+                    out.println("END 0 0");
+                    return;
+                }
+                respond(request, out, log);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    //DESCRIPTION: runs one request as Assembler.run() would on the client's command line
+    //PRECONDITION: request is working directory and arguments separated by tabs
+    //POSTCONDITION: response (output lines and END line) written to out
+    private static void respond(String request, PrintStream out, PrintStream log){
+        long start = System.nanoTime();
+        String[] fields = request.split("\t", -1);
+        String[] args = Arrays.copyOfRange(fields, 1, fields.length);
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        String shown = clientPrefix(args, fields[0]);
+        int status;
+
+        try (PrintStream requestOut = new PrintStream(stdout, true, StandardCharsets.UTF_8);
+             PrintStream requestErr = new PrintStream(stderr, true, StandardCharsets.UTF_8)) {
+            try {
+                // checked before parse(), which would set the daemon's log level
+                if(isLocalOnly(args)){
+                    throw new IllegalArgumentException("--daemon, --watch, --log and --screen can't be sent to the daemon");
+                }
+                resolveLink(args, fields[0]);
+                AssemblerOptions options = AssemblerOptions.parse(args);
+
+                if(options.getInputs().isEmpty()){
+                    options.getInputs().add("Rect.asm");
+                }
+                resolve(options.getInputs(), fields[0]);
+                status = Assembler.run(options, requestOut, requestErr);
+            } catch (IllegalArgumentException ex) {
+                requestErr.println(ex.getMessage());
+                status = 1;
+            } catch (RuntimeException ex) {
+                requestErr.println("Daemon failed: " + ex);
+                status = 1;
+            }
+        }
+
+        long micros = (System.nanoTime() - start) / 1000;
+        print(out, "O ", stdout, shown);
+        print(out, "E ", stderr, shown);
+        out.println("END " + status + " " + micros);
+        log.println("request " + REQUESTS.incrementAndGet() + ": status " + status + " in " + micros + " us: "
+                + String.join(" ", args));
+    }
+
+    //DESCRIPTION: writes request line, copies response lines to out/err until END
+    //PRECONDITION: channel connected to daemon
+    //POSTCONDITION: returns status from END line, throws IOException if daemon hung up
+    private static int send(SocketChannel channel, String request, PrintStream out, PrintStream err) throws IOException {
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+        String line;
+
+        writer.write(request + "\n");
+        writer.flush();
+        while((line = reader.readLine()) != null){
+            if(line.startsWith("END ")){
+                if(Log.isInfo()){
+                    Log.info("daemon took " + line.substring(line.indexOf(' ', 4) + 1) + " us");
+                }
+                return Integer.parseInt(line.substring(4, line.indexOf(' ', 4)));
+            }
+            (line.startsWith("E ") ? err : out).println(line.substring(2));
+        }
+        throw new IOException("daemon closed connection");
+    }
+
+    //DESCRIPTION: makes relative input names relative to the client's working directory
+    // (print() takes the directory out of the output again, see clientPrefix())
+    //PRECONDITION: directory is absolute
+    //POSTCONDITION: every input is absolute (globs too, so no Path is built from them here)
+    private static void resolve(List<String> inputs, String directory){
+        for(int i = 0; i < inputs.size(); i++){
+            inputs.set(i, absolute(inputs.get(i), directory));
+        }
+    }
+
+    //DESCRIPTION: makes the output file of --link relative to the client's working directory
+    // (or the linked ROM would land in the daemon's)
+    //PRECONDITION: args from the request, directory is absolute
+    //POSTCONDITION: --link= argument in args names an absolute file
+    private static void resolveLink(String[] args, String directory){
+        for(int i = 0; i < args.length; i++){
+            if(args[i].startsWith("--link=")){
+                args[i] = "--link=" + absolute(args[i].substring("--link=".length()), directory);
+            }
+        }
+    }
+
+    //DESCRIPTION: makes a file name from the command line relative to directory
+    //PRECONDITION: directory is absolute
+    //POSTCONDITION: returns name if it is absolute or empty (left for parse() to reject), else directory + name
+    private static String absolute(String name, String directory){
+        if(name.isEmpty() || new File(name).isAbsolute()){
+            return name;
+        }
+        return directory + File.separator + name;
+    }
+
+    //DESCRIPTION: what resolve() and resolveLink() put before the client's relative names, to be
+    // taken out of the output again so file names read as the client typed them
+    //PRECONDITION: args from the request, directory is absolute
+    //POSTCONDITION: returns directory + separator, or null if an argument already spells it
+    // (then it can't be told apart from what the daemon added, and output stays absolute)
+    private static String clientPrefix(String[] args, String directory){
+        String prefix = directory + File.separator;
+
+        for(String arg : args){
+            if(arg.contains(prefix)){
+                return null;
+            }
+        }
+        return prefix;
+    }
+
+    //DESCRIPTION: copies captured output to response, every line with prefix and without shown
+    //PRECONDITION: captured holds UTF-8 text, shown from clientPrefix()
+    //POSTCONDITION: one response line per captured line
+    private static void print(PrintStream out, String prefix, ByteArrayOutputStream captured, String shown){
+        if(captured.size() == 0){
+            return;
+        }
+        for(String line : captured.toString(StandardCharsets.UTF_8).split("\\R")){
+            out.println(prefix + (shown == null ? line : line.replace(shown, "")));
+        }
+    }
+
+    //DESCRIPTION: connects to own socket so accept() returns and the loop sees stopped
+    //PRECONDITION: n/a
+    //POSTCONDITION: accept loop woken up, errors ignored
+    private static void wakeUp(Path socket){
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+        } catch (IOException ex) {
+            // daemon already gone
+        }
+    }
+
+    //DESCRIPTION: assembles a generated program a few times with every reader, so the first
+    // requests don't run Parser, Lexer and CInstructionMapper in the interpreter
+    //PRECONDITION: n/a
+    //POSTCONDITION: temporary files deleted, failures only logged
+    private static void warmUp(){
+        Path directory = null;
+
+        try {
+            directory = Files.createTempDirectory("hack-warm-up");
+            Path source = directory.resolve("WarmUp.asm");
+            StringBuilder program = new StringBuilder();
+
+            for(int i = 0; i < 2000; i++){
+                program.append("(L").append(i).append(")\n@i").append(i % 50).append("\nD=M // count\n@L")
+                        .append(i / 2).append("\nD;JGT\nAM=M-1\n@").append(i).append('\n');
+            }
+            Files.write(source, program.toString().getBytes(StandardCharsets.US_ASCII));
+
+            String[][] modes = {{}, {"--single-pass"}, {"--single-pass", "--lexer"}};
+            for(int round = 0; round < WARM_UP_ROUNDS; round++){
+                Assembler.assembleFile(source.toString(), AssemblerOptions.parse(modes[round % modes.length]));
+            }
+            Log.info("Daemon warmed up");
+        } catch (IOException | RuntimeException ex) {
+            Log.info("Daemon warm-up failed: " + ex);
+        } finally {
+            if(directory != null){
+                for(String name : new String[]{"WarmUp.asm", "WarmUp.hack"}){
+                    directory.resolve(name).toFile().delete();
+                }
+                directory.toFile().delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AssemblerOptions {
+
+    // --stats formats
+    public static final String STATS_TEXT = "text";
+    public static final String STATS_JSON = "json";
+
+    // instructions --run executes at most, unless --cycles says otherwise
+    public static final long DEFAULT_CYCLES = 100_000_000L;
+
+    //PRIVATE VARIABLES
+    private boolean singlePass;
+    private boolean parallel;
+    private boolean optimize;
+    private boolean pipeline;
+    private String stats;
+    private boolean sourceMap;
+    private int profile;
+    private boolean lexer;
+    private boolean incremental;
+    private boolean watch;
+    private String daemon;
+    private boolean noDaemon;
+    private boolean stopDaemon;
+    private boolean run;
+    private boolean aot;
+    private boolean disassemble;
+    private boolean verify;
+    private String link;
+    private long cycles;
+    private String screenFileName;
+    private Map<Integer, Integer> ramValues;
+    private char format;
+    private int jobs;
+    private List<String> inputs;
+
+
+    //DESCRIPTION: creates options for default run (two passes, Parser, .hack)
+    //PRECONDITION: n/a
+    //POSTCONDITION: no inputs, one job per processor
+    public AssemblerOptions(){
+        format = HackWriter.HACK_FORMAT;
+        jobs = Runtime.getRuntime().availableProcessors();
+        cycles = DEFAULT_CYCLES;
+        ramValues = new LinkedHashMap<>();
+        inputs = new ArrayList<>();
+    }
+
+
+    //DESCRIPTION: reads options and input names from command line
+    //PRECONDITION: args from main()
+    //POSTCONDITION: returns options, throws IllegalArgumentException for bad option
+    public static AssemblerOptions parse(String[] args){
+        AssemblerOptions options = new AssemblerOptions();
+
+        for (String arg : args) {
+            if (arg.equals("--single-pass")) {
+                options.singlePass = true;
+            } else if (arg.equals("--parallel")) {
+                options.singlePass = true;
+                options.parallel = true;
+            } else if (arg.equals("--optimize")) {
+                options.singlePass = true;
+                options.optimize = true;
+            } else if (arg.equals("--pipeline")) {
+                options.singlePass = true;
+                options.lexer = true;
+                options.pipeline = true;
+            } else if (arg.equals("--stats")) {
+                options.stats = STATS_TEXT;
+            } else if (arg.startsWith("--stats=")) {
+                options.stats = arg.substring("--stats=".length());
+
+                if (!options.stats.equals(STATS_TEXT) && !options.stats.equals(STATS_JSON)) {
+                    throw new IllegalArgumentException("Unknown stats format " + arg + " (use text or json)");
+                }
+            } else if (arg.equals("--source-map")) {
+                options.sourceMap = true;
+            } else if (arg.equals("--profile")) {
+                options.run = true;
+                options.sourceMap = true;
+                options.profile = 1;
+            } else if (arg.startsWith("--profile=")) {
+                options.run = true;
+                options.sourceMap = true;
+                options.profile = Integer.parseInt(arg.substring("--profile=".length()));
+
+                if (options.profile < 1) {
+                    throw new IllegalArgumentException("--profile interval must be at least 1");
+                }
+            } else if (arg.equals("--lexer")) {
+                options.lexer = true;
+            } else if (arg.equals("--incremental")) {
+                options.incremental = true;
+            } else if (arg.equals("--watch")) {
+                options.incremental = true;
+                options.watch = true;
+            } else if (arg.equals("--daemon")) {
+                options.daemon = AssemblerDaemon.SOCKET_MODE;
+            } else if (arg.startsWith("--daemon=")) {
+                options.daemon = arg.substring("--daemon=".length());
+
+                if (!options.daemon.equals(AssemblerDaemon.SOCKET_MODE) && !options.daemon.equals(AssemblerDaemon.STDIO_MODE)) {
+                    throw new IllegalArgumentException("Unknown daemon mode " + arg + " (use socket or stdio)");
+                }
+            } else if (arg.equals("--no-daemon")) {
+                options.noDaemon = true;
+            } else if (arg.equals("--stop-daemon")) {
+                options.stopDaemon = true;
+            } else if (arg.equals("--disassemble")) {
+                options.disassemble = true;
+            } else if (arg.equals("--verify")) {
+                options.verify = true;
+            } else if (arg.startsWith("--link=")) {
+                options.link = arg.substring("--link=".length());
+
+                if (options.link.isEmpty()) {
+                    throw new IllegalArgumentException("--link needs an output file (--link=Program.hack)");
+                }
+            } else if (arg.equals("--run")) {
+                options.run = true;
+            } else if (arg.equals("--aot")) {
+                options.run = true;
+                options.aot = true;
+            } else if (arg.startsWith("--cycles=")) {
+                options.run = true;
+                options.cycles = Long.parseLong(arg.substring("--cycles=".length()));
+
+                if (options.cycles < 1) {
+                    throw new IllegalArgumentException("--cycles must be at least 1");
+                }
+            } else if (arg.startsWith("--screen=")) {
+                options.run = true;
+                options.screenFileName = arg.substring("--screen=".length());
+            } else if (arg.startsWith("--ram=")) {
+                options.run = true;
+                parseRamValue(arg, options.ramValues);
+            } else if (arg.equals("--bin")) {
+                options.format = HackWriter.BIN_FORMAT;
+            } else if (arg.startsWith("--log=")) {
+                int level = Log.parseLevel(arg.substring("--log=".length()));
+
+                if (level < 0) {
+                    throw new IllegalArgumentException("Unknown log level " + arg + " (use off, info or trace)");
+                }
+                Log.setLevel(level);
+            } else if (arg.startsWith("--jobs=")) {
+                options.jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+
+                if (options.jobs < 1) {
+                    throw new IllegalArgumentException("--jobs must be at least 1");
+                }
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                options.inputs.add(arg);
+            }
+        }
+        if (options.optimize && options.incremental) {
+            throw new IllegalArgumentException("--optimize can't be combined with --incremental or --watch");
+        }
+        if (options.stats != null && options.incremental) {
+            throw new IllegalArgumentException("--stats can't be combined with --incremental or --watch");
+        }
+        if (options.sourceMap && options.incremental) {
+            throw new IllegalArgumentException("--source-map and --profile can't be combined with --incremental or --watch");
+        }
+        if (options.link != null && (options.incremental || options.optimize || options.pipeline || options.run)) {
+            throw new IllegalArgumentException("--link can't be combined with --incremental, --watch, --optimize, --pipeline or --run");
+        }
+        if (options.pipeline && (options.incremental || options.parallel)) {
+            throw new IllegalArgumentException("--pipeline can't be combined with --incremental, --watch or --parallel");
+        }
+        return options;
+    }
+
+
+    //DESCRIPTION: input is machine code for --run (no assembly needed)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true for .hack and .bin files
+    public static boolean isMachineCode(String inputFileName){
+        return inputFileName.endsWith(".hack") || inputFileName.endsWith(".bin");
+    }
+
+
+    //DESCRIPTION: output file name for input, extension from format
+    //PRECONDITION: inputFileName ends in .asm
+    //POSTCONDITION: returns name with .hack (or .bin) instead of .asm
+    public String outputFileName(String inputFileName){
+        String extension = format == HackWriter.BIN_FORMAT ? ".bin" : ".hack";
+
+        if (inputFileName.endsWith(".asm")) {
+            return inputFileName.substring(0, inputFileName.length() - 4) + extension;
+        }
+        return inputFileName + extension;
+    }
+
+
+    //DESCRIPTION: file name --disassemble writes for machine code input (never the .asm it came from)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns name with .dis.asm instead of .hack or .bin
+    public String disassemblyFileName(String inputFileName){
+        if (isMachineCode(inputFileName)) {
+            return inputFileName.substring(0, inputFileName.lastIndexOf('.')) + ".dis.asm";
+        }
+        return inputFileName + ".dis.asm";
+    }
+
+
+    //DESCRIPTION: cache file name for input (--incremental)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns input name with .cache appended
+    public String cacheFileName(String inputFileName){
+        return inputFileName + ".cache";
+    }
+
+
+    //GETTER METHODS
+    public boolean isSinglePass(){
+        return singlePass;
+    }
+
+    public boolean isParallel(){
+        return parallel;
+    }
+
+    public boolean isOptimize(){
+        return optimize;
+    }
+
+    public boolean isPipeline(){
+        return pipeline;
+    }
+
+    //DESCRIPTION: getter for --stats format
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns STATS_TEXT, STATS_JSON or null if no stats are printed
+    public String getStats(){
+        return stats;
+    }
+
+    public boolean isSourceMap(){
+        return sourceMap;
+    }
+
+    //DESCRIPTION: getter for --profile sampling interval
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns 1 for exact counts, N for --profile=N, 0 if --run doesn't profile
+    public int getProfile(){
+        return profile;
+    }
+
+    public boolean isLexer(){
+        return lexer;
+    }
+
+    public boolean isIncremental(){
+        return incremental;
+    }
+
+    public boolean isWatch(){
+        return watch;
+    }
+
+    public String getDaemon(){
+        return daemon;
+    }
+
+    public boolean isNoDaemon(){
+        return noDaemon;
+    }
+
+    public boolean isStopDaemon(){
+        return stopDaemon;
+    }
+
+    public boolean isRun(){
+        return run;
+    }
+
+    //DESCRIPTION: getter for --aot
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if --run translates the ROM to bytecode (HackTranslator) before running it
+    public boolean isAot(){
+        return aot;
+    }
+
+    public boolean isDisassemble(){
+        return disassemble;
+    }
+
+    public boolean isVerify(){
+        return verify;
+    }
+
+    //DESCRIPTION: getter for the file --link writes
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns output file name, null if modules aren't linked
+    public String getLink(){
+        return link;
+    }
+
+    public long getCycles(){
+        return cycles;
+    }
+
+    public String getScreenFileName(){
+        return screenFileName;
+    }
+
+    //DESCRIPTION: getter for RAM words --ram sets before --run starts
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns address -> value in command line order
+    public Map<Integer, Integer> getRamValues(){
+        return ramValues;
+    }
+
+    public char getFormat(){
+        return format;
+    }
+
+    public int getJobs(){
+        return jobs;
+    }
+
+    public List<String> getInputs(){
+        return inputs;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: reads --ram=ADDRESS=VALUE (e.g. --ram=0=50 puts 50 in R0)
+    //PRECONDITION: arg starts with --ram=
+    //POSTCONDITION: pair put in ramValues, throws IllegalArgumentException if malformed
+    private static void parseRamValue(String arg, Map<Integer, Integer> ramValues){
+        String[] parts = arg.substring("--ram=".length()).split("=");
+
+        try {
+            int address = Integer.parseInt(parts[0]);
+            int value = Integer.parseInt(parts[1]);
+
+            if (parts.length != 2 || address < 0 || address >= HackEmulator.RAM_SIZE || value < Short.MIN_VALUE || value > 0xFFFF) {
+                throw new IllegalArgumentException("Bad " + arg + " (address 0 to 32767, value -32768 to 65535)");
+            }
+            ramValues.put(address, value);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Bad " + arg + " (use --ram=ADDRESS=VALUE)");
+        }
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+public class AssemblyCache {
+
+    // LINE KINDS (A/C lines use the InstructionList opcodes)
+    public static final byte NO_COMMAND = -1;
+    public static final byte A_LITERAL = (byte) InstructionList.A_LITERAL;
+    public static final byte A_SYMBOL = (byte) InstructionList.A_SYMBOL;
+    public static final byte C_INSTRUCTION = (byte) InstructionList.C_INSTRUCTION;
+    public static final byte LABEL = 3;
+
+    private static final int MAGIC = 0x48414343; // "HACC"
+    private static final int VERSION = 1;
+
+    //PRIVATE VARIABLES
+    // content hash of source, the key that tells if a file changed at all
+    private long checksum;
+    private byte[] source;
+    // end offset of every source line (not saved, found again after load())
+    private int[] lineEnds;
+    private char format;
+    // last-modified time of the output file this cache wrote (0 = none), so an output
+    // written by anything else is never taken as up to date
+    private long outputModified;
+
+    // one entry per source line: kind and operand (literal value, symbol id,
+    // or comp | dest << 7 | jump << 10 for a C-instruction)
+    private byte[] kinds;
+    private int[] operands;
+
+    // symbol ids as handed out by InstructionList, with resolved RAM/ROM address
+    private String[] symbolNames;
+    private int[] symbolAddresses;
+    private short[] words;
+
+    // how much work the assembly that built this cache did (not saved)
+    private int relexedLines;
+    private int reencodedWords;
+
+
+    //DESCRIPTION: creates cache for one assembled source file
+    //PRECONDITION: kinds/operands have one entry per line of source, lineEnds is null or
+    // lineEnds(source), words are the encoded program
+    //POSTCONDITION: cache holds given arrays (not copied)
+    public AssemblyCache(long checksum, byte[] source, int[] lineEnds, char format, byte[] kinds, int[] operands,
+                         String[] symbolNames, int[] symbolAddresses, short[] words,
+                         int relexedLines, int reencodedWords){
+        this.checksum = checksum;
+        this.source = source;
+        this.lineEnds = lineEnds;
+        this.format = format;
+        this.kinds = kinds;
+        this.operands = operands;
+        this.symbolNames = symbolNames;
+        this.symbolAddresses = symbolAddresses;
+        this.words = words;
+        this.relexedLines = relexedLines;
+        this.reencodedWords = reencodedWords;
+    }
+
+
+    //DESCRIPTION: reads cache file written by save()
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns cache, or null if file is missing, unreadable, damaged or from another version
+    public static AssemblyCache load(Path cacheFile){
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(cacheFile));
+
+            if(in.getInt() != MAGIC || in.getInt() != VERSION){
+                return null;
+            }
+            long checksum = in.getLong();
+            char format = in.getChar();
+            long outputModified = in.getLong();
+            byte[] source = new byte[in.getInt()];
+            in.get(source);
+            if(checksum(source) != checksum){
+                return null;
+            }
+
+            byte[] kinds = new byte[in.getInt()];
+            int[] operands = new int[kinds.length];
+            in.get(kinds);
+            in.asIntBuffer().get(operands);
+            in.position(in.position() + 4 * operands.length);
+
+            String[] symbolNames = new String[in.getInt()];
+            int[] symbolAddresses = new int[symbolNames.length];
+            for(int i = 0; i < symbolNames.length; i++){
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                symbolNames[i] = new String(name, StandardCharsets.UTF_8);
+            }
+            in.asIntBuffer().get(symbolAddresses);
+            in.position(in.position() + 4 * symbolAddresses.length);
+
+            short[] words = new short[in.getInt()];
+            in.asShortBuffer().get(words);
+            AssemblyCache cache = new AssemblyCache(checksum, source, null, format, kinds, operands,
+                    symbolNames, symbolAddresses, words, 0, 0);
+            cache.setOutputModified(outputModified);
+            return cache;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | RuntimeException ex) {
+            Log.info("Ignoring unreadable cache " + cacheFile + ": " + ex);
+            return null;
+        }
+    }
+
+    //DESCRIPTION: writes cache to a temporary file and moves it over cacheFile,
+    // so a watcher or a crash never leaves half a cache behind
+    //PRECONDITION: n/a
+    //POSTCONDITION: cacheFile holds this cache, throws IOException if it can't be written
+    public void save(Path cacheFile) throws IOException {
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        byte[][] names = new byte[symbolNames.length][];
+        int size = 4 + 4 + 8 + 2 + 8 + 4 + source.length + 4 + kinds.length + 4 * operands.length
+                + 4 + 4 * symbolAddresses.length + 4 + 2 * words.length;
+
+        for(int i = 0; i < names.length; i++){
+            names[i] = symbolNames[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[i].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putLong(checksum).putChar(format).putLong(outputModified);
+        out.putInt(source.length).put(source);
+        out.putInt(kinds.length).put(kinds);
+        out.asIntBuffer().put(operands);
+        out.position(out.position() + 4 * operands.length);
+        out.putInt(names.length);
+        for(byte[] name : names){
+            out.putInt(name.length).put(name);
+        }
+        out.asIntBuffer().put(symbolAddresses);
+        out.position(out.position() + 4 * symbolAddresses.length);
+        out.putInt(words.length);
+        out.asShortBuffer().put(words);
+        out.position(out.position() + 2 * words.length);
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(out.hasRemaining()){
+                channel.write(out);
+            }
+        }
+        try {
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    //DESCRIPTION: content hash of source file (CRC32C, which the JVM computes with CPU
+    // instructions, so hashing a big file costs next to nothing)
+    //PRECONDITION: source not null
+    //POSTCONDITION: returns checksum of source
+    public static long checksum(byte[] source){
+        CRC32C crc = new CRC32C();
+
+        crc.update(source, 0, source.length);
+        return crc.getValue();
+    }
+
+    //DESCRIPTION: finds end of every line (after its \n, \r\n or \r), split the way Lexer splits
+    //PRECONDITION: source not null
+    //POSTCONDITION: returns end offsets, last one is source.length unless source is empty
+    public static int[] lineEnds(byte[] source){
+        int[] ends = new int[64];
+        int count = 0;
+        int i = 0;
+
+        while(i < source.length){
+            byte b = source[i++];
+
+            if(b == '\n' || b == '\r' || i == source.length){
+                if(b == '\r' && i < source.length && source[i] == '\n'){
+                    i++;
+                }
+                if(count == ends.length){
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                ends[count++] = i;
+            }
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    //DESCRIPTION: checks if cache was built from exactly this source
+    //PRECONDITION: checksum is checksum(source)
+    //POSTCONDITION: returns true if same content (checksum first, then bytes)
+    public boolean isSource(long checksum, byte[] source){
+        return this.checksum == checksum && Arrays.equals(this.source, source);
+    }
+
+
+    //GETTER METHODS
+    public long getChecksum(){
+        return checksum;
+    }
+
+    public byte[] getSource(){
+        return source;
+    }
+
+    public long getOutputModified(){
+        return outputModified;
+    }
+
+    public void setOutputModified(long outputModified){
+        this.outputModified = outputModified;
+    }
+
+    public int[] getLineEnds(){
+        if(lineEnds == null){
+            lineEnds = lineEnds(source);
+        }
+        return lineEnds;
+    }
+
+    public char getFormat(){
+        return format;
+    }
+
+    public byte[] getKinds(){
+        return kinds;
+    }
+
+    public int[] getOperands(){
+        return operands;
+    }
+
+    public String[] getSymbolNames(){
+        return symbolNames;
+    }
+
+    public int[] getSymbolAddresses(){
+        return symbolAddresses;
+    }
+
+    public short[] getWords(){
+        return words;
+    }
+
+    public int getRelexedLines(){
+        return relexedLines;
+    }
+
+    public int getReencodedWords(){
+        return reencodedWords;
+    }
+}
@@ -0,0 +1,52 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JDK Flight Recorder event for one assembled file (duration = whole assembly), so a
+// recording shows assemblies next to GC pauses and allocation; written by AssemblyStats
+@Name("hack.Assembly")
+@Label("Assembly")
+@Category("Hack Assembler")
+@Description("One .asm file assembled")
+public class AssemblyEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Lines")
+    int lines;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Labels")
+    int labels;
+
+    @Label("Variables")
+    int variables;
+
+    @Label("Symbol Hits")
+    @Description("Symbol table lookups that found the symbol")
+    long symbolHits;
+
+    @Label("Symbol Misses")
+    @Description("Symbol table lookups that entered a new variable")
+    long symbolMisses;
+
+    @Label("Line Cache Hits")
+    @Description("C-instruction lines found in the reader's instruction cache")
+    long lineCacheHits;
+
+    @Label("Line Cache Misses")
+    @Description("C-instruction lines translated field by field")
+    long lineCacheMisses;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
@@ -0,0 +1,40 @@
+import java.util.Collections;
+import java.util.List;
+
+public class AssemblyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Diagnostic> diagnostics;
+
+    //DESCRIPTION: error that stops assembly of one file
+    //PRECONDITION: message says what went wrong and where
+    //POSTCONDITION: exception ready to throw
+    public AssemblyException(String message) {
+        super(message);
+        this.diagnostics = Collections.emptyList();
+    }
+
+    //DESCRIPTION: error that stops assembly of one file, caused by another exception
+    //PRECONDITION: message says what went wrong and where
+    //POSTCONDITION: exception ready to throw, keeps cause
+    public AssemblyException(String message, Throwable cause) {
+        super(message, cause);
+        this.diagnostics = Collections.emptyList();
+    }
+
+    //DESCRIPTION: errors found in the source, all reported together (see Diagnostics)
+    //PRECONDITION: diagnostics is unmodifiable, message sums them up
+    //POSTCONDITION: exception ready to throw, keeps diagnostics
+    public AssemblyException(String message, List<Diagnostic> diagnostics) {
+        super(message);
+        this.diagnostics = diagnostics;
+    }
+
+    //DESCRIPTION: getter for the errors found in the source
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns list in source order, empty if the error isn't about the source
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? Collections.emptyList() : diagnostics;
+    }
+}
@@ -0,0 +1,19 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JDK Flight Recorder event for one phase of an assembly (first pass, encode, a pipeline
+// stage...); written by AssemblyStats and PipelinedAssembler
+@Name("hack.AssemblyPhase")
+@Label("Assembly Phase")
+@Category("Hack Assembler")
+@Description("One phase of assembling a file")
+public class AssemblyPhaseEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Phase")
+    String phase;
+}
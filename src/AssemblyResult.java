@@ -0,0 +1,51 @@
+import java.util.List;
+import java.util.Map;
+
+public class AssemblyResult {
+
+    //PRIVATE VARIABLES
+    private short[] rom;
+    private Map<String, Integer> symbols;
+    private List<Diagnostic> diagnostics;
+
+
+    //DESCRIPTION: creates result of one in-memory assembly
+    //PRECONDITION: symbols and diagnostics are unmodifiable
+    //POSTCONDITION: result holds given values (rom not copied)
+    public AssemblyResult(short[] rom, Map<String, Integer> symbols, List<Diagnostic> diagnostics){
+        this.rom = rom;
+        this.symbols = symbols;
+        this.diagnostics = diagnostics;
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for machine code
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns one 16-bit word per instruction (empty if assembly failed);
+    // array belongs to the caller, nothing else holds it
+    public short[] getRom(){
+        return rom;
+    }
+
+    //DESCRIPTION: getter for labels and variables of the program
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns unmodifiable map of symbol to ROM/RAM address, in order of first appearance
+    public Map<String, Integer> getSymbols(){
+        return symbols;
+    }
+
+    //DESCRIPTION: getter for errors found in the source
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns unmodifiable list, empty if assembly succeeded
+    public List<Diagnostic> getDiagnostics(){
+        return diagnostics;
+    }
+
+    //DESCRIPTION: checks if assembly succeeded
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if there are no diagnostics
+    public boolean isSuccess(){
+        return diagnostics.isEmpty();
+    }
+}
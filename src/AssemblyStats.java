@@ -0,0 +1,293 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jdk.jfr.FlightRecorder;
+
+// Where the time of one assembly went and what it counted. Phases are timed as wholes
+// (a clock read per line would cost more than the Parser.advance() it measures); every
+// phase and the whole run are also JDK Flight Recorder events, whether or not --stats is on.
+// Event objects are only made once a recorder exists (-XX:StartFlightRecording or jcmd
+// JFR.start): the first event class loaded sets up JFR, which costs a short run 300 ms.
+public class AssemblyStats {
+
+    // MODES
+    public static final String TWO_PASS = "two-pass";
+    public static final String SINGLE_PASS = "single-pass";
+    public static final String PIPELINE = "pipeline";
+
+    //PRIVATE VARIABLES
+    private String file;
+    private String mode;
+    private AssemblyEvent event;
+    private long startNanos;
+    private long totalNanos;
+    private Map<String, Long> phases;
+    private String phase;
+    private long phaseStart;
+    private AssemblyPhaseEvent phaseEvent;
+
+    private int lines;
+    private int instructions;
+    private int labels;
+    private int variables;
+    private long symbolHits;
+    private long symbolMisses;
+    private long lineCacheHits;
+    private long lineCacheMisses;
+    private long lineCacheEvictions;
+    private long bytesWritten;
+    private long writeNanos;
+
+
+    //DESCRIPTION: starts timing assembly of file
+    //PRECONDITION: mode is TWO_PASS, SINGLE_PASS or PIPELINE
+    //POSTCONDITION: clock and assembly event started, no phases
+    public AssemblyStats(String file, String mode){
+        this.file = file;
+        this.mode = mode;
+        this.phases = new LinkedHashMap<>();
+        if(isRecording()){
+            this.event = new AssemblyEvent();
+            this.event.begin();
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+
+    //DESCRIPTION: starts timing a phase (phases run one after another)
+    //PRECONDITION: no phase running
+    //POSTCONDITION: phase and its event started
+    public void beginPhase(String name){
+        phase = name;
+        if(event != null){
+            phaseEvent = new AssemblyPhaseEvent();
+            phaseEvent.begin();
+        }
+        phaseStart = System.nanoTime();
+    }
+
+    //DESCRIPTION: stops timing the running phase
+    //PRECONDITION: beginPhase() was called
+    //POSTCONDITION: phase time added, its event committed
+    public void endPhase(){
+        addPhase(phase, System.nanoTime() - phaseStart);
+        if(phaseEvent != null && phaseEvent.shouldCommit()){
+            phaseEvent.file = file;
+            phaseEvent.phase = phase;
+            phaseEvent.commit();
+        }
+        phase = null;
+        phaseEvent = null;
+    }
+
+    //DESCRIPTION: adds time of a phase timed elsewhere (pipeline stages run at the same time)
+    //PRECONDITION: nanos >= 0
+    //POSTCONDITION: nanos added to phase name
+    public void addPhase(String name, long nanos){
+        phases.merge(name, nanos, Long::sum);
+    }
+
+    //DESCRIPTION: records what the reader and the program held
+    //PRECONDITION: lines from the reader's getSourceLine() after the last command
+    //POSTCONDITION: counts stored
+    public void setCounts(int lines, int instructions, int labels){
+        this.lines = lines;
+        this.instructions = instructions;
+        this.labels = labels;
+    }
+
+    //DESCRIPTION: records hit, miss and eviction counts of the reader's instruction cache
+    //PRECONDITION: all commands were read
+    //POSTCONDITION: counts stored
+    public void setLineCache(InstructionCache cache){
+        lineCacheHits = cache.getHits();
+        lineCacheMisses = cache.getMisses();
+        lineCacheEvictions = cache.getEvictions();
+    }
+
+    //DESCRIPTION: stops the clock and commits the assembly event, taking symbol table and
+    // output counts (every symbol table miss enters a variable)
+    //PRECONDITION: output file closed
+    //POSTCONDITION: stats complete
+    public void finish(SymbolTable symbolTable, HackWriter outputFile){
+        totalNanos = System.nanoTime() - startNanos;
+        symbolHits = symbolTable.getHits();
+        symbolMisses = symbolTable.getMisses();
+        variables = (int) symbolMisses;
+        bytesWritten = outputFile.getBytesWritten();
+        writeNanos = outputFile.getWriteNanos();
+
+        if(event != null && event.shouldCommit()){
+            event.file = file;
+            event.mode = mode;
+            event.lines = lines;
+            event.instructions = instructions;
+            event.labels = labels;
+            event.variables = variables;
+            event.symbolHits = symbolHits;
+            event.symbolMisses = symbolMisses;
+            event.lineCacheHits = lineCacheHits;
+            event.lineCacheMisses = lineCacheMisses;
+            event.bytesWritten = bytesWritten;
+            event.commit();
+        }
+    }
+
+
+    //GETTER METHODS
+    public String getFile(){
+        return file;
+    }
+
+    public String getMode(){
+        return mode;
+    }
+
+    public long getTotalNanos(){
+        return totalNanos;
+    }
+
+    //DESCRIPTION: getter for phase times
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns phase name -> nanoseconds in order the phases ran
+    public Map<String, Long> getPhases(){
+        return phases;
+    }
+
+    public int getLines(){
+        return lines;
+    }
+
+    public int getInstructions(){
+        return instructions;
+    }
+
+    public int getLabels(){
+        return labels;
+    }
+
+    public int getVariables(){
+        return variables;
+    }
+
+    public long getSymbolHits(){
+        return symbolHits;
+    }
+
+    public long getSymbolMisses(){
+        return symbolMisses;
+    }
+
+    public long getLineCacheHits(){
+        return lineCacheHits;
+    }
+
+    public long getLineCacheMisses(){
+        return lineCacheMisses;
+    }
+
+    public long getLineCacheEvictions(){
+        return lineCacheEvictions;
+    }
+
+    public long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    //DESCRIPTION: getter for time spent in the output channel (part of the phase that wrote)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns nanoseconds
+    public long getWriteNanos(){
+        return writeNanos;
+    }
+
+    //DESCRIPTION: formats stats for --stats, two lines (counts, then times)
+    //PRECONDITION: finish() was called
+    //POSTCONDITION: returns text without trailing line separator
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+
+        text.append("Stats ").append(file).append(" (").append(mode).append("): ")
+                .append(lines).append(" lines, ").append(instructions).append(" instructions, ")
+                .append(labels).append(" labels, ").append(variables).append(" variables, symbol table ")
+                .append(symbolHits).append(" hits / ").append(symbolMisses).append(" misses, line cache ")
+                .append(lineCacheHits).append(" hits / ").append(lineCacheMisses).append(" misses / ")
+                .append(lineCacheEvictions).append(" evictions, ")
+                .append(bytesWritten).append(" bytes written");
+        text.append(System.lineSeparator()).append("    ");
+        for(Map.Entry<String, Long> entry : phases.entrySet()){
+            text.append(entry.getKey()).append(' ').append(millis(entry.getValue())).append(" ms, ");
+        }
+        text.append("output I/O ").append(millis(writeNanos)).append(" ms, total ").append(millis(totalNanos)).append(" ms");
+        return text.toString();
+    }
+
+    //DESCRIPTION: formats stats as one line of JSON (--stats=json prints one per file; in batch
+    // runs they sit between the status lines, every JSON line starts with '{')
+    //PRECONDITION: finish() was called
+    //POSTCONDITION: returns JSON object, times in nanoseconds
+    public String toJson(){
+        StringBuilder json = new StringBuilder("{");
+
+        json.append("\"file\":").append(quote(file))
+                .append(",\"mode\":").append(quote(mode))
+                .append(",\"lines\":").append(lines)
+                .append(",\"instructions\":").append(instructions)
+                .append(",\"labels\":").append(labels)
+                .append(",\"variables\":").append(variables)
+                .append(",\"symbolHits\":").append(symbolHits)
+                .append(",\"symbolMisses\":").append(symbolMisses)
+                .append(",\"lineCacheHits\":").append(lineCacheHits)
+                .append(",\"lineCacheMisses\":").append(lineCacheMisses)
+                .append(",\"lineCacheEvictions\":").append(lineCacheEvictions)
+                .append(",\"bytesWritten\":").append(bytesWritten)
+                .append(",\"writeNanos\":").append(writeNanos)
+                .append(",\"totalNanos\":").append(totalNanos)
+                .append(",\"phaseNanos\":{");
+        String separator = "";
+        for(Map.Entry<String, Long> entry : phases.entrySet()){
+            json.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue());
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+
+    //DESCRIPTION: checks if JDK Flight Recorder was started in this JVM (events are dropped before that)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if events should be made
+    public static boolean isRecording(){
+        return FlightRecorder.isInitialized();
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: converts nanoseconds to milliseconds with 3 decimals
+    //PRECONDITION: nanos >= 0
+    //POSTCONDITION: returns e.g. "1.234"
+    private static String millis(long nanos){
+        return String.format("%d.%03d", nanos / 1_000_000, nanos / 1_000 % 1_000);
+    }
+
+    //DESCRIPTION: JSON string literal for text
+    //PRECONDITION: text not null
+    //POSTCONDITION: returns text in quotes with quotes, backslashes and control characters escaped
+    private static String quote(String text){
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+
+            if(c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            }
+            else if(c < 0x20){
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else{
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchAssembler {
+
+    private static final String GLOB_CHARS = "*?[{";
+
+
+    //DESCRIPTION: checks if command line inputs need batch mode
+    //PRECONDITION: inputs not empty
+    //POSTCONDITION: returns true for several inputs, a directory or a glob
+    public static boolean isBatch(List<String> inputs){
+        if(inputs.size() > 1){
+            return true;
+        }
+        String input = inputs.get(0);
+        return isGlob(input) || Files.isDirectory(Paths.get(input));
+    }
+
+
+    //DESCRIPTION: assembles every .asm file named by inputs on a fork-join pool,
+    // each file with its own reader, symbol table and writer
+    //PRECONDITION: options parsed, inputs are files, directories or globs
+    //POSTCONDITION: prints one status line per file and a summary to out,
+    // returns number of files that failed (others are still written)
+    public static int run(AssemblerOptions options, PrintStream out){
+        List<String> files = expandInputs(options.getInputs());
+        ForkJoinPool pool = new ForkJoinPool(options.getJobs());
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong instructions = new AtomicLong();
+        long start = System.nanoTime();
+
+        for(String file : files){
+            tasks.add(pool.submit(() -> {
+                long fileStart = System.nanoTime();
+                try {
+                    int count = Assembler.assembleFile(file, options, out);
+                    instructions.addAndGet(count);
+                    status(out, "OK     " + file + " (" + count + " instructions, "
+                            + millis(System.nanoTime() - fileStart) + " ms)");
+                } catch (AssemblyException ex) {
+                    failed.incrementAndGet();
+                    status(out, "FAILED " + file + ": " + Diagnostics.describe(ex));
+                } catch (IOException ex) {
+                    failed.incrementAndGet();
+                    status(out, "FAILED " + file + ": " + ex.getMessage());
+                } catch (RuntimeException ex) {
+                    failed.incrementAndGet();
+                    status(out, "FAILED " + file + ": " + ex);
+                }
+            }));
+        }
+        for(ForkJoinTask<?> task : tasks){
+            task.join();
+        }
+        pool.shutdown();
+
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        long perSecond = instructions.get() * 1_000_000_000L / elapsed;
+
+        out.println(files.size() + " files, " + failed.get() + " failed, " + instructions.get()
+                + " instructions in " + millis(elapsed) + " ms (" + perSecond + " instructions/sec)");
+        if(files.isEmpty()){
+            out.println("No .asm files found");
+        }
+        return failed.get();
+    }
+
+
+    //DESCRIPTION: expands directories (recursively) and globs to .asm files
+    //PRECONDITION: inputs are file names, directories or glob patterns
+    //POSTCONDITION: returns file names in input order, each directory/glob sorted,
+    // plain file names kept even if missing (so they report as failed); a file named
+    // more than once (sub sub/*.asm) is only kept where it first appears
+    public static List<String> expandInputs(List<String> inputs){
+        List<String> files = new ArrayList<>();
+        Set<Path> seen = new HashSet<>();
+
+        for(String input : inputs){
+            List<String> expanded;
+
+            if(isGlob(input)){
+                expanded = glob(input);
+            }
+            else if(Files.isDirectory(Paths.get(input))){
+                expanded = walk(Paths.get(input), FileSystems.getDefault().getPathMatcher("glob:**.asm"));
+            }
+            else{
+                expanded = List.of(input);
+            }
+            for(String file : expanded){
+                if(seen.add(Paths.get(file).toAbsolutePath().normalize())){
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+
+    //DESCRIPTION: directory where expandInputs() looks for files of input
+    //PRECONDITION: input is a file name, directory or glob pattern
+    //POSTCONDITION: returns the directory itself, the directory before the first glob
+    // character, or the directory holding the file
+    public static Path searchRoot(String input){
+        if(isGlob(input)){
+            int slash = globSlash(input);
+            return slash < 0 ? Paths.get(".") : Paths.get(input.substring(0, slash + 1));
+        }
+        Path path = Paths.get(input);
+        if(Files.isDirectory(path)){
+            return path;
+        }
+        return path.toAbsolutePath().getParent();
+    }
+
+
+    //DESCRIPTION: prints one status line without interleaving with other jobs (HackLinker's as well)
+    //PRECONDITION: n/a
+    //POSTCONDITION: line printed to out
+    static synchronized void status(PrintStream out, String line){
+        out.println(line);
+    }
+
+
+    //DESCRIPTION: converts nanoseconds to whole milliseconds
+    //PRECONDITION: nanos >= 0
+    //POSTCONDITION: returns milliseconds
+    static long millis(long nanos){
+        return nanos / 1_000_000;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: checks for glob characters in input
+    //PRECONDITION: input not null
+    //POSTCONDITION: returns true if input contains * ? [ or {
+    private static boolean isGlob(String input){
+        for(int i = 0; i < input.length(); i++){
+            if(GLOB_CHARS.indexOf(input.charAt(i)) != -1){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //DESCRIPTION: finds files matching glob, starting at the directory before the first glob character
+    //PRECONDITION: isGlob(pattern)
+    //POSTCONDITION: returns sorted matching file names
+    private static List<String> glob(String pattern){
+        int slash = globSlash(pattern);
+        String relative = slash < 0 ? pattern : pattern.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+
+        return walk(searchRoot(pattern), matcher);
+    }
+
+    //DESCRIPTION: finds last path separator before the first glob character
+    //PRECONDITION: isGlob(pattern)
+    //POSTCONDITION: returns index of separator, -1 if glob starts in current directory
+    private static int globSlash(String pattern){
+        int firstGlob = 0;
+        while(GLOB_CHARS.indexOf(pattern.charAt(firstGlob)) == -1){
+            firstGlob++;
+        }
+        return Math.max(pattern.lastIndexOf('/', firstGlob), pattern.lastIndexOf('\\', firstGlob));
+    }
+
+    //DESCRIPTION: lists regular files below root whose path relative to root matches
+    //PRECONDITION: root is a directory
+    //POSTCONDITION: returns sorted file names (empty if root can't be read)
+    private static List<String> walk(Path root, PathMatcher matcher){
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(root.relativize(path)))
+                    .map(path -> path.normalize().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            return new ArrayList<>();
+        }
+    }
+}
@@ -1,104 +1,336 @@
-import java.util.HashMap;
-
 public class CInstructionMapper {
 
+    public static final int INVALID = -1;
+
+    // a-bit of comp field (use M instead of A)
+    static final int M_BIT = 0b1000000;
+
+    // 6 comp bits for operations on D and A (M uses same bits plus M_BIT);
+    // package-private so HackEmulator decodes with the same table
+    static final int ZERO = 0b101010;
+    static final int ONE = 0b111111;
+    static final int NEG_ONE = 0b111010;
+    static final int D = 0b001100;
+    static final int A = 0b110000;
+    static final int NOT_D = 0b001101;
+    static final int NOT_A = 0b110001;
+    static final int NEG_D = 0b001111;
+    static final int NEG_A = 0b110011;
+    static final int D_PLUS_1 = 0b011111;
+    static final int A_PLUS_1 = 0b110111;
+    static final int D_MINUS_1 = 0b001110;
+    static final int A_MINUS_1 = 0b110010;
+    static final int D_PLUS_A = 0b000010;
+    static final int D_MINUS_A = 0b010011;
+    static final int A_MINUS_D = 0b000111;
+    static final int D_AND_A = 0b000000;
+    static final int D_OR_A = 0b010101;
 
-    private HashMap<String,String> jumpCodes;
-    private HashMap<String,String> destCodes;
-    private HashMap<String,String> compCodes;
+
+    //DESCRIPTION: converts to string of bits (3) for given mnemonic
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns string of bits if valid, else returns null
+    public static String dest(String mnemonic){
+        return bits(destCode(mnemonic), 3);
+    }
 
     //DESCRIPTION: converts to string of bits (7) for given mnemonic
-    //PRECONDITION: hashmaps are built with valid values
+    //PRECONDITION: n/a
     //POSTCONDITION: returns string of bits if valid, else returns null
-    public CInstructionMapper(){
-
-        compCodes = new HashMap<>(18);
-        destCodes = new HashMap<>(8);
-        jumpCodes = new HashMap<>(8);
-
-        jumpCodes.put("NULL", "000");
-        jumpCodes.put("JGT", "001");
-        jumpCodes.put("JEQ", "010");
-        jumpCodes.put("JGE", "011");
-        jumpCodes.put("JLT", "100");
-        jumpCodes.put("JNE", "101");
-        jumpCodes.put("JLE", "110");
-        jumpCodes.put("JMP", "111");
-
-        destCodes.put("NULL", "000");
-        destCodes.put("M", "001");
-        destCodes.put("D", "010");
-        destCodes.put("MD", "011");
-        destCodes.put("A", "100");
-        destCodes.put("AM", "101");
-        destCodes.put("AD", "110");
-        destCodes.put("AMD", "111");
-
-        compCodes.put("0", "0101010");
-        compCodes.put("1", "0111111");
-        compCodes.put("-1", "0111010");
-        compCodes.put("D", "0001100");
-        compCodes.put("A", "0110000");
-        compCodes.put("!D", "0001101");
-        compCodes.put("!A", "0110001");
-        compCodes.put("-D", "0001111");
-        compCodes.put("-A", "0110011");
-        compCodes.put("D+1", "0011111");
-        compCodes.put("A+1", "0110111");
-        compCodes.put("D-1", "0001110");
-        compCodes.put("A-1", "0110010");
-        compCodes.put("D+A", "0000010");
-        compCodes.put("D-A", "0010011");
-        compCodes.put("A-D", "0000111");
-        compCodes.put("D&A", "0000000");
-        compCodes.put("D|A", "0010101");
-
-        compCodes.put("M", "1110000");
-        compCodes.put("!M", "1110001");
-        compCodes.put("-M", "1110011");
-        compCodes.put("M+1", "1110111");
-        compCodes.put("M-1", "1110010");
-        compCodes.put("D+M", "1000010");
-        compCodes.put("D-M", "1010011");
-        compCodes.put("M-D", "1000111");
-        compCodes.put("D&M", "1000000");
-        compCodes.put("D|M", "1010101");
+    public static String comp(String mnemonic){
+        return bits(compCode(mnemonic), 7);
     }
 
     //DESCRIPTION: converts to string of bits (3) for given mnemonic
-    //PRECONDITION: hashmaps are built with valid values
+    //PRECONDITION: n/a
     //POSTCONDITION: returns string of bits if valid, else returns null
-    public String dest(String mnemonic){
-        if(destCodes.containsKey(mnemonic)){
-            return destCodes.get(mnemonic);
+    public static String jump(String mnemonic){
+        return bits(jumpCode(mnemonic), 3);
+    }
+
+
+    //DESCRIPTION: builds whole 16-bit C-instruction word from mnemonics
+    //PRECONDITION: mnemonics as returned by Parser (missing dest/jump is "NULL")
+    //POSTCONDITION: returns 111accccccdddjjj as int, or INVALID if any part is unknown
+    public static int instruction(CharSequence comp, CharSequence dest, CharSequence jump){
+        return instruction(compCode(comp), destCode(dest), jumpCode(jump));
+    }
+
+    //DESCRIPTION: builds whole 16-bit C-instruction word from field codes
+    //PRECONDITION: codes from compCode(), destCode(), jumpCode()
+    //POSTCONDITION: returns 111accccccdddjjj as int, or INVALID if any code is INVALID
+    public static int instruction(int comp, int dest, int jump){
+        if(comp == INVALID || dest == INVALID || jump == INVALID){
+            return INVALID;
         }
-        else{
-            return null;
+        return 0b111 << 13 | comp << 6 | dest << 3 | jump;
+    }
+
+
+    //DESCRIPTION: converts dest mnemonic to 3-bit code, registers in any order (MD = DM)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    public static int destCode(CharSequence mnemonic){
+        if(mnemonic == null){
+            return INVALID;
+        }
+        if(isNull(mnemonic)){
+            return 0;
+        }
+        int length = mnemonic.length();
+        int code = 0;
+
+        if(length == 0 || length > 3){
+            return INVALID;
+        }
+        for(int i = 0; i < length; i++){
+            int register = destRegister(mnemonic.charAt(i));
+
+            if(register == INVALID || (code & register) != 0){
+                return INVALID;
+            }
+            code |= register;
         }
+        return code;
     }
 
-    //DESCRIPTION: converts to string of bits (7) for given mnemonic
-    //PRECONDITION: hashmaps are built with valid values
-    //POSTCONDITION: returns string of bits if valid, else returns null
-    public String comp(String mnemonic){
-        if(compCodes.containsKey(mnemonic)){
-            return compCodes.get(mnemonic);
+    //DESCRIPTION: converts comp mnemonic to 7-bit code (a + cccccc),
+    // accepts both operand orders of + & | (A+D = D+A, M&D = D&M, 1+D = D+1)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    public static int compCode(CharSequence mnemonic){
+        if(mnemonic == null){
+            return INVALID;
         }
-        else{
-            return null;
+        int length = mnemonic.length();
+
+        if(length == 1){
+            return comp1(mnemonic.charAt(0));
+        }
+        else if(length == 2){
+            return comp2(mnemonic.charAt(0), mnemonic.charAt(1));
+        }
+        else if(length == 3){
+            return comp3(mnemonic.charAt(0), mnemonic.charAt(1), mnemonic.charAt(2));
         }
+        return INVALID;
     }
 
+    //DESCRIPTION: converts jump mnemonic to 3-bit code
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    public static int jumpCode(CharSequence mnemonic){
+        if(mnemonic == null){
+            return INVALID;
+        }
+        if(isNull(mnemonic)){
+            return 0;
+        }
+        if(mnemonic.length() != 3 || mnemonic.charAt(0) != 'J'){
+            return INVALID;
+        }
+        return jump2(mnemonic.charAt(1), mnemonic.charAt(2));
+    }
 
-    //DESCRIPTION: converts to string of bits (3) for given mnemonic
-    //PRECONDITION: hashmaps are built with valid values
-    //POSTCONDITION: returns string of bits if valid, else returns null
-    public String jump(String mnemonic){
-        if(jumpCodes.containsKey(mnemonic)){
-            return jumpCodes.get(mnemonic);
+
+    //DESCRIPTION: byte slice versions of destCode/compCode/jumpCode (no String needed)
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns same code as for the equal CharSequence
+    public static int destCode(byte[] bytes, int start, int end){
+        int length = end - start;
+
+        if(length == 4 && isNull(bytes, start)){
+            return 0;
+        }
+        if(length == 0 || length > 3){
+            return INVALID;
+        }
+        int code = 0;
+
+        for(int i = start; i < end; i++){
+            int register = destRegister((char) bytes[i]);
+
+            if(register == INVALID || (code & register) != 0){
+                return INVALID;
+            }
+            code |= register;
         }
-        else{
+        return code;
+    }
+
+    public static int compCode(byte[] bytes, int start, int end){
+        int length = end - start;
+
+        if(length == 1){
+            return comp1((char) bytes[start]);
+        }
+        else if(length == 2){
+            return comp2((char) bytes[start], (char) bytes[start + 1]);
+        }
+        else if(length == 3){
+            return comp3((char) bytes[start], (char) bytes[start + 1], (char) bytes[start + 2]);
+        }
+        return INVALID;
+    }
+
+    public static int jumpCode(byte[] bytes, int start, int end){
+        int length = end - start;
+
+        if(length == 4 && isNull(bytes, start)){
+            return 0;
+        }
+        if(length != 3 || bytes[start] != 'J'){
+            return INVALID;
+        }
+        return jump2((char) bytes[start + 1], (char) bytes[start + 2]);
+    }
+
+
+    //ALL PRIVATE METHODS (LOOKUP HELPERS)
+
+    //DESCRIPTION: bit of dest field for one register letter
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns A=100, D=010, M=001, else INVALID
+    private static int destRegister(char c){
+        switch(c){
+            case 'A': return 0b100;
+            case 'D': return 0b010;
+            case 'M': return 0b001;
+            default: return INVALID;
+        }
+    }
+
+    //DESCRIPTION: comp code for single character mnemonic
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    private static int comp1(char c){
+        switch(c){
+            case '0': return ZERO;
+            case '1': return ONE;
+            case 'D': return D;
+            case 'A': return A;
+            case 'M': return M_BIT | A;
+            default: return INVALID;
+        }
+    }
+
+    //DESCRIPTION: comp code for unary mnemonic (-x, !x)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    private static int comp2(char op, char x){
+        if(op == '-'){
+            switch(x){
+                case '1': return NEG_ONE;
+                case 'D': return NEG_D;
+                case 'A': return NEG_A;
+                case 'M': return M_BIT | NEG_A;
+                default: return INVALID;
+            }
+        }
+        else if(op == '!'){
+            switch(x){
+                case 'D': return NOT_D;
+                case 'A': return NOT_A;
+                case 'M': return M_BIT | NOT_A;
+                default: return INVALID;
+            }
+        }
+        return INVALID;
+    }
+
+    //DESCRIPTION: comp code for binary mnemonic (x op y), M handled as A plus a-bit
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    private static int comp3(char x, char op, char y){
+        int a = 0;
+
+        if(x == 'M'){
+            x = 'A';
+            a = M_BIT;
+        }
+        if(y == 'M'){
+            if(a != 0 || x == 'A'){
+                return INVALID;
+            }
+            y = 'A';
+            a = M_BIT;
+        }
+        if(x == 'A' && y == 'A'){
+            return INVALID;
+        }
+
+        // commutative operators: put operands in one order (D before A, register before 1)
+        if((op == '+' || op == '&' || op == '|') && (x == 'A' || x == '1') && y != '1'){
+            char swap = x;
+            x = y;
+            y = swap;
+        }
+
+        int code;
+        switch(op){
+            case '+':
+                code = y == '1' ? (x == 'D' ? D_PLUS_1 : x == 'A' ? A_PLUS_1 : INVALID)
+                        : (x == 'D' && y == 'A' ? D_PLUS_A : INVALID);
+                break;
+            case '-':
+                if(y == '1'){
+                    code = x == 'D' ? D_MINUS_1 : x == 'A' ? A_MINUS_1 : INVALID;
+                }
+                else{
+                    code = x == 'D' && y == 'A' ? D_MINUS_A : x == 'A' && y == 'D' ? A_MINUS_D : INVALID;
+                }
+                break;
+            case '&':
+                code = x == 'D' && y == 'A' ? D_AND_A : INVALID;
+                break;
+            case '|':
+                code = x == 'D' && y == 'A' ? D_OR_A : INVALID;
+                break;
+            default:
+                code = INVALID;
+        }
+        return code == INVALID ? INVALID : a | code;
+    }
+
+    //DESCRIPTION: jump code from the two letters after 'J'
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns code if valid, else INVALID
+    private static int jump2(char c1, char c2){
+        switch(c1){
+            case 'G': return c2 == 'T' ? 0b001 : c2 == 'E' ? 0b011 : INVALID;
+            case 'E': return c2 == 'Q' ? 0b010 : INVALID;
+            case 'L': return c2 == 'T' ? 0b100 : c2 == 'E' ? 0b110 : INVALID;
+            case 'N': return c2 == 'E' ? 0b101 : INVALID;
+            case 'M': return c2 == 'P' ? 0b111 : INVALID;
+            default: return INVALID;
+        }
+    }
+
+    //DESCRIPTION: checks for "NULL" (field left out of instruction)
+    //PRECONDITION: mnemonic not null
+    //POSTCONDITION: returns true if mnemonic is NULL
+    private static boolean isNull(CharSequence mnemonic){
+        return mnemonic.length() == 4 && mnemonic.charAt(0) == 'N' && mnemonic.charAt(1) == 'U'
+                && mnemonic.charAt(2) == 'L' && mnemonic.charAt(3) == 'L';
+    }
+
+    private static boolean isNull(byte[] bytes, int start){
+        return bytes[start] == 'N' && bytes[start + 1] == 'U' && bytes[start + 2] == 'L' && bytes[start + 3] == 'L';
+    }
+
+    //DESCRIPTION: formats code as fixed width string of bits
+    //PRECONDITION: width large enough for code
+    //POSTCONDITION: returns bits (MSB first), null if code is INVALID
+    private static String bits(int code, int width){
+        if(code == INVALID){
             return null;
         }
+        char[] digits = new char[width];
+
+        for(int i = width - 1; i >= 0; i--){
+            digits[i] = (char) ('0' + (code & 1));
+            code >>= 1;
+        }
+        return new String(digits);
     }
 }
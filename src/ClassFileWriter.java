@@ -0,0 +1,450 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the JVM class file format for HackTranslator: a constant pool, methods
+// with one Code attribute each, and labels for branches. Writes version 49 (Java 5), the
+// last one the JVM verifies by type inference, so branching code needs no stack map frames.
+public class ClassFileWriter {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    // OPCODES (the ones HackTranslator emits)
+    public static final int ICONST_0 = 0x03;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC_W = 0x13;
+    public static final int ILOAD = 0x15;
+    public static final int ALOAD = 0x19;
+    public static final int IALOAD = 0x2E;
+    public static final int SALOAD = 0x35;
+    public static final int ISTORE = 0x36;
+    public static final int IASTORE = 0x4F;
+    public static final int SASTORE = 0x56;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int INEG = 0x74;
+    public static final int IAND = 0x7E;
+    public static final int IOR = 0x80;
+    public static final int IXOR = 0x82;
+    public static final int IINC = 0x84;
+    public static final int I2S = 0x93;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9A;
+    public static final int IFLT = 0x9B;
+    public static final int IFGE = 0x9C;
+    public static final int IFGT = 0x9D;
+    public static final int IFLE = 0x9E;
+    public static final int IF_ICMPGE = 0xA2;
+    public static final int GOTO = 0xA7;
+    public static final int TABLESWITCH = 0xAA;
+    public static final int IRETURN = 0xAC;
+    public static final int RETURN = 0xB1;
+    public static final int INVOKESPECIAL = 0xB7;
+    public static final int INVOKESTATIC = 0xB8;
+    public static final int WIDE = 0xC4;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int VERSION = 49;
+
+    // CONSTANT POOL TAGS
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    //PRIVATE VARIABLES
+    private ByteArrayOutputStream poolBytes;
+    private DataOutputStream pool;
+    // entry index of every constant written, keyed by tag and value
+    private Map<String, Integer> constants;
+    private int poolCount;
+    private int thisClass;
+    private int superClass;
+    private int[] interfaces;
+    private ByteArrayOutputStream methodBytes;
+    private DataOutputStream methods;
+    private int methodCount;
+
+
+    //DESCRIPTION: starts class file
+    //PRECONDITION: names are internal names (e.g. java/lang/Object, Outer$Inner)
+    //POSTCONDITION: class has no methods yet
+    public ClassFileWriter(String name, String superName, String... interfaceNames){
+        poolBytes = new ByteArrayOutputStream();
+        pool = new DataOutputStream(poolBytes);
+        constants = new HashMap<>();
+        poolCount = 1;
+        methodBytes = new ByteArrayOutputStream();
+        methods = new DataOutputStream(methodBytes);
+
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for(int i = 0; i < interfaceNames.length; i++){
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+
+    //DESCRIPTION: adds method with its code
+    //PRECONDITION: code finished (every label marked), maxStack and maxLocals cover it
+    //POSTCONDITION: method written, throws IllegalStateException if code is over the 64K limit
+    public void addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals){
+        byte[] bytes = code.toBytes();
+
+        try {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1);
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(bytes.length);
+            methods.write(bytes);
+            methods.writeShort(0);
+            methods.writeShort(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        methodCount++;
+    }
+
+    //DESCRIPTION: adds public constructor that only calls the superclass one
+    //PRECONDITION: superclass has a no-argument constructor
+    //POSTCONDITION: method written
+    public void addDefaultConstructor(String superName){
+        Code code = new Code();
+
+        code.op(ALOAD, 0);
+        code.op(INVOKESPECIAL);
+        code.u2(methodRef(superName, "<init>", "()V"));
+        code.op(RETURN);
+        addMethod(ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+    }
+
+    //DESCRIPTION: constant pool entry of a method (for invokestatic / invokespecial)
+    //PRECONDITION: names are internal names, descriptor e.g. (IIII)I
+    //POSTCONDITION: returns pool index, entry added once
+    public int methodRef(String owner, String name, String descriptor){
+        int nameAndType = nameAndType(name, descriptor);
+        int owningClass = classRef(owner);
+
+        return constant(METHOD_REF + ":" + owningClass + ":" + nameAndType, out -> {
+            out.writeByte(METHOD_REF);
+            out.writeShort(owningClass);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    //DESCRIPTION: constant pool entry of an int (for ldc_w)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns pool index, entry added once
+    public int integer(int value){
+        return constant(INTEGER + ":" + value, out -> {
+            out.writeByte(INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    //DESCRIPTION: class file bytes
+    //PRECONDITION: all methods added
+    //POSTCONDITION: returns bytes for ClassLoader.defineClass() or Lookup.defineHiddenClass()
+    public byte[] toBytes(){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(poolBytes.size() + methodBytes.size() + 64);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for(int index : interfaces){
+                out.writeShort(index);
+            }
+            out.writeShort(0);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    private int classRef(String name){
+        int nameIndex = utf8(name);
+
+        return constant(CLASS + ":" + nameIndex, out -> {
+            out.writeByte(CLASS);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor){
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+
+        return constant(NAME_AND_TYPE + ":" + nameIndex + ":" + descriptorIndex, out -> {
+            out.writeByte(NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int utf8(String value){
+        return constant(UTF8 + ":" + value, out -> {
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    //DESCRIPTION: finds constant in the pool, or writes it
+    //PRECONDITION: key tells the entry apart from every other one
+    //POSTCONDITION: returns pool index
+    private int constant(String key, PoolEntry entry){
+        Integer index = constants.get(key);
+
+        if(index != null){
+            return index;
+        }
+        try {
+            entry.write(pool);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        constants.put(key, poolCount);
+        return poolCount++;
+    }
+
+
+    // writes one constant pool entry
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+
+    // Bytecode of one method. Branches name a label (newLabel()) that may be marked later;
+    // toBytes() fills in the offsets.
+    public static class Code {
+
+        //PRIVATE VARIABLES
+        private byte[] bytes;
+        private int length;
+        private int[] labels;
+        private int labelCount;
+        // where each branch offset goes: position of the offset, of the opcode, label, 2 or 4 bytes
+        private List<int[]> fixups;
+
+
+        //DESCRIPTION: creates empty method body
+        //PRECONDITION: n/a
+        //POSTCONDITION: no code, no labels
+        public Code(){
+            bytes = new byte[256];
+            labels = new int[16];
+            fixups = new ArrayList<>();
+        }
+
+
+        //DESCRIPTION: emits opcode, alone or with one unsigned byte operand (a local for loads and stores)
+        //PRECONDITION: local < 256, use load() / store() for any local
+        //POSTCONDITION: bytes appended
+        public void op(int opcode){
+            u1(opcode);
+        }
+
+        public void op(int opcode, int operand){
+            u1(opcode);
+            u1(operand);
+        }
+
+        //DESCRIPTION: pushes int constant with the shortest instruction
+        //PRECONDITION: ldc_w needs the constant's pool index (ClassFileWriter.integer()) for values
+        // outside the short range, so those take the writer
+        //POSTCONDITION: bytes appended
+        public void push(int value, ClassFileWriter writer){
+            if(value >= -1 && value <= 5){
+                u1(ICONST_0 + value);
+            }
+            else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+                op(BIPUSH, value & 0xFF);
+            }
+            else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+                u1(SIPUSH);
+                u2(value);
+            }
+            else{
+                u1(LDC_W);
+                u2(writer.integer(value));
+            }
+        }
+
+        //DESCRIPTION: iload / istore / aload of local, short form for locals 0-3
+        //PRECONDITION: 0 <= local < 256
+        //POSTCONDITION: bytes appended
+        public void load(int local){
+            local(ILOAD, 0x1A, local);
+        }
+
+        public void store(int local){
+            local(ISTORE, 0x3B, local);
+        }
+
+        public void loadReference(int local){
+            local(ALOAD, 0x2A, local);
+        }
+
+        //DESCRIPTION: adds constant to int local (iinc, wide if it doesn't fit a byte)
+        //PRECONDITION: 0 <= local < 256, value in short range
+        //POSTCONDITION: bytes appended
+        public void increment(int local, int value){
+            if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+                op(IINC, local);
+                u1(value);
+            }
+            else{
+                u1(WIDE);
+                u1(IINC);
+                u2(local);
+                u2(value);
+            }
+        }
+
+        //DESCRIPTION: creates label for branches
+        //PRECONDITION: n/a
+        //POSTCONDITION: returns label, to be marked once with mark()
+        public int newLabel(){
+            if(labelCount == labels.length){
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            }
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        //DESCRIPTION: places label at the next instruction
+        //PRECONDITION: label not marked yet
+        //POSTCONDITION: branches to label go here
+        public void mark(int label){
+            labels[label] = length;
+        }
+
+        //DESCRIPTION: emits branch (goto, if<cond>, if_icmp<cond>) to label
+        //PRECONDITION: label from newLabel()
+        //POSTCONDITION: bytes appended, offset filled in by toBytes()
+        public void branch(int opcode, int label){
+            fixups.add(new int[]{length + 1, length, label, 2});
+            u1(opcode);
+            u2(0);
+        }
+
+        //DESCRIPTION: emits tableswitch over low..high
+        //PRECONDITION: targets[i] is the label for value low + i
+        //POSTCONDITION: bytes appended, offsets filled in by toBytes()
+        public void tableSwitch(int low, int defaultLabel, int[] targets){
+            int opcode = length;
+
+            u1(TABLESWITCH);
+            while(length % 4 != 0){
+                u1(0);
+            }
+            fixups.add(new int[]{length, opcode, defaultLabel, 4});
+            u4(0);
+            u4(low);
+            u4(low + targets.length - 1);
+            for(int target : targets){
+                fixups.add(new int[]{length, opcode, target, 4});
+                u4(0);
+            }
+        }
+
+        //DESCRIPTION: emits unsigned 16-bit operand (e.g. a constant pool index)
+        //PRECONDITION: n/a
+        //POSTCONDITION: bytes appended
+        public void u2(int value){
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        //GETTER METHODS
+        //DESCRIPTION: getter for bytes emitted so far
+        //PRECONDITION: n/a
+        //POSTCONDITION: returns code length
+        public int size(){
+            return length;
+        }
+
+        //DESCRIPTION: code with every branch offset filled in
+        //PRECONDITION: every label a branch names is marked
+        //POSTCONDITION: returns bytes, throws IllegalStateException for an unmarked label, a branch
+        // too far for 16 bits or code over the 64K limit
+        public byte[] toBytes(){
+            if(length > 65535){
+                throw new IllegalStateException("Method has " + length + " bytes of code, the limit is 65535");
+            }
+            for(int[] fixup : fixups){
+                int target = labels[fixup[2]];
+
+                if(target < 0){
+                    throw new IllegalStateException("Branch to unmarked label");
+                }
+                int offset = target - fixup[1];
+                if(fixup[3] == 2){
+                    if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE){
+                        throw new IllegalStateException("Branch offset " + offset + " needs more than 16 bits");
+                    }
+                    bytes[fixup[0]] = (byte) (offset >> 8);
+                    bytes[fixup[0] + 1] = (byte) offset;
+                }
+                else{
+                    for(int i = 0; i < 4; i++){
+                        bytes[fixup[0] + i] = (byte) (offset >> (24 - 8 * i));
+                    }
+                }
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+
+
+        //ALL PRIVATE METHODS
+
+        private void local(int opcode, int shortOpcode, int local){
+            if(local <= 3){
+                u1(shortOpcode + local);
+            }
+            else{
+                op(opcode, local);
+            }
+        }
+
+        private void u1(int value){
+            if(length == bytes.length){
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u4(int value){
+            u2(value >>> 16);
+            u2(value & 0xFFFF);
+        }
+    }
+}
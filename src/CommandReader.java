@@ -0,0 +1,69 @@
+public interface CommandReader {
+
+    //DESCRIPTION: returns boolean if more commands left, closes stream if not
+    //PRECONDITION: reader was opened
+    //POSTCONDITION: returns true if more commands, else closes stream
+    boolean hasMoreCommands();
+
+    //DESCRIPTION: reads next line and parses it into current command
+    //PRECONDITION: called only if hasMoreCommands()
+    //POSTCONDITION: current instruction parts available from getters
+    void advance();
+
+    //DESCRIPTION: getter for command type
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns Parser.NO_COMMAND, A_COMMAND, C_COMMAND or L_COMMAND
+    char getCommandType();
+
+    //DESCRIPTION: getter for symbol of A- or L-command
+    //PRECONDITION: advance was called, command is A or L
+    //POSTCONDITION: returns symbol (or number) as written in source
+    String getSymbol();
+
+    //DESCRIPTION: getter for dest part of C-instruction
+    //PRECONDITION: advance was called, command is C
+    //POSTCONDITION: returns dest mnemonic or "NULL"
+    String getDest();
+
+    //DESCRIPTION: getter for comp part of C-instruction
+    //PRECONDITION: advance was called, command is C
+    //POSTCONDITION: returns comp mnemonic
+    String getComp();
+
+    //DESCRIPTION: getter for jump part of C-instruction
+    //PRECONDITION: advance was called, command is C
+    //POSTCONDITION: returns jump mnemonic or "NULL"
+    String getJump();
+
+    //DESCRIPTION: getter for whole C-instruction word, looked up in the reader's InstructionCache
+    // first (a hit skips splitting the line into fields); a missed line is translated and cached
+    //PRECONDITION: advance was called, command is C
+    //POSTCONDITION: returns 111accccccdddjjj as int, or CInstructionMapper.INVALID if any part is unknown
+    int getInstruction();
+
+    //DESCRIPTION: getter for the cache getInstruction() uses
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns cache with its hit and miss counts
+    InstructionCache getInstructionCache();
+
+    //DESCRIPTION: getter for instruction counter
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns number of A- and C-instructions read so far
+    int getLineNumber();
+
+    //DESCRIPTION: getter for current command without spaces, tabs and comment
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns clean line
+    String getCleanLine();
+
+    //DESCRIPTION: getter for number of source line of current command (1 = first line)
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns count of lines read so far, blank and comment lines included
+    int getSourceLine();
+
+    //DESCRIPTION: maps position in clean line back to the source line (for diagnostics)
+    //PRECONDITION: advance was called, 0 <= offset <= length of getCleanLine()
+    //POSTCONDITION: returns column (1 = first char) of char at offset, or just after the
+    // last one if offset is the length
+    int getColumn(int offset);
+}
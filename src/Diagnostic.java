@@ -0,0 +1,54 @@
+public class Diagnostic {
+
+    //PRIVATE VARIABLES
+    private String file;
+    private int line;
+    private int column;
+    private String message;
+
+
+    //DESCRIPTION: creates error report for one place in the source
+    //PRECONDITION: line >= 1 (0 if the error has no line), column >= 1 (0 if unknown),
+    // file is null for sources that aren't files
+    //POSTCONDITION: diagnostic holds file, line, column and message
+    public Diagnostic(String file, int line, int column, String message){
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+
+    //GETTER METHODS
+    public String getFile(){
+        return file;
+    }
+
+    public int getLine(){
+        return line;
+    }
+
+    public int getColumn(){
+        return column;
+    }
+
+    public String getMessage(){
+        return message;
+    }
+
+    //DESCRIPTION: formats diagnostic for printing (the file:line:column form editors link to)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns "file:line:column: message", parts that are unknown left out
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+
+        if(file != null){
+            text.append(file).append(':');
+        }
+        text.append(line).append(':');
+        if(column > 0){
+            text.append(column).append(':');
+        }
+        return text.append(' ').append(message).toString();
+    }
+}
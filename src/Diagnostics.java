@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Collects the errors of one assembly so it can go on to the end of the source and report
+// all of them at once; the readers' getColumn() maps clean line offsets back to the source.
+public class Diagnostics {
+
+    // more than this are counted but not kept (a binary file fed in by mistake has millions)
+    public static final int MAX_ERRORS = 100;
+
+    //PRIVATE VARIABLES
+    private String file;
+    private List<Diagnostic> errors;
+    private int count;
+
+
+    //DESCRIPTION: creates empty collector for one source
+    //PRECONDITION: file is name to print, null if source isn't a file
+    //POSTCONDITION: collector has no errors
+    public Diagnostics(String file){
+        this.file = file;
+        this.errors = new ArrayList<>();
+    }
+
+
+    //DESCRIPTION: records error at line and column
+    //PRECONDITION: line >= 1, column >= 1 (0 if unknown)
+    //POSTCONDITION: error counted, kept if fewer than MAX_ERRORS were kept before
+    public void error(int line, int column, String message){
+        count++;
+        if(errors.size() < MAX_ERRORS){
+            errors.add(new Diagnostic(file, line, column, message));
+        }
+    }
+
+    //DESCRIPTION: records error in the reader's current command
+    //PRECONDITION: advance was called, offset is position in the clean line
+    //POSTCONDITION: error recorded at the source line and column of offset
+    public void error(CommandReader reader, int offset, String message){
+        error(reader.getSourceLine(), reader.getColumn(offset), message);
+    }
+
+    //DESCRIPTION: checks if any error was recorded
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if error() was called
+    public boolean hasErrors(){
+        return count > 0;
+    }
+
+    //DESCRIPTION: getter for number of errors, kept or not
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of error() calls
+    public int getErrorCount(){
+        return count;
+    }
+
+    //DESCRIPTION: getter for kept errors in source order
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns unmodifiable list sorted by line, then column
+    public List<Diagnostic> getDiagnostics(){
+        List<Diagnostic> sorted = new ArrayList<>(errors);
+
+        sorted.sort(Comparator.comparingInt(Diagnostic::getLine).thenComparingInt(Diagnostic::getColumn));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    //DESCRIPTION: builds the exception that fails the assembly
+    //PRECONDITION: hasErrors() is true
+    //POSTCONDITION: returns exception with "N errors" message and the kept errors
+    public AssemblyException toException(){
+        String message = count + (count == 1 ? " error" : " errors");
+
+        if(count > errors.size()){
+            message += " (first " + errors.size() + " shown)";
+        }
+        return new AssemblyException(message, getDiagnostics());
+    }
+
+    //DESCRIPTION: formats failed assembly for a status line: message, then one indented
+    // line per diagnostic
+    //PRECONDITION: ex not null
+    //POSTCONDITION: returns text without trailing line separator
+    public static String describe(AssemblyException ex){
+        StringBuilder text = new StringBuilder(String.valueOf(ex.getMessage()));
+
+        for(Diagnostic diagnostic : ex.getDiagnostics()){
+            text.append(System.lineSeparator()).append("    ").append(diagnostic);
+        }
+        return text.toString();
+    }
+}
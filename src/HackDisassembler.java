@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Turns machine code back into assembly. The mnemonic tables are filled by asking
+// CInstructionMapper for the code of every mnemonic it accepts, so the disassembler can't
+// drift from the assembler. Text goes straight into a byte buffer, no String per line.
+public class HackDisassembler {
+
+    // jump targets become labels named L + address (the text has no other symbols)
+    public static final String LABEL_PREFIX = "L";
+
+    // comp mnemonics with A; the M forms are the same with A replaced
+    private static final String[] A_COMPS = {
+            "0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1", "A-1",
+            "D+A", "D-A", "A-D", "D&A", "D|A"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String DEST_REGISTERS = "AMD";
+
+    // mnemonic bytes by code, null where the code has no mnemonic
+    private static final byte[][] COMP_NAMES = new byte[128][];
+    private static final byte[][] DEST_NAMES = new byte[8][];
+    private static final byte[][] JUMP_NAMES = new byte[8][];
+
+    // C-instructions as the assembler writes them: 111 in bits 15-13
+    private static final int C_PREFIX = 0b111 << 13;
+
+    static {
+        for(String comp : A_COMPS){
+            enter(COMP_NAMES, CInstructionMapper.compCode(comp), comp);
+            enter(COMP_NAMES, CInstructionMapper.compCode(comp.replace('A', 'M')), comp.replace('A', 'M'));
+        }
+        for(int code = 1; code < 8; code++){
+            StringBuilder dest = new StringBuilder();
+
+            for(int i = 0; i < DEST_REGISTERS.length(); i++){
+                String register = DEST_REGISTERS.substring(i, i + 1);
+                if((CInstructionMapper.destCode(register) & code) != 0){
+                    dest.append(register);
+                }
+            }
+            enter(DEST_NAMES, CInstructionMapper.destCode(dest), dest.toString());
+        }
+        for(String jump : JUMPS){
+            enter(JUMP_NAMES, CInstructionMapper.jumpCode(jump), jump);
+        }
+    }
+
+    //PRIVATE VARIABLES
+    private byte[] text;
+    private int length;
+    private byte[] lineSeparator;
+
+
+    //DESCRIPTION: creates disassembler whose lines end with the system line separator
+    //PRECONDITION: n/a
+    //POSTCONDITION: ready to disassemble()
+    public HackDisassembler(){
+        this(System.lineSeparator());
+    }
+
+    //DESCRIPTION: creates disassembler with given line ends
+    //PRECONDITION: lineSeparator is "\n" or "\r\n"
+    //POSTCONDITION: ready to disassemble()
+    public HackDisassembler(String lineSeparator){
+        this.text = new byte[1024];
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    //DESCRIPTION: converts ROM to assembly, one line per word plus a label line before every
+    // address an @address + jump pair goes to (that @ then names the label); a word the
+    // assembler can't produce (bits 14-13 not 11, or a comp with no mnemonic) becomes
+    // ?<16 binary digits>, which is not valid assembly, so reassembling it fails at that line
+    //PRECONDITION: words from HackReader, InMemoryAssembler or the like
+    //POSTCONDITION: returns ASCII text that assembles to words again (if no ? line)
+    public byte[] disassemble(short[] words){
+        render(words);
+        return Arrays.copyOf(text, length);
+    }
+
+    //DESCRIPTION: disassembles words into out (see disassemble(short[]))
+    //PRECONDITION: out open
+    //POSTCONDITION: text written (out not closed), throws IOException if out can't be written
+    public void disassemble(short[] words, OutputStream out) throws IOException {
+        render(words);
+        out.write(text, 0, length);
+    }
+
+    //DESCRIPTION: writes the disassembly of every input (.hack or .bin) next to it (--disassemble)
+    //PRECONDITION: options parsed, inputs not empty
+    //POSTCONDITION: prints one line per file to out (failures to err), returns number of files that failed
+    public static int run(AssemblerOptions options, PrintStream out, PrintStream err){
+        HackDisassembler disassembler = new HackDisassembler();
+        int failed = 0;
+
+        for(String input : options.getInputs()){
+            String outputFileName = options.disassemblyFileName(input);
+
+            try {
+                short[] words = HackReader.read(input);
+
+                try (OutputStream output = Files.newOutputStream(Paths.get(outputFileName))) {
+                    disassembler.disassemble(words, output);
+                }
+                out.println(input + " -> " + outputFileName + " (" + words.length + " instructions)");
+            } catch (IOException ex) {
+                failed++;
+                err.println("Could not disassemble " + input + ": " + ex.getMessage());
+            }
+        }
+        return failed;
+    }
+
+    //DESCRIPTION: one word as assembly, for messages and traces (numbers instead of labels)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns e.g. "@17", "MD=M-1", "0;JMP" or "?1000000000000000"
+    public static String instruction(short word){
+        HackDisassembler line = new HackDisassembler("\n");
+
+        if((word & 0x8000) == 0){
+            line.appendAddress(word, false);
+        }
+        else{
+            line.appendCompute(word & 0xFFFF);
+        }
+        return new String(line.text, 0, line.length, StandardCharsets.US_ASCII);
+    }
+
+    //DESCRIPTION: checks if word is a C-instruction the assembler can produce
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true for A-instructions and 111 + known comp
+    public static boolean isAssemblable(short word){
+        return (word & 0x8000) == 0 || ((word & C_PREFIX) == C_PREFIX && COMP_NAMES[word >> 6 & 0x7F] != null);
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: writes the text of words into the buffer
+    //PRECONDITION: n/a
+    //POSTCONDITION: text[0..length) holds the disassembly
+    private void render(short[] words){
+        BitSet targets = new BitSet();
+        BitSet labelled = new BitSet();
+
+        findJumpTargets(words, targets, labelled);
+        length = 0;
+
+        for(int i = 0; i < words.length; i++){
+            if(targets.get(i)){
+                appendLabel(i);
+            }
+            int word = words[i] & 0xFFFF;
+
+            if((word & 0x8000) == 0){
+                appendAddress(word, labelled.get(i));
+            }
+            else{
+                appendCompute(word);
+            }
+            appendLineSeparator();
+        }
+        if(targets.get(words.length)){
+            appendLabel(words.length);
+        }
+    }
+
+    //DESCRIPTION: stores mnemonic under the code the mapper gives it
+    //PRECONDITION: code from CInstructionMapper for mnemonic
+    //POSTCONDITION: names[code] holds mnemonic bytes, throws IllegalStateException if the
+    // mapper rejects a mnemonic of the book's tables
+    private static void enter(byte[][] names, int code, String mnemonic){
+        if(code == CInstructionMapper.INVALID){
+            throw new IllegalStateException("CInstructionMapper has no code for " + mnemonic);
+        }
+        names[code] = mnemonic.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    //DESCRIPTION: marks addresses that @address + jump pairs go to
+    //PRECONDITION: targets and labelled empty
+    //POSTCONDITION: targets has every such address up to words.length (end of ROM included),
+    // labelled the index of each @ that loads one
+    private static void findJumpTargets(short[] words, BitSet targets, BitSet labelled){
+        for(int i = 0; i + 1 < words.length; i++){
+            int next = words[i + 1];
+
+            if(words[i] >= 0 && words[i] <= words.length && isAssemblable(words[i + 1])
+                    && (next & 0x8000) != 0 && (next & 0b111) != 0){
+                targets.set(words[i]);
+                labelled.set(i);
+            }
+        }
+    }
+
+    //DESCRIPTION: appends "(L<address>)" line
+    //PRECONDITION: n/a
+    //POSTCONDITION: label line in text
+    private void appendLabel(int address){
+        ensure(16);
+        text[length++] = '(';
+        appendAscii(LABEL_PREFIX);
+        appendNumber(address);
+        text[length++] = ')';
+        appendLineSeparator();
+    }
+
+    //DESCRIPTION: appends "@value" or "@L<value>"
+    //PRECONDITION: 0 <= value <= InstructionList.MAX_LITERAL
+    //POSTCONDITION: A-instruction in text (no line end)
+    private void appendAddress(int value, boolean label){
+        ensure(16);
+        text[length++] = '@';
+        if(label){
+            appendAscii(LABEL_PREFIX);
+        }
+        appendNumber(value);
+    }
+
+    //DESCRIPTION: appends "dest=comp;jump" leaving out empty parts, or "?" + binary digits
+    //PRECONDITION: bit 15 of word set
+    //POSTCONDITION: C-instruction in text (no line end)
+    private void appendCompute(int word){
+        byte[] comp = COMP_NAMES[word >> 6 & 0x7F];
+        byte[] dest = DEST_NAMES[word >> 3 & 7];
+        byte[] jump = JUMP_NAMES[word & 7];
+
+        ensure(24);
+        if((word & C_PREFIX) != C_PREFIX || comp == null){
+            text[length++] = '?';
+            for(int bit = 15; bit >= 0; bit--){
+                text[length++] = (byte) ((word >> bit & 1) == 0 ? '0' : '1');
+            }
+            return;
+        }
+        if(dest != null){
+            System.arraycopy(dest, 0, text, length, dest.length);
+            length += dest.length;
+            text[length++] = '=';
+        }
+        System.arraycopy(comp, 0, text, length, comp.length);
+        length += comp.length;
+        if(jump != null){
+            text[length++] = ';';
+            System.arraycopy(jump, 0, text, length, jump.length);
+            length += jump.length;
+        }
+    }
+
+    //DESCRIPTION: appends decimal digits of value
+    //PRECONDITION: value >= 0, room for 10 bytes
+    //POSTCONDITION: digits in text
+    private void appendNumber(int value){
+        int digits = 1;
+        for(int rest = value / 10; rest > 0; rest /= 10){
+            digits++;
+        }
+        for(int i = length + digits - 1; i >= length; i--){
+            text[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendAscii(String ascii){
+        for(int i = 0; i < ascii.length(); i++){
+            text[length++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void appendLineSeparator(){
+        ensure(lineSeparator.length);
+        System.arraycopy(lineSeparator, 0, text, length, lineSeparator.length);
+        length += lineSeparator.length;
+    }
+
+    //DESCRIPTION: grows text buffer
+    //PRECONDITION: room >= 0
+    //POSTCONDITION: text has room free bytes after length
+    private void ensure(int room){
+        if(length + room > text.length){
+            text = Arrays.copyOf(text, Math.max(text.length * 2, length + room));
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Hack CPU with 32K words of RAM (SCREEN and KBD mapped where SymbolTable puts them).
+// Every ROM word is decoded once into a micro-op: the ALU function in the low bits, so the
+// run loop is one switch per C-instruction with no bit twiddling on the comp field.
+// With a HackTranslator the program runs as translated bytecode wherever it can and the
+// interpreter only steps the instructions in between.
+public class HackEmulator {
+
+    public static final int RAM_SIZE = 1 << 15;
+    public static final int ROM_SIZE = 1 << 15;
+    public static final int SCREEN = SymbolTable.getPredefinedAddress("SCREEN");
+    public static final int KBD = SymbolTable.getPredefinedAddress("KBD");
+    public static final int SCREEN_WIDTH = 512;
+    public static final int SCREEN_HEIGHT = 256;
+
+    private static final int ADDRESS_MASK = RAM_SIZE - 1;
+
+    // MICRO-OPS (bits 0-5; dest in bits 6-8, jump in bits 9-11,
+    // value of LOAD/HALT or comp field of ALU from bit 16)
+    private static final int LOAD = 0;
+    private static final int HALT = 1;
+    private static final int END = 2;
+    private static final int ZERO = 3;
+    private static final int ONE = 4;
+    private static final int NEG_ONE = 5;
+    private static final int D = 6;
+    private static final int A = 7;
+    private static final int NOT_D = 8;
+    private static final int NOT_A = 9;
+    private static final int NEG_D = 10;
+    private static final int NEG_A = 11;
+    private static final int D_PLUS_1 = 12;
+    private static final int A_PLUS_1 = 13;
+    private static final int D_MINUS_1 = 14;
+    private static final int A_MINUS_1 = 15;
+    private static final int D_PLUS_A = 16;
+    private static final int D_MINUS_A = 17;
+    private static final int A_MINUS_D = 18;
+    private static final int D_AND_A = 19;
+    private static final int D_OR_A = 20;
+    private static final int M = 21;
+    private static final int NOT_M = 22;
+    private static final int NEG_M = 23;
+    private static final int M_PLUS_1 = 24;
+    private static final int M_MINUS_1 = 25;
+    private static final int D_PLUS_M = 26;
+    private static final int D_MINUS_M = 27;
+    private static final int M_MINUS_D = 28;
+    private static final int D_AND_M = 29;
+    private static final int D_OR_M = 30;
+    // comp bits outside the book's table, computed bit by bit like the hardware ALU
+    private static final int ALU = 31;
+
+    // DEST BITS
+    private static final int DEST_A = 0b100;
+    private static final int DEST_D = 0b010;
+    private static final int DEST_M = 0b001;
+
+    // micro-op for every 7-bit comp field (a-bit included)
+    private static final int[] COMP_OPS = new int[128];
+
+    static {
+        int[] comps = {CInstructionMapper.ZERO, CInstructionMapper.ONE, CInstructionMapper.NEG_ONE, CInstructionMapper.D,
+                CInstructionMapper.A, CInstructionMapper.NOT_D, CInstructionMapper.NOT_A, CInstructionMapper.NEG_D,
+                CInstructionMapper.NEG_A, CInstructionMapper.D_PLUS_1, CInstructionMapper.A_PLUS_1,
+                CInstructionMapper.D_MINUS_1, CInstructionMapper.A_MINUS_1, CInstructionMapper.D_PLUS_A,
+                CInstructionMapper.D_MINUS_A, CInstructionMapper.A_MINUS_D, CInstructionMapper.D_AND_A,
+                CInstructionMapper.D_OR_A};
+        int[] aOps = {ZERO, ONE, NEG_ONE, D, A, NOT_D, NOT_A, NEG_D, NEG_A, D_PLUS_1, A_PLUS_1, D_MINUS_1, A_MINUS_1,
+                D_PLUS_A, D_MINUS_A, A_MINUS_D, D_AND_A, D_OR_A};
+        // with the a-bit set, functions that don't read A stay the same
+        int[] mOps = {ZERO, ONE, NEG_ONE, D, M, NOT_D, NOT_M, NEG_D, NEG_M, D_PLUS_1, M_PLUS_1, D_MINUS_1, M_MINUS_1,
+                D_PLUS_M, D_MINUS_M, M_MINUS_D, D_AND_M, D_OR_M};
+
+        Arrays.fill(COMP_OPS, ALU);
+        for(int i = 0; i < comps.length; i++){
+            COMP_OPS[comps[i]] = aOps[i];
+            COMP_OPS[CInstructionMapper.M_BIT | comps[i]] = mOps[i];
+        }
+    }
+
+    //PRIVATE VARIABLES
+    private int[] code;
+    private int romLength;
+    private short[] ram;
+    private int a;
+    private int d;
+    private int pc;
+    private long cycles;
+    private boolean halted;
+    // translated ROM (--aot), null to interpret every instruction
+    private HackTranslator translator;
+    // A, D and cycles left, passed to and from the translated code
+    private int[] registers;
+
+
+    //DESCRIPTION: loads ROM and decodes every word; RAM, A, D and PC start at 0
+    //PRECONDITION: rom holds at most ROM_SIZE words (e.g. from HackReader or InMemoryAssembler)
+    //POSTCONDITION: emulator ready to run(), throws IllegalArgumentException if rom is too big
+    public HackEmulator(short[] rom){
+        if(rom.length > ROM_SIZE){
+            throw new IllegalArgumentException("ROM has " + rom.length + " words, the Hack CPU addresses " + ROM_SIZE);
+        }
+        // one slot past the last address, so running off the end needs no bounds check
+        code = new int[ROM_SIZE + 1];
+        romLength = rom.length;
+        ram = new short[RAM_SIZE];
+
+        for(int i = 0; i < rom.length; i++){
+            code[i] = decode(rom, i);
+        }
+        Arrays.fill(code, rom.length, code.length, END);
+    }
+
+    //DESCRIPTION: loads ROM like HackEmulator(rom), translating it to bytecode if translate is set
+    //PRECONDITION: rom holds at most ROM_SIZE words
+    //POSTCONDITION: emulator ready to run(), throws IllegalArgumentException if rom is too big,
+    // IllegalStateException if the translated code can't be loaded
+    public HackEmulator(short[] rom, boolean translate){
+        this(rom);
+        if(translate){
+            translator = new HackTranslator(rom);
+            registers = new int[3];
+        }
+    }
+
+
+    //DESCRIPTION: executes instructions until the program halts or maxCycles were run
+    // (can be called again to go on); a halt is the end-of-program idiom (@X at address X,
+    // then a jump that changes nothing) or running past the last ROM word
+    //PRECONDITION: maxCycles >= 0
+    //POSTCONDITION: returns number of instructions executed by this call, isHalted() tells why it stopped
+    public long run(long maxCycles){
+        long executed = translator != null ? runTranslated(maxCycles) : interpret(maxCycles);
+
+        this.cycles += executed;
+        return executed;
+    }
+
+
+    //DESCRIPTION: like the CPU's reset input: next run() starts at address 0
+    //PRECONDITION: n/a
+    //POSTCONDITION: PC is 0 and emulator not halted, RAM and registers kept
+    public void reset(){
+        pc = 0;
+        halted = false;
+    }
+
+    //DESCRIPTION: writes one RAM word (e.g. inputs in R0-R15 before run())
+    //PRECONDITION: 0 <= address < RAM_SIZE
+    //POSTCONDITION: RAM[address] holds low 16 bits of value
+    public void writeRam(int address, int value){
+        ram[address] = (short) value;
+    }
+
+    //DESCRIPTION: reads one RAM word
+    //PRECONDITION: 0 <= address < RAM_SIZE
+    //POSTCONDITION: returns RAM[address] as signed 16-bit value
+    public int readRam(int address){
+        return ram[address];
+    }
+
+    //DESCRIPTION: sets key the program sees in KBD (0 = no key pressed)
+    //PRECONDITION: key is a Hack character code
+    //POSTCONDITION: RAM[KBD] holds key
+    public void setKeyboard(int key){
+        writeRam(KBD, key);
+    }
+
+    //DESCRIPTION: writes screen memory as binary PBM (P4) image, 512x256, 1 = black
+    //PRECONDITION: out is open, not closed here
+    //POSTCONDITION: image written, throws IOException if out can't be written
+    public void writeScreen(OutputStream out) throws IOException {
+        byte[] pixels = new byte[SCREEN_WIDTH / 8 * SCREEN_HEIGHT];
+
+        // Hack draws bit 0 of a word leftmost, PBM the high bit of a byte
+        for(int i = 0; i < pixels.length / 2; i++){
+            int word = ram[SCREEN + i];
+            pixels[2 * i] = (byte) (Integer.reverse(word) >>> 24);
+            pixels[2 * i + 1] = (byte) (Integer.reverse(word >>> 8) >>> 24);
+        }
+        out.write(("P4\n" + SCREEN_WIDTH + " " + SCREEN_HEIGHT + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(pixels);
+    }
+
+
+    //GETTER METHODS
+    public int getA(){
+        return a;
+    }
+
+    public int getD(){
+        return d;
+    }
+
+    public int getPC(){
+        return pc;
+    }
+
+    //DESCRIPTION: getter for instructions executed since the emulator was created
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns sum of all run() results
+    public long getCycles(){
+        return cycles;
+    }
+
+    //DESCRIPTION: checks if last run() stopped at a halt rather than the cycle limit
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if halted (isPastEnd() tells which kind)
+    public boolean isHalted(){
+        return halted;
+    }
+
+    //DESCRIPTION: getter for the translated ROM
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns translator, null if the emulator interprets every instruction
+    public HackTranslator getTranslator(){
+        return translator;
+    }
+
+    //DESCRIPTION: checks if program ran past its last instruction
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if PC is beyond the ROM
+    public boolean isPastEnd(){
+        return pc >= romLength;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: the interpreter: executes decoded instructions until a halt or maxCycles
+    //PRECONDITION: maxCycles >= 0
+    //POSTCONDITION: returns number of instructions executed, registers and PC saved
+    private long interpret(long maxCycles){
+        int[] code = this.code;
+        short[] ram = this.ram;
+        int a = this.a;
+        int d = this.d;
+        int pc = this.pc;
+        long executed = 0;
+
+        run:
+        while(executed < maxCycles){
+            int op = code[pc];
+            int out;
+
+            // most C-instructions follow an A-instruction: load it without a trip through the switch
+            if((op & 0x3F) == LOAD){
+                a = op >>> 16;
+                pc++;
+                if(++executed == maxCycles){
+                    break;
+                }
+                op = code[pc];
+            }
+
+            switch(op & 0x3F){
+                case LOAD:
+                    a = op >>> 16;
+                    pc++;
+                    executed++;
+                    continue;
+                case HALT:
+                    a = op >>> 16;
+                    halted = true;
+                    break run;
+                case END:
+                    halted = true;
+                    break run;
+                case ZERO: out = 0; break;
+                case ONE: out = 1; break;
+                case NEG_ONE: out = -1; break;
+                case D: out = d; break;
+                case A: out = a; break;
+                case NOT_D: out = ~d; break;
+                case NOT_A: out = ~a; break;
+                case NEG_D: out = -d; break;
+                case NEG_A: out = -a; break;
+                case D_PLUS_1: out = d + 1; break;
+                case A_PLUS_1: out = a + 1; break;
+                case D_MINUS_1: out = d - 1; break;
+                case A_MINUS_1: out = a - 1; break;
+                case D_PLUS_A: out = d + a; break;
+                case D_MINUS_A: out = d - a; break;
+                case A_MINUS_D: out = a - d; break;
+                case D_AND_A: out = d & a; break;
+                case D_OR_A: out = d | a; break;
+                case M: out = ram[a & ADDRESS_MASK]; break;
+                case NOT_M: out = ~ram[a & ADDRESS_MASK]; break;
+                case NEG_M: out = -ram[a & ADDRESS_MASK]; break;
+                case M_PLUS_1: out = ram[a & ADDRESS_MASK] + 1; break;
+                case M_MINUS_1: out = ram[a & ADDRESS_MASK] - 1; break;
+                case D_PLUS_M: out = d + ram[a & ADDRESS_MASK]; break;
+                case D_MINUS_M: out = d - ram[a & ADDRESS_MASK]; break;
+                case M_MINUS_D: out = ram[a & ADDRESS_MASK] - d; break;
+                case D_AND_M: out = d & ram[a & ADDRESS_MASK]; break;
+                case D_OR_M: out = d | ram[a & ADDRESS_MASK]; break;
+                default: out = alu(op >>> 16, d, a, ram[a & ADDRESS_MASK]); break;
+            }
+
+            // registers hold 16-bit values; M and the jump use A from before this instruction
+            out = (short) out;
+            int target = a & ADDRESS_MASK;
+            int dest = op >>> 6;
+
+            if((dest & DEST_M) != 0){
+                ram[target] = (short) out;
+            }
+            if((dest & DEST_D) != 0){
+                d = out;
+            }
+            if((dest & DEST_A) != 0){
+                a = out;
+            }
+            pc = (op >>> 9 & (out < 0 ? 0b100 : out == 0 ? 0b010 : 0b001)) != 0 ? target : pc + 1;
+            executed++;
+        }
+
+        this.a = a;
+        this.d = d;
+        this.pc = pc;
+        return executed;
+    }
+
+    //DESCRIPTION: runs translated blocks as long as they fit the cycles left, interpreting
+    // one instruction wherever no block starts or the next block is longer than what is left
+    //PRECONDITION: translator != null, maxCycles >= 0
+    //POSTCONDITION: returns number of instructions executed (the same ones interpret() would run)
+    private long runTranslated(long maxCycles){
+        long executed = 0;
+
+        while(executed < maxCycles){
+            if(translator.hasBlock(pc)){
+                int left = (int) Math.min(maxCycles - executed, Integer.MAX_VALUE);
+
+                registers[0] = a;
+                registers[1] = d;
+                registers[2] = left;
+                pc = translator.run(ram, registers, pc);
+                a = registers[0];
+                d = registers[1];
+                executed += left - registers[2];
+                if(registers[2] != left){
+                    continue;
+                }
+            }
+            long stepped = interpret(1);
+
+            if(stepped == 0){
+                break;
+            }
+            executed += stepped;
+        }
+        return executed;
+    }
+
+    //DESCRIPTION: decodes ROM word at address into micro-op
+    //PRECONDITION: 0 <= address < rom.length
+    //POSTCONDITION: returns LOAD/HALT with A-value or C micro-op with dest, jump and comp fields
+    private static int decode(short[] rom, int address){
+        int word = rom[address] & 0xFFFF;
+
+        if((word & 0x8000) == 0){
+            return (isHalt(rom, address) ? HALT : LOAD) | word << 16;
+        }
+        int comp = word >> 6 & 0x7F;
+        return COMP_OPS[comp] | (word >> 3 & 7) << 6 | (word & 7) << 9 | comp << 16;
+    }
+
+    //DESCRIPTION: checks for the end-of-program idiom at address (also used by HackTranslator)
+    //PRECONDITION: 0 <= address < rom.length
+    //POSTCONDITION: returns true for @X at address X followed by a jump that changes nothing
+    static boolean isHalt(short[] rom, int address){
+        return address + 1 < rom.length && rom[address] == address && isIdleJump(rom[address + 1]);
+    }
+
+    //DESCRIPTION: checks for a C-instruction that always jumps and stores nothing
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true for e.g. 0;JMP
+    private static boolean isIdleJump(short word){
+        return (word & 0x8000) != 0 && (word & 0b111000) == 0 && (word & 0b111) == 0b111;
+    }
+
+    //DESCRIPTION: Hack ALU for any comp field (zx, nx, zy, ny, f, no bits); translated code calls it too
+    //PRECONDITION: comp is the 7-bit field, a-bit first
+    //POSTCONDITION: returns result (not yet cut to 16 bits)
+    static int alu(int comp, int d, int a, int m){
+        int x = d;
+        int y = (comp & CInstructionMapper.M_BIT) != 0 ? m : a;
+
+        if((comp & 0b100000) != 0){
+            x = 0;
+        }
+        if((comp & 0b010000) != 0){
+            x = ~x;
+        }
+        if((comp & 0b001000) != 0){
+            y = 0;
+        }
+        if((comp & 0b000100) != 0){
+            y = ~y;
+        }
+        int out = (comp & 0b000010) != 0 ? x + y : x & y;
+        return (comp & 0b000001) != 0 ? ~out : out;
+    }
+}
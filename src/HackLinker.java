@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// --link=OUT: assembles every module into its own ObjectModule on a fork-join pool (an
+// unchanged module is taken from the .hobj next to it), then links them in input order.
+// Linking places module i right after module i-1, enters all labels, allocates a RAM slot
+// from 16 for every import no module defines (modules in order, imports in order of first
+// use) and relocates each module on its own, so the ROM is word for word the one the
+// concatenated modules assemble to.
+public class HackLinker {
+
+    //PRIVATE VARIABLES
+    private int[] bases;
+    private SymbolTable symbolTable;
+
+
+    //DESCRIPTION: creates linker with an empty symbol table
+    //PRECONDITION: n/a
+    //POSTCONDITION: ready to link()
+    public HackLinker(){
+        symbolTable = new SymbolTable();
+    }
+
+
+    //DESCRIPTION: resolves and relocates modules into one ROM image (relocation runs in parallel)
+    //PRECONDITION: modules in program order, not empty
+    //POSTCONDITION: returns ROM, throws AssemblyException listing every label defined by two modules
+    // or out of range, or if the modules don't fit the ROM together
+    public short[] link(List<ObjectModule> modules){
+        bases = new int[modules.size() + 1];
+        for(int i = 0; i < modules.size(); i++){
+            bases[i + 1] = bases[i] + modules.get(i).getWords().length;
+        }
+        if(bases[modules.size()] > HackEmulator.ROM_SIZE){
+            // relocated label references would be truncated to 16 bits
+            throw new AssemblyException("Linked program has " + bases[modules.size()] + " instructions, more than the "
+                    + HackEmulator.ROM_SIZE + " of the ROM");
+        }
+
+        List<String> clashes = new ArrayList<>();
+        for(int i = 0; i < modules.size(); i++){
+            ObjectModule module = modules.get(i);
+
+            for(int label = 0; label < module.getLabelNames().length; label++){
+                String name = module.getLabelNames()[label];
+                int address = bases[i] + module.getLabelAddresses()[label];
+                String outOfRange = Assembler.addressError(name, address);
+
+                if(outOfRange != null){
+                    clashes.add(outOfRange + " in " + module.getName());
+                }
+                else if(!symbolTable.addEntry(name, address)){
+                    clashes.add("Label '" + name + "' of " + module.getName() + " is already defined in "
+                            + definingModule(modules, name, i));
+                }
+            }
+        }
+        if(!clashes.isEmpty()){
+            throw new AssemblyException(String.join("; ", clashes));
+        }
+
+        int[][] resolved = new int[modules.size()][];
+        int variableAddress = 16;
+        for(int i = 0; i < modules.size(); i++){
+            String[] imports = modules.get(i).getImports();
+
+            resolved[i] = new int[imports.length];
+            for(int j = 0; j < imports.length; j++){
+                int entries = symbolTable.size();
+
+                resolved[i][j] = symbolTable.getOrAllocate(imports[j], variableAddress);
+                if(symbolTable.size() > entries){
+                    variableAddress++;
+                }
+            }
+        }
+
+        short[] rom = new short[bases[modules.size()]];
+        IntStream.range(0, modules.size()).parallel().forEach(i -> relocate(modules.get(i), bases[i], resolved[i], rom));
+        return rom;
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for ROM address of module
+    //PRECONDITION: link() was called, 0 <= index <= number of modules
+    //POSTCONDITION: returns where module index starts (index = module count gives the ROM size)
+    public int getBase(int index){
+        return bases[index];
+    }
+
+    //DESCRIPTION: getter for the labels and variables of the linked program
+    //PRECONDITION: link() was called
+    //POSTCONDITION: returns table with predefined symbols, labels and variables
+    public SymbolTable getSymbolTable(){
+        return symbolTable;
+    }
+
+
+    //DESCRIPTION: compiles (or loads) every input module, links them and writes the ROM
+    //PRECONDITION: options parsed, options.getLink() is the output file, inputs are .asm or .hobj
+    // files, directories or globs (expanded like a batch, in sorted order)
+    //POSTCONDITION: prints a line per module that failed and a summary to out, returns number of failures
+    // (nothing is linked if a module failed)
+    public static int run(AssemblerOptions options, PrintStream out){
+        List<String> files = BatchAssembler.expandInputs(options.getInputs());
+        ObjectModule[] modules = new ObjectModule[files.size()];
+        ForkJoinPool pool = new ForkJoinPool(options.getJobs());
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger compiled = new AtomicInteger();
+        long start = System.nanoTime();
+
+        for(int i = 0; i < files.size(); i++){
+            int index = i;
+
+            tasks.add(pool.submit(() -> {
+                String file = files.get(index);
+                try {
+                    modules[index] = loadModule(file, compiled);
+                } catch (AssemblyException ex) {
+                    failed.incrementAndGet();
+                    BatchAssembler.status(out, "FAILED " + file + ": " + Diagnostics.describe(ex));
+                } catch (IOException ex) {
+                    failed.incrementAndGet();
+                    BatchAssembler.status(out, "FAILED " + file + ": " + ex.getMessage());
+                }
+            }));
+        }
+        for(ForkJoinTask<?> task : tasks){
+            task.join();
+        }
+        pool.shutdown();
+
+        if(files.isEmpty()){
+            out.println("No modules to link");
+            return 1;
+        }
+        if(failed.get() > 0){
+            out.println(failed.get() + " of " + files.size() + " modules failed, nothing linked");
+            return failed.get();
+        }
+
+        long linkStart = System.nanoTime();
+        try {
+            short[] rom = new HackLinker().link(List.of(modules));
+
+            HackWriter outputFile = new HackWriter(options.getLink(), options.getFormat());
+            try {
+                outputFile.write(rom, 0, rom.length);
+            } finally {
+                outputFile.close();
+            }
+            long end = System.nanoTime();
+            out.println("Linked " + files.size() + " modules (" + compiled.get() + " compiled) into " + options.getLink()
+                    + ", " + rom.length + " instructions in " + BatchAssembler.millis(end - start) + " ms (link "
+                    + BatchAssembler.millis(end - linkStart) + " ms)");
+            return 0;
+        } catch (AssemblyException | IOException ex) {
+            out.println("FAILED " + options.getLink() + ": " + ex.getMessage());
+            return 1;
+        }
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: gets object of one input: a .hobj is read as it is, an .asm file is compiled
+    // unless the .hobj next to it was compiled from the same source
+    //PRECONDITION: file is .asm or .hobj
+    //POSTCONDITION: returns object (compiled counted, new objects saved), throws AssemblyException
+    // for bad source, IOException if a file can't be read or written
+    private static ObjectModule loadModule(String file, AtomicInteger compiled) throws IOException {
+        if(file.endsWith(ObjectModule.EXTENSION)){
+            ObjectModule module = ObjectModule.load(Paths.get(file));
+
+            if(module == null){
+                throw new IOException("not an object file");
+            }
+            return module;
+        }
+        byte[] source = Files.readAllBytes(Paths.get(file));
+        Path objectFile = Paths.get(ObjectModule.objectFileName(file));
+        ObjectModule module = ObjectModule.load(objectFile);
+
+        if(module != null && module.getChecksum() == AssemblyCache.checksum(source) && module.getName().equals(file)){
+            return module;
+        }
+        module = ObjectModule.compile(file, source);
+        module.save(objectFile);
+        compiled.incrementAndGet();
+        return module;
+    }
+
+    //DESCRIPTION: copies module into rom at base, adding base to its own label references
+    // and filling in the addresses of its imports
+    //PRECONDITION: resolved holds the address of every import of module
+    //POSTCONDITION: rom[base..base+module size) holds the relocated words
+    private static void relocate(ObjectModule module, int base, int[] resolved, short[] rom){
+        short[] words = module.getWords();
+        int[] fixupAddresses = module.getFixupAddresses();
+        int[] fixupImports = module.getFixupImports();
+
+        System.arraycopy(words, 0, rom, base, words.length);
+        for(int address : module.getRelocations()){
+            rom[base + address] = (short) (words[address] + base);
+        }
+        for(int i = 0; i < fixupAddresses.length; i++){
+            rom[base + fixupAddresses[i]] = (short) resolved[fixupImports[i]];
+        }
+    }
+
+    //DESCRIPTION: finds module that defined a label first
+    //PRECONDITION: label is defined by a module before before, or is predefined
+    //POSTCONDITION: returns module name, or "the predefined symbols"
+    private static String definingModule(List<ObjectModule> modules, String label, int before){
+        for(int i = 0; i < before; i++){
+            for(String name : modules.get(i).getLabelNames()){
+                if(name.equals(label)){
+                    return modules.get(i).getName();
+                }
+            }
+        }
+        return "the predefined symbols";
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// --profile: runs a program in HackEmulator counting the cycles spent at every ROM address,
+// then folds the counts onto source lines and labels through the program's SourceMap.
+// Exact counting steps the emulator one instruction at a time (about half its full
+// speed); --profile=N lets it run bursts of about N instructions and charges each burst to
+// the address it stopped at. Burst lengths vary at random around N so a sample can't lock
+// onto a loop whose length divides N.
+public class HackProfiler {
+
+    // source lines in the flat report
+    public static final int TOP_LINES = 20;
+
+    //PRIVATE VARIABLES
+    private short[] rom;
+    private HackEmulator emulator;
+    private SourceMap sourceMap;
+    private long[] counts;
+    private long total;
+    private int interval;
+
+
+    //DESCRIPTION: creates profiler for an emulator loaded with rom
+    //PRECONDITION: sourceMap is null if the program has none (report shows ROM addresses then)
+    //POSTCONDITION: no cycles counted
+    public HackProfiler(short[] rom, HackEmulator emulator, SourceMap sourceMap){
+        this.rom = rom;
+        this.emulator = emulator;
+        this.sourceMap = sourceMap;
+        this.counts = new long[HackEmulator.ROM_SIZE + 1];
+    }
+
+
+    //DESCRIPTION: runs the program until it halts or maxCycles were run, counting cycles per address
+    //PRECONDITION: interval >= 1 (1 = exact count)
+    //POSTCONDITION: returns number of instructions executed, counts hold where they ran
+    public long run(long maxCycles, int interval){
+        Random random = new Random(interval);
+        long executed = 0;
+
+        this.interval = interval;
+        while(executed < maxCycles){
+            int pc = emulator.getPC();
+
+            if(interval == 1){
+                if(emulator.run(1) == 0){
+                    break;
+                }
+                counts[pc]++;
+                executed++;
+            }
+            else{
+                long burst = emulator.run(Math.min(maxCycles - executed, interval / 2 + 1 + random.nextInt(interval)));
+
+                counts[Math.min(emulator.getPC(), HackEmulator.ROM_SIZE)] += burst;
+                executed += burst;
+                if(emulator.isHalted()){
+                    break;
+                }
+            }
+        }
+        total += executed;
+        return executed;
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for cycles counted at ROM address
+    //PRECONDITION: 0 <= address < ROM_SIZE
+    //POSTCONDITION: returns cycles (an estimate if run() sampled)
+    public long getCount(int address){
+        return counts[address];
+    }
+
+    public long getTotal(){
+        return total;
+    }
+
+    //DESCRIPTION: prints the flat report (hottest source lines, or addresses without a
+    // source map) and the report per label
+    //PRECONDITION: run() was called
+    //POSTCONDITION: report printed to out
+    public void printReport(String romFileName, PrintStream out){
+        out.println("Profile " + romFileName + ": " + total + " instructions, "
+                + (interval == 1 ? "exact counts" : "sampled about every " + interval + " instructions"));
+        if(sourceMap == null){
+            out.println("No source map (assemble with --source-map), hottest ROM addresses:");
+            printTop(counts, out, address -> "ROM " + address + "  " + (address < rom.length
+                    ? HackDisassembler.instruction(rom[address]) : "past the end"));
+            return;
+        }
+        List<String> source = readSource(sourceMap.getSourceFile());
+        long[] lineCounts = new long[sourceMap.getLine(Math.max(0, sourceMap.size() - 1)) + 1];
+        long[] labelCounts = new long[sourceMap.getLabelCount() + 1];
+
+        for(int address = 0; address < counts.length; address++){
+            if(counts[address] != 0){
+                lineCounts[address < sourceMap.size() ? sourceMap.getLine(address) : 0] += counts[address];
+                labelCounts[sourceMap.labelAt(address) + 1] += counts[address];
+            }
+        }
+
+        out.println("Hottest lines:");
+        printTop(lineCounts, out, line -> line == 0 ? "(past the mapped program)"
+                : sourceMap.getSourceFile() + ":" + line + (line <= source.size() ? "  " + source.get(line - 1).trim() : ""));
+
+        out.println("By label:");
+        for(int i = 0; i < labelCounts.length; i++){
+            if(labelCounts[i] != 0){
+                String label = i == 0 ? "(before the first label)"
+                        : sourceMap.getLabelName(i - 1) + " (ROM " + sourceMap.getLabelAddress(i - 1) + ")";
+
+                out.println(row(labelCounts[i], label));
+            }
+        }
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: prints the TOP_LINES biggest counts, largest first
+    //PRECONDITION: name describes an index of values
+    //POSTCONDITION: rows printed to out
+    private void printTop(long[] values, PrintStream out, RowName name){
+        List<Integer> indexes = new ArrayList<>();
+
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != 0){
+                indexes.add(i);
+            }
+        }
+        indexes.sort((x, y) -> values[x] != values[y] ? Long.compare(values[y], values[x]) : Integer.compare(x, y));
+        for(int index : indexes.subList(0, Math.min(TOP_LINES, indexes.size()))){
+            out.println(row(values[index], name.of(index)));
+        }
+    }
+
+    //DESCRIPTION: formats one report row
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns e.g. "    120000  45.10%  LOOP (ROM 12)"
+    private String row(long cycles, String name){
+        return String.format("%12d %6.2f%%  %s", cycles, total == 0 ? 0.0 : cycles * 100.0 / total, name);
+    }
+
+    //DESCRIPTION: reads the source file the map names, to show the text of hot lines
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns its lines, empty if it is gone (the report then shows line numbers only)
+    private static List<String> readSource(String fileName){
+        try {
+            return Files.readAllLines(Paths.get(fileName), StandardCharsets.ISO_8859_1);
+        } catch (IOException ex) {
+            return Collections.emptyList();
+        }
+    }
+
+
+    // name of a report row
+    private interface RowName {
+        String of(int index);
+    }
+}
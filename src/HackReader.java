@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class HackReader {
+
+    //DESCRIPTION: loads machine code written by HackWriter: .bin files as packed big-endian
+    // words, anything else as .hack text (one line of 16 binary digits per word)
+    //PRECONDITION: file exists and is readable
+    //POSTCONDITION: returns words in ROM order, throws IOException if the file can't be read
+    // or isn't machine code
+    public static short[] read(String fileName) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+
+        if(fileName.endsWith(".bin")){
+            return readBin(fileName, bytes);
+        }
+        return readHack(fileName, bytes);
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: converts packed words (2 bytes each, high byte first)
+    //PRECONDITION: bytes is the whole file
+    //POSTCONDITION: returns words, throws IOException for odd length
+    private static short[] readBin(String fileName, byte[] bytes) throws IOException {
+        if(bytes.length % 2 != 0){
+            throw new IOException(fileName + " has " + bytes.length + " bytes, packed words take 2 each");
+        }
+        short[] words = new short[bytes.length / 2];
+
+        for(int i = 0; i < words.length; i++){
+            words[i] = (short) ((bytes[2 * i] & 0xFF) << 8 | (bytes[2 * i + 1] & 0xFF));
+        }
+        return words;
+    }
+
+    //DESCRIPTION: converts lines of 16 binary digits (\n, \r\n or \r line ends)
+    //PRECONDITION: bytes is the whole file
+    //POSTCONDITION: returns one word per line (blank lines skipped), throws IOException naming
+    // the first bad line
+    private static short[] readHack(String fileName, byte[] bytes) throws IOException {
+        short[] words = new short[bytes.length / 17 + 1];
+        int count = 0;
+        int line = 1;
+        int digits = 0;
+        int word = 0;
+
+        for(int i = 0; i <= bytes.length; i++){
+            byte b = i < bytes.length ? bytes[i] : (byte) '\n';
+
+            if(b == '0' || b == '1'){
+                word = word << 1 | (b - '0');
+                digits++;
+            }
+            else if(b == '\n' || b == '\r'){
+                if(digits == 16){
+                    words[count++] = (short) word;
+                }
+                else if(digits != 0){
+                    throw new IOException(fileName + ":" + line + ": expected 16 binary digits, found " + digits);
+                }
+                if(b == '\r' && i + 1 < bytes.length && bytes[i + 1] == '\n'){
+                    i++;
+                }
+                line++;
+                digits = 0;
+                word = 0;
+            }
+            else{
+                throw new IOException(fileName + ":" + line + ": not a binary digit: '" + (char) (b & 0xFF) + "'");
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+}
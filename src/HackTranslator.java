@@ -0,0 +1,512 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+// --aot: translates a ROM ahead of time into JVM bytecode, so HotSpot compiles the Hack
+// program to native code. The ROM is split into basic blocks: one starts at address 0, at
+// every address an A-instruction loads (any of them may be a jump target) and after every
+// jump. Each block becomes straight-line code on locals A and D with RAM as the emulator's
+// short[]; a jump whose target the block loaded itself is a goto, any other goes through a
+// tableswitch on the address. Blocks are grouped into methods small enough for HotSpot to
+// compile (it skips methods over 8000 bytes), all in one hidden class.
+// Translated code only runs whole blocks: HackEmulator interprets where no block starts
+// (a halt, past the end, a jump into the middle of a block) and when fewer cycles are left
+// than the next block has, so results match the interpreter cycle for cycle.
+public class HackTranslator {
+
+    // estimated bytecode per method, under HotSpot's HugeMethodLimit of 8000
+    public static final int METHOD_SIZE_LIMIT = 7000;
+    // instructions per block at most (longer straight-line code is split)
+    public static final int MAX_BLOCK_LENGTH = 128;
+
+    private static final int ADDRESS_MASK = HackEmulator.RAM_SIZE - 1;
+
+    // upper bounds of the bytecode emitted, for splitting groups before they are built
+    private static final int A_INSTRUCTION_SIZE = 5;
+    private static final int C_INSTRUCTION_SIZE = 48;
+    private static final int BLOCK_SIZE = 24 + 32;
+    private static final int GROUP_SIZE = 64;
+
+    // LOCALS of a group method: parameters, then registers
+    private static final int RAM = 0;
+    private static final int REGISTERS = 1;
+    private static final int PC = 2;
+    private static final int A = 3;
+    private static final int D = 4;
+    private static final int LEFT = 5;
+    private static final int OUT = 6;
+    private static final int TARGET = 7;
+    private static final int LOCALS = 8;
+    private static final int MAX_STACK = 8;
+
+    private static final String CODE_INTERFACE = "HackTranslator$CompiledCode";
+    private static final String GROUP_DESCRIPTOR = "([S[II)I";
+
+    //PRIVATE VARIABLES
+    private short[] rom;
+    // length of the block starting at each address, 0 if translated code can't start there
+    private int[] blockLengths;
+    // group method holding the block starting at each address, -1 if none
+    private int[] groups;
+    private int blockCount;
+    private int groupCount;
+    private int codeSize;
+    private CompiledCode code;
+
+
+    //DESCRIPTION: translates rom and loads the generated class
+    //PRECONDITION: rom holds at most HackEmulator.ROM_SIZE words
+    //POSTCONDITION: ready to run(), throws IllegalStateException if the class can't be generated or loaded
+    public HackTranslator(short[] rom){
+        this.rom = rom;
+        this.blockLengths = new int[rom.length];
+        this.groups = new int[HackEmulator.ROM_SIZE + 1];
+
+        findBlocks();
+        code = load(generate());
+    }
+
+
+    //DESCRIPTION: runs translated blocks from pc until a jump leaves the group, a block wants
+    // more cycles than registers[2] has left, or pc has no block in the group
+    //PRECONDITION: getGroup(pc) >= 0, registers holds A, D and cycles left
+    //POSTCONDITION: returns next pc, registers hold A, D and the cycles still left
+    public int run(short[] ram, int[] registers, int pc){
+        return code.run(groups[pc], ram, registers, pc);
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: checks if translated code can start at address
+    //PRECONDITION: 0 <= address <= HackEmulator.ROM_SIZE
+    //POSTCONDITION: returns true if a block starts there (halts never are blocks)
+    public boolean hasBlock(int address){
+        return groups[address] >= 0;
+    }
+
+    public int getBlockCount(){
+        return blockCount;
+    }
+
+    public int getGroupCount(){
+        return groupCount;
+    }
+
+    //DESCRIPTION: getter for size of the generated class
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns class file bytes
+    public int getCodeSize(){
+        return codeSize;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: marks block starts and lengths
+    //PRECONDITION: n/a
+    //POSTCONDITION: blockLengths[address] > 0 where a block starts
+    private void findBlocks(){
+        boolean[] leaders = new boolean[rom.length + 1];
+
+        if(rom.length > 0){
+            leaders[0] = true;
+        }
+        for(int address = 0; address < rom.length; address++){
+            int word = rom[address] & 0xFFFF;
+
+            if((word & 0x8000) == 0){
+                if(word < rom.length){
+                    leaders[word] = true;
+                }
+            }
+            else if((word & 0b111) != 0){
+                leaders[address + 1] = true;
+            }
+        }
+
+        int start = 0;
+        while(start < rom.length){
+            int end = start + 1;
+
+            while(end < rom.length && !leaders[end] && end - start < MAX_BLOCK_LENGTH){
+                end++;
+            }
+            // the interpreter takes halts: the idle loop never ends and stops without a cycle
+            if(!HackEmulator.isHalt(rom, start)){
+                blockLengths[start] = end - start;
+                blockCount++;
+            }
+            start = end;
+        }
+    }
+
+    //DESCRIPTION: generates the class: a static method per group of blocks and run(), which
+    // calls the method of a group
+    //PRECONDITION: findBlocks() was called
+    //POSTCONDITION: returns class file bytes, groups[] filled
+    private byte[] generate(){
+        ClassFileWriter writer = new ClassFileWriter("HackRom", "java/lang/Object", CODE_INTERFACE);
+
+        Arrays.fill(groups, -1);
+        int start = 0;
+        while(start < rom.length){
+            int end = start;
+            int size = GROUP_SIZE;
+
+            // a group is a run of addresses whose blocks fit the size limit together
+            while(end < rom.length && (end == start || size + estimate(end) + 4 * blockLengths[end] <= METHOD_SIZE_LIMIT)){
+                size += estimate(end) + 4 * Math.max(1, blockLengths[end]);
+                end += Math.max(1, blockLengths[end]);
+            }
+            for(int address = start; address < end; address++){
+                if(blockLengths[address] > 0){
+                    groups[address] = groupCount;
+                }
+            }
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "g" + groupCount, GROUP_DESCRIPTOR,
+                    group(writer, start, end), MAX_STACK, LOCALS);
+            groupCount++;
+            start = end;
+        }
+
+        ClassFileWriter.Code dispatch = new ClassFileWriter.Code();
+        int[] targets = new int[groupCount];
+        int none = dispatch.newLabel();
+
+        for(int i = 0; i < groupCount; i++){
+            targets[i] = dispatch.newLabel();
+        }
+        if(groupCount > 0){
+            dispatch.load(1);
+            dispatch.tableSwitch(0, none, targets);
+        }
+        for(int i = 0; i < groupCount; i++){
+            dispatch.mark(targets[i]);
+            dispatch.loadReference(2);
+            dispatch.loadReference(3);
+            dispatch.load(4);
+            dispatch.op(ClassFileWriter.INVOKESTATIC);
+            dispatch.u2(writer.methodRef("HackRom", "g" + i, GROUP_DESCRIPTOR));
+            dispatch.op(ClassFileWriter.IRETURN);
+        }
+        dispatch.mark(none);
+        dispatch.load(4);
+        dispatch.op(ClassFileWriter.IRETURN);
+
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "run", "(I[S[II)I", dispatch, 3, 5);
+        writer.addDefaultConstructor("java/lang/Object");
+        return writer.toBytes();
+    }
+
+    //DESCRIPTION: upper bound of the bytecode the block at address takes
+    //PRECONDITION: 0 <= address < rom.length
+    //POSTCONDITION: returns bytes, 0 if no block starts there
+    private int estimate(int address){
+        int size = BLOCK_SIZE;
+
+        if(blockLengths[address] == 0){
+            return 0;
+        }
+        for(int i = address; i < address + blockLengths[address]; i++){
+            size += (rom[i] & 0x8000) == 0 ? A_INSTRUCTION_SIZE : C_INSTRUCTION_SIZE;
+        }
+        return size;
+    }
+
+    //DESCRIPTION: generates method running the blocks of addresses start..end
+    //PRECONDITION: groups[] set for the group
+    //POSTCONDITION: returns code: registers in, dispatch on pc, blocks, registers out
+    private ClassFileWriter.Code group(ClassFileWriter writer, int start, int end){
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        int[] labels = new int[end - start];
+        int dispatch = code.newLabel();
+        int exit = code.newLabel();
+
+        for(int i = 0; i < labels.length; i++){
+            labels[i] = blockLengths[start + i] > 0 ? code.newLabel() : exit;
+        }
+
+        loadRegister(code, 0, A);
+        loadRegister(code, 1, D);
+        loadRegister(code, 2, LEFT);
+        code.push(0, writer);
+        code.store(OUT);
+        code.push(0, writer);
+        code.store(TARGET);
+
+        code.mark(dispatch);
+        code.load(PC);
+        code.tableSwitch(start, exit, labels);
+
+        for(int address = start; address < end; address++){
+            if(blockLengths[address] > 0){
+                code.mark(labels[address - start]);
+                block(writer, code, address, start, end, labels, dispatch, exit);
+            }
+        }
+
+        code.mark(exit);
+        storeRegister(code, 0, A);
+        storeRegister(code, 1, D);
+        storeRegister(code, 2, LEFT);
+        code.load(PC);
+        code.op(ClassFileWriter.IRETURN);
+        return code;
+    }
+
+    //DESCRIPTION: generates one block: checks and takes its cycles, runs its instructions, goes to the next pc
+    //PRECONDITION: a block starts at address
+    //POSTCONDITION: code appended
+    private void block(ClassFileWriter writer, ClassFileWriter.Code code, int address, int start, int end,
+                       int[] labels, int dispatch, int exit){
+        int length = blockLengths[address];
+        int enough = code.newLabel();
+
+        code.load(LEFT);
+        code.push(length, writer);
+        code.branch(ClassFileWriter.IF_ICMPGE, enough);
+        code.push(address, writer);
+        code.store(PC);
+        code.branch(ClassFileWriter.GOTO, exit);
+        code.mark(enough);
+        code.increment(LEFT, -length);
+
+        // value of A while only A-instructions of this block set it, else -1
+        int knownA = -1;
+        int last = address + length - 1;
+        for(int i = address; i <= last; i++){
+            int word = rom[i] & 0xFFFF;
+
+            if((word & 0x8000) == 0){
+                code.push(word, writer);
+                code.store(A);
+                knownA = word;
+                continue;
+            }
+            int dest = word >> 3 & 0b111;
+            int jump = word & 0b111;
+
+            compute(writer, code, word >> 6 & 0x7F);
+            code.op(ClassFileWriter.I2S);
+            code.store(OUT);
+            // M and the jump use A from before the instruction
+            if((dest & 0b001) != 0){
+                code.loadReference(RAM);
+                address(writer, code);
+                code.load(OUT);
+                code.op(ClassFileWriter.SASTORE);
+            }
+            if((dest & 0b010) != 0){
+                code.load(OUT);
+                code.store(D);
+            }
+            if(jump != 0 && (dest & 0b100) != 0 && knownA < 0){
+                address(writer, code);
+                code.store(TARGET);
+            }
+            if(i == last && jump != 0){
+                jump(writer, code, jump, (dest & 0b100) != 0 && knownA < 0, knownA, last + 1, start, end, labels, dispatch, exit);
+            }
+            else if((dest & 0b100) != 0){
+                code.load(OUT);
+                code.store(A);
+                knownA = -1;
+            }
+        }
+        if((rom[last] & 0x8000) == 0 || (rom[last] & 0b111) == 0){
+            goTo(writer, code, last + 1, start, end, labels, exit);
+        }
+    }
+
+    //DESCRIPTION: generates the end of a block that jumps: to the target if the condition on OUT
+    // holds, else to next; dest A is stored on both ways (it can't change the target)
+    //PRECONDITION: jump bits of the block's last instruction, OUT holds its result; savedTarget
+    // if TARGET holds the old A, else knownA is A's value (-1 if only known at run time)
+    //POSTCONDITION: code appended
+    private void jump(ClassFileWriter writer, ClassFileWriter.Code code, int jump, boolean savedTarget, int knownA,
+                      int next, int start, int end, int[] labels, int dispatch, int exit){
+        int word = rom[next - 1] & 0xFFFF;
+        boolean setsA = (word >> 3 & 0b100) != 0;
+        int taken = code.newLabel();
+
+        if(jump != 0b111){
+            int[] conditions = {0, ClassFileWriter.IFGT, ClassFileWriter.IFEQ, ClassFileWriter.IFGE,
+                    ClassFileWriter.IFLT, ClassFileWriter.IFNE, ClassFileWriter.IFLE};
+
+            code.load(OUT);
+            code.branch(conditions[jump], taken);
+            if(setsA){
+                code.load(OUT);
+                code.store(A);
+            }
+            goTo(writer, code, next, start, end, labels, exit);
+        }
+        code.mark(taken);
+        if(savedTarget){
+            code.load(TARGET);
+            code.store(PC);
+        }
+        else if(knownA < 0){
+            address(writer, code);
+            code.store(PC);
+        }
+        if(setsA){
+            code.load(OUT);
+            code.store(A);
+        }
+        if(savedTarget || knownA < 0){
+            code.branch(ClassFileWriter.GOTO, dispatch);
+        }
+        else{
+            goTo(writer, code, knownA, start, end, labels, exit);
+        }
+    }
+
+    //DESCRIPTION: generates a jump to a fixed address: a goto if the group has a block there,
+    // else a return of the address
+    //PRECONDITION: 0 <= target < ROM_SIZE
+    //POSTCONDITION: code appended
+    private static void goTo(ClassFileWriter writer, ClassFileWriter.Code code, int target, int start, int end,
+                             int[] labels, int exit){
+        if(target >= start && target < end && labels[target - start] != exit){
+            code.branch(ClassFileWriter.GOTO, labels[target - start]);
+            return;
+        }
+        code.push(target, writer);
+        code.store(PC);
+        code.branch(ClassFileWriter.GOTO, exit);
+    }
+
+    //DESCRIPTION: generates the ALU: pushes comp of D and A (M if the a-bit is set), not cut to 16 bits
+    //PRECONDITION: comp is the 7-bit field
+    //POSTCONDITION: code appended, one int on the stack
+    private static void compute(ClassFileWriter writer, ClassFileWriter.Code code, int comp){
+        boolean m = (comp & CInstructionMapper.M_BIT) != 0;
+        int x = comp & ~CInstructionMapper.M_BIT;
+
+        if(x == CInstructionMapper.ZERO){
+            code.push(0, writer);
+        }
+        else if(x == CInstructionMapper.ONE){
+            code.push(1, writer);
+        }
+        else if(x == CInstructionMapper.NEG_ONE){
+            code.push(-1, writer);
+        }
+        else if(x == CInstructionMapper.D){
+            code.load(D);
+        }
+        else if(x == CInstructionMapper.A){
+            operand(writer, code, m);
+        }
+        else if(x == CInstructionMapper.NOT_D || x == CInstructionMapper.NOT_A){
+            if(x == CInstructionMapper.NOT_D){
+                code.load(D);
+            }
+            else{
+                operand(writer, code, m);
+            }
+            code.push(-1, writer);
+            code.op(ClassFileWriter.IXOR);
+        }
+        else if(x == CInstructionMapper.NEG_D){
+            code.load(D);
+            code.op(ClassFileWriter.INEG);
+        }
+        else if(x == CInstructionMapper.NEG_A){
+            operand(writer, code, m);
+            code.op(ClassFileWriter.INEG);
+        }
+        else if(x == CInstructionMapper.D_PLUS_1 || x == CInstructionMapper.D_MINUS_1){
+            code.load(D);
+            code.push(1, writer);
+            code.op(x == CInstructionMapper.D_PLUS_1 ? ClassFileWriter.IADD : ClassFileWriter.ISUB);
+        }
+        else if(x == CInstructionMapper.A_PLUS_1 || x == CInstructionMapper.A_MINUS_1){
+            operand(writer, code, m);
+            code.push(1, writer);
+            code.op(x == CInstructionMapper.A_PLUS_1 ? ClassFileWriter.IADD : ClassFileWriter.ISUB);
+        }
+        else if(x == CInstructionMapper.A_MINUS_D){
+            operand(writer, code, m);
+            code.load(D);
+            code.op(ClassFileWriter.ISUB);
+        }
+        else if(x == CInstructionMapper.D_PLUS_A || x == CInstructionMapper.D_MINUS_A
+                || x == CInstructionMapper.D_AND_A || x == CInstructionMapper.D_OR_A){
+            code.load(D);
+            operand(writer, code, m);
+            code.op(x == CInstructionMapper.D_PLUS_A ? ClassFileWriter.IADD : x == CInstructionMapper.D_MINUS_A
+                    ? ClassFileWriter.ISUB : x == CInstructionMapper.D_AND_A ? ClassFileWriter.IAND : ClassFileWriter.IOR);
+        }
+        else{
+            // comp bits outside the book's table: the emulator's bit by bit ALU
+            code.push(comp, writer);
+            code.load(D);
+            code.load(A);
+            operand(writer, code, true);
+            code.op(ClassFileWriter.INVOKESTATIC);
+            code.u2(writer.methodRef("HackEmulator", "alu", "(IIII)I"));
+        }
+    }
+
+    //DESCRIPTION: pushes the ALU's second operand: M (RAM at A) or A
+    //PRECONDITION: n/a
+    //POSTCONDITION: code appended
+    private static void operand(ClassFileWriter writer, ClassFileWriter.Code code, boolean m){
+        if(!m){
+            code.load(A);
+            return;
+        }
+        code.loadReference(RAM);
+        address(writer, code);
+        code.op(ClassFileWriter.SALOAD);
+    }
+
+    //DESCRIPTION: pushes A cut to a RAM / ROM address
+    //PRECONDITION: n/a
+    //POSTCONDITION: code appended
+    private static void address(ClassFileWriter writer, ClassFileWriter.Code code){
+        code.load(A);
+        code.push(ADDRESS_MASK, writer);
+        code.op(ClassFileWriter.IAND);
+    }
+
+    //DESCRIPTION: copies registers[index] into local / local into registers[index]
+    //PRECONDITION: 0 <= index < 3
+    //POSTCONDITION: code appended
+    private static void loadRegister(ClassFileWriter.Code code, int index, int local){
+        code.loadReference(REGISTERS);
+        code.op(ClassFileWriter.ICONST_0 + index);
+        code.op(ClassFileWriter.IALOAD);
+        code.store(local);
+    }
+
+    private static void storeRegister(ClassFileWriter.Code code, int index, int local){
+        code.loadReference(REGISTERS);
+        code.op(ClassFileWriter.ICONST_0 + index);
+        code.load(local);
+        code.op(ClassFileWriter.IASTORE);
+    }
+
+    //DESCRIPTION: defines generated class as hidden class next to this one (so it may call
+    // HackEmulator.alu()) and creates its instance
+    //PRECONDITION: bytes from generate()
+    //POSTCONDITION: returns code, throws IllegalStateException if the JVM rejects the class
+    private CompiledCode load(byte[] bytes){
+        codeSize = bytes.length;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+
+            return (CompiledCode) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Could not load translated ROM: " + ex, ex);
+        }
+    }
+
+
+    // what the generated class implements
+    public interface CompiledCode {
+        int run(int group, short[] ram, int[] registers, int pc);
+    }
+}
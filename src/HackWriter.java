@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+public class HackWriter {
+
+    // FORMATS
+    public static final char HACK_FORMAT = 'H';
+    public static final char BIN_FORMAT = 'B';
+
+    private static final int BUFFER_SIZE = 1 << 18;
+    // fewest words a core renders in writeParallel(), below that a task costs more than it saves
+    private static final int MIN_CHUNK_WORDS = 1 << 11;
+
+    // ASCII '0'/'1' for all 8 bits of every byte value, MSB first
+    private static final byte[] BITS = new byte[256 * 8];
+
+    static {
+        for(int value = 0; value < 256; value++){
+            for(int bit = 0; bit < 8; bit++){
+                BITS[value * 8 + bit] = (byte) (((value >> (7 - bit)) & 1) == 0 ? '0' : '1');
+            }
+        }
+    }
+
+    //PRIVATE VARIABLES
+    private WritableByteChannel output;
+    private char format;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+    private byte[] lineSeparator;
+    private int count;
+    private long bytesWritten;
+    private long writeNanos;
+
+
+    //DESCRIPTION: creates (or truncates) output file for given format
+    //PRECONDITION: format is HACK_FORMAT or BIN_FORMAT
+    //POSTCONDITION: file open for writing, throws IOException if it can't be opened
+    public HackWriter(String outFileName, char format) throws IOException {
+        this(FileChannel.open(Paths.get(outFileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), format);
+    }
+
+    //DESCRIPTION: writes words to an already open channel
+    //PRECONDITION: format is HACK_FORMAT or BIN_FORMAT
+    //POSTCONDITION: ready to write, lines end with system line separator
+    public HackWriter(WritableByteChannel channel, char format) {
+        this.output = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.bytes = buffer.array();
+        this.lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    //DESCRIPTION: appends one 16-bit word (line of 0/1 or 2 big-endian bytes)
+    //PRECONDITION: writer not closed, word fits in 16 bits
+    //POSTCONDITION: word rendered into buffer, buffer flushed to channel when full
+    public void write(int word) throws IOException {
+        if(count + 16 + lineSeparator.length > bytes.length){
+            flush();
+        }
+        count = render(word, bytes, count);
+    }
+
+    //DESCRIPTION: appends words[from..to) in order
+    //PRECONDITION: writer not closed
+    //POSTCONDITION: all words rendered, buffer flushed as it fills
+    public void write(short[] words, int from, int to) throws IOException {
+        for(int i = from; i < to; i++){
+            write(words[i]);
+        }
+    }
+
+    //DESCRIPTION: renders words on all cores, one chunk per core (at least MIN_CHUNK_WORDS
+    // words each), and writes them in order; a buffer is allocated only for each chunk rendered
+    //PRECONDITION: writer not closed
+    //POSTCONDITION: file holds same bytes as write(words, 0, words.length)
+    public void writeParallel(short[] words) throws IOException {
+        int wordBytes = format == BIN_FORMAT ? 2 : 16 + lineSeparator.length;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int chunkWords = Math.max(MIN_CHUNK_WORDS, (words.length + cores - 1) / cores);
+        int chunkCount = (words.length + chunkWords - 1) / chunkWords;
+        byte[][] chunks = new byte[chunkCount][];
+        int[] lengths = new int[chunkCount];
+
+        flush();
+        IntStream.range(0, chunkCount).parallel().forEach(k -> {
+            int from = k * chunkWords;
+            int to = Math.min(words.length, from + chunkWords);
+
+            chunks[k] = new byte[(to - from) * wordBytes];
+            lengths[k] = render(words, from, to, chunks[k], 0);
+        });
+
+        long start = System.nanoTime();
+        for(int k = 0; k < chunkCount; k++){
+            ByteBuffer chunk = ByteBuffer.wrap(chunks[k], 0, lengths[k]);
+            while(chunk.hasRemaining()){
+                bytesWritten += output.write(chunk);
+            }
+        }
+        writeNanos += System.nanoTime() - start;
+    }
+
+    //DESCRIPTION: writes buffered bytes to the channel
+    //PRECONDITION: writer not closed
+    //POSTCONDITION: buffer empty
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+
+        buffer.position(0);
+        buffer.limit(count);
+        while(buffer.hasRemaining()){
+            bytesWritten += output.write(buffer);
+        }
+        writeNanos += System.nanoTime() - start;
+        buffer.clear();
+        count = 0;
+    }
+
+    //DESCRIPTION: flushes and closes channel
+    //PRECONDITION: n/a
+    //POSTCONDITION: all words on disk, channel closed
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            output.close();
+        }
+    }
+
+    //DESCRIPTION: getter for bytes handed to the channel so far
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of flushed bytes
+    public long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    //DESCRIPTION: getter for time spent handing bytes to the channel
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns nanoseconds inside channel writes so far
+    public long getWriteNanos(){
+        return writeNanos;
+    }
+
+
+    //DESCRIPTION: renders words[from..to) into target starting at offset
+    //PRECONDITION: target has room for (to - from) rendered words
+    //POSTCONDITION: returns offset after last rendered byte
+    private int render(short[] words, int from, int to, byte[] target, int offset){
+        for(int i = from; i < to; i++){
+            offset = render(words[i], target, offset);
+        }
+        return offset;
+    }
+
+    //DESCRIPTION: renders one word (16 ASCII digits + line separator, or 2 bytes)
+    //PRECONDITION: target has room for one rendered word at offset
+    //POSTCONDITION: returns offset after rendered word
+    private int render(int word, byte[] target, int offset){
+        if(format == BIN_FORMAT){
+            target[offset++] = (byte) (word >> 8);
+            target[offset++] = (byte) word;
+        }
+        else{
+            System.arraycopy(BITS, ((word >> 8) & 0xFF) * 8, target, offset, 8);
+            System.arraycopy(BITS, (word & 0xFF) * 8, target, offset + 8, 8);
+            offset += 16;
+            for(byte b : lineSeparator){
+                target[offset++] = b;
+            }
+        }
+        return offset;
+    }
+
+
+    //DESCRIPTION: number of bytes one word takes in output of format
+    //PRECONDITION: format is HACK_FORMAT or BIN_FORMAT
+    //POSTCONDITION: returns 2, or 16 digits + line separator length
+    public static int wordSize(char format){
+        return format == BIN_FORMAT ? 2 : 16 + System.lineSeparator().length();
+    }
+
+    //DESCRIPTION: renders word as 16 characters 0/1 (debugging, tracing)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns low 16 bits of word, MSB first
+    public static String toBinaryString(int word){
+        byte[] digits = new byte[16];
+
+        System.arraycopy(BITS, ((word >> 8) & 0xFF) * 8, digits, 0, 8);
+        System.arraycopy(BITS, (word & 0xFF) * 8, digits, 8, 8);
+        return new String(digits, StandardCharsets.US_ASCII);
+    }
+}
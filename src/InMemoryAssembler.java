@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Library entry point: no files, no System.exit, no shared state, so any number of
+// threads can assemble at the same time.
+public class InMemoryAssembler {
+
+    //DESCRIPTION: assembles program text
+    //PRECONDITION: source not null
+    //POSTCONDITION: returns ROM, symbols and diagnostics (never throws for bad assembly code)
+    public static AssemblyResult assemble(CharSequence source){
+        return assemble(source.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    //DESCRIPTION: assembles program read from stream (stream is read to the end, not closed)
+    //PRECONDITION: in not null
+    //POSTCONDITION: returns ROM, symbols and diagnostics, throws IOException only if in can't be read
+    public static AssemblyResult assemble(InputStream in) throws IOException {
+        return assemble(in.readAllBytes());
+    }
+
+    //DESCRIPTION: assembles program given as UTF-8 bytes
+    //PRECONDITION: source not changed while assembling
+    //POSTCONDITION: returns ROM, symbols and diagnostics (never throws for bad assembly code,
+    // all errors of the source are in the diagnostics)
+    public static AssemblyResult assemble(byte[] source){
+        Lexer lexer = new Lexer(source, 0, source.length);
+        Diagnostics diagnostics = new Diagnostics(null);
+        InstructionList program = Assembler.readProgram(lexer, diagnostics);
+
+        if(diagnostics.hasErrors()){
+            return new AssemblyResult(new short[0], Collections.emptyMap(), diagnostics.getDiagnostics());
+        }
+
+        SymbolTable symbolTable = new SymbolTable();
+        int[] addresses = program.resolveSymbols(symbolTable);
+        Map<String, Integer> symbols = new LinkedHashMap<>();
+
+        for(int id = 0; id < program.getSymbolCount(); id++){
+            String name = program.getSymbolName(id);
+            int address = symbolTable.getAddress(name);
+
+            if(address >= 0){
+                symbols.put(name, address);
+            }
+        }
+        return new AssemblyResult(program.toWords(addresses), Collections.unmodifiableMap(symbols),
+                Collections.emptyList());
+    }
+}
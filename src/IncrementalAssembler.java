@@ -0,0 +1,514 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+public class IncrementalAssembler {
+
+    // editors often save in several steps (truncate, write, rename), wait for them to settle
+    private static final long SETTLE_MILLIS = 50;
+
+    // caches of the files --watch assembles, by absolute path; every other run loads the .cache
+    // file, so a long-running process (the daemon) doesn't keep each file it ever saw in memory
+    private static final Map<String, AssemblyCache> CACHES = new ConcurrentHashMap<>();
+
+
+    //DESCRIPTION: assembles one .asm file using the cache of its last assembly: lines before and
+    // after the edited region are taken from the cache, only the edited lines are lexed again,
+    // and only those plus A-instructions whose symbol moved are encoded again
+    //PRECONDITION: the input file exists and is readable
+    //POSTCONDITION: output file and cache file (input name + ".cache") up to date, with --watch the cache
+    // kept in memory as well, returns number of instructions; output is not rewritten if no word changed;
+    // throws AssemblyException holding every error of the source (and leaves no output file, cache kept
+    // for the next run) for bad input
+    public static int assembleFile(String inputFileName, AssemblerOptions options) throws IOException {
+        String key = Paths.get(inputFileName).toAbsolutePath().normalize().toString();
+        Path cacheFile = Paths.get(options.cacheFileName(inputFileName));
+        String outputFileName = options.outputFileName(inputFileName);
+        byte[] source;
+
+        try {
+            source = Files.readAllBytes(Paths.get(inputFileName));
+        } catch (IOException ex) {
+            throw new AssemblyException("ERROR WITH GETTING FILE: " + ex.getMessage(), ex);
+        }
+
+        AssemblyCache old = options.isWatch() ? CACHES.get(key) : null;
+        if(old == null){
+            old = AssemblyCache.load(cacheFile);
+        }
+        long checksum = AssemblyCache.checksum(source);
+        Path output = Paths.get(outputFileName);
+        boolean outputCurrent = old != null && old.getFormat() == options.getFormat() && Files.exists(output)
+                && Files.getLastModifiedTime(output).toMillis() == old.getOutputModified()
+                && Files.size(output) == (long) old.getWords().length * HackWriter.wordSize(options.getFormat());
+
+        if(outputCurrent && old.isSource(checksum, source)){
+            if(options.isWatch()){
+                CACHES.put(key, old);
+            }
+            if(Log.isInfo()){
+                Log.info(inputFileName + " unchanged, " + outputFileName + " up to date");
+            }
+            return old.getWords().length;
+        }
+
+        Diagnostics diagnostics = new Diagnostics(inputFileName);
+        AssemblyCache cache = assemble(source, checksum, old, options.getFormat(), diagnostics);
+
+        if(diagnostics.hasErrors()){
+            Files.deleteIfExists(output);
+            throw diagnostics.toException();
+        }
+        short[] words = cache.getWords();
+
+        writeOutput(outputFileName, options.getFormat(), outputCurrent ? old.getWords() : null, words);
+        cache.setOutputModified(Files.getLastModifiedTime(output).toMillis());
+
+        try {
+            cache.save(cacheFile);
+        } catch (IOException ex) {
+            // output is written; next run just does more work
+            Log.info("Could not write cache " + cacheFile + ": " + ex.getMessage());
+        }
+        if(options.isWatch()){
+            CACHES.put(key, cache);
+        }
+
+        if(Log.isInfo()){
+            Log.info(inputFileName + " -> " + outputFileName + " (" + cache.getRelexedLines() + " lines lexed, "
+                    + cache.getReencodedWords() + " words encoded)");
+        }
+        return words.length;
+    }
+
+
+    //DESCRIPTION: assembles the inputs, then watches their directories and assembles every
+    // .asm file again (incrementally, caches stay in memory) when it is created or modified
+    //PRECONDITION: options parsed, inputs are files, directories or globs
+    //POSTCONDITION: runs until interrupted, prints one status line per assembled file
+    public static void watch(AssemblerOptions options) throws IOException, InterruptedException {
+        List<String> inputs = options.getInputs();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Set<Path> recursive = new HashSet<>();
+            int directories = 0;
+
+            for(String input : inputs){
+                boolean tree = !Files.isRegularFile(Paths.get(input));
+                directories += register(watcher, BatchAssembler.searchRoot(input), tree, recursive);
+            }
+
+            List<String> files = BatchAssembler.expandInputs(inputs);
+            for(String file : files){
+                assembleAndReport(file, options);
+            }
+            System.out.println("Watching " + files.size() + " files in " + directories + " directories (Ctrl-C to stop)");
+
+            while(true){
+                WatchKey key = watcher.take();
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+
+                Thread.sleep(SETTLE_MILLIS);
+                while(key != null){
+                    Path directory = (Path) key.watchable();
+
+                    for(WatchEvent<?> event : key.pollEvents()){
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                            overflow = true;
+                            continue;
+                        }
+                        Path path = directory.resolve((Path) event.context()).toAbsolutePath().normalize();
+
+                        if(recursive.contains(directory) && Files.isDirectory(path)){
+                            // files copied in before the directory was registered sent no events
+                            register(watcher, path, true, recursive);
+                            try (Stream<Path> paths = Files.walk(path)) {
+                                paths.forEach(file -> changed.add(file.toAbsolutePath().normalize()));
+                            }
+                        }
+                        changed.add(path);
+                    }
+                    key.reset();
+                    key = watcher.poll();
+                }
+
+                for(String file : BatchAssembler.expandInputs(inputs)){
+                    if(overflow || changed.contains(Paths.get(file).toAbsolutePath().normalize())){
+                        assembleAndReport(file, options);
+                    }
+                }
+            }
+        }
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: writes words to output file; if the file holds oldWords and the number of
+    // words is the same, only the lines from the first to the last changed word are written over
+    //PRECONDITION: oldWords is null or the words currently in the output file
+    //POSTCONDITION: output file holds words, throws IOException if it can't be written
+    private static void writeOutput(String outputFileName, char format, short[] oldWords, short[] words) throws IOException {
+        HackWriter outputFile;
+        int first = 0;
+        int last = words.length - 1;
+
+        try {
+            if(oldWords != null && oldWords.length == words.length){
+                first = Arrays.mismatch(oldWords, words);
+                if(first < 0){
+                    return;
+                }
+                while(oldWords[last] == words[last]){
+                    last--;
+                }
+                FileChannel channel = FileChannel.open(Paths.get(outputFileName), StandardOpenOption.WRITE);
+                channel.position((long) first * HackWriter.wordSize(format));
+                outputFile = new HackWriter(channel, format);
+            }
+            else{
+                outputFile = new HackWriter(outputFileName, format);
+            }
+        } catch (IOException ex) {
+            throw new IOException("Could not open output file " + outputFileName, ex);
+        }
+        try {
+            outputFile.write(words, first, last + 1);
+        } finally {
+            outputFile.close();
+        }
+    }
+
+    //DESCRIPTION: builds new cache for source, reusing lines shared with old cache
+    //PRECONDITION: checksum is checksum of source, old is null or cache of an earlier version of the file
+    //POSTCONDITION: returns cache with encoded words; if diagnostics got errors, returns null
+    private static AssemblyCache assemble(byte[] source, long checksum, AssemblyCache old, char format,
+                                          Diagnostics diagnostics){
+        int[] lineEnds = AssemblyCache.lineEnds(source);
+        int lines = lineEnds.length;
+        byte[] kinds = new byte[lines];
+        int[] operands = new int[lines];
+        // new instruction -> old instruction with same source line, -1 if lexed again
+        int[] previous = new int[lines];
+        // old symbol id -> new symbol id + 1 (0 = not seen yet), saves hashing names of reused lines
+        int[] symbolIds = new int[old == null ? 0 : old.getSymbolNames().length];
+        InstructionList program = new InstructionList(Math.max(1, lines));
+        // symbol ids of the labels defined so far
+        BitSet labels = new BitSet();
+        int prefix = 0;
+        int suffix = 0;
+
+        if(old != null){
+            int[] oldEnds = old.getLineEnds();
+
+            prefix = commonPrefixLines(old.getSource(), oldEnds, source, lineEnds);
+            suffix = commonSuffixLines(old.getSource(), oldEnds, source, lineEnds, prefix);
+        }
+
+        int oldIndex = 0;
+        for(int line = 0; line < prefix; line++){
+            oldIndex = reuseLine(old, line, oldIndex, line, program, kinds, operands, previous, symbolIds);
+            checkReusedLine(program, kinds, line, labels, source, lineEnds, diagnostics);
+        }
+
+        int from = prefix == 0 ? 0 : lineEnds[prefix - 1];
+        int to = lines - suffix == 0 ? 0 : lineEnds[lines - suffix - 1];
+        Arrays.fill(kinds, prefix, lines - suffix, AssemblyCache.NO_COMMAND);
+        if(from < to){
+            lexLines(source, from, to, prefix, program, kinds, operands, previous, labels, diagnostics);
+        }
+
+        if(suffix > 0){
+            int oldLines = old.getKinds().length;
+
+            oldIndex = 0;
+            for(int line = 0; line < oldLines - suffix; line++){
+                if(old.getKinds()[line] != AssemblyCache.NO_COMMAND && old.getKinds()[line] != AssemblyCache.LABEL){
+                    oldIndex++;
+                }
+            }
+            for(int k = 0; k < suffix; k++){
+                oldIndex = reuseLine(old, oldLines - suffix + k, oldIndex, lines - suffix + k,
+                        program, kinds, operands, previous, symbolIds);
+                checkReusedLine(program, kinds, lines - suffix + k, labels, source, lineEnds, diagnostics);
+            }
+        }
+
+        if(diagnostics.hasErrors()){
+            return null;
+        }
+        int[] addresses = program.resolveSymbols(new SymbolTable());
+        short[] words = new short[program.size()];
+        int reencoded = 0;
+
+        for(int i = 0; i < words.length; i++){
+            if(previous[i] >= 0 && program.getOpcode(i) != InstructionList.A_SYMBOL){
+                words[i] = old.getWords()[previous[i]];
+            }
+            else{
+                words[i] = (short) program.encode(i, addresses);
+                if(previous[i] < 0 || words[i] != old.getWords()[previous[i]]){
+                    reencoded++;
+                }
+            }
+        }
+
+        String[] symbolNames = new String[program.getSymbolCount()];
+        for(int id = 0; id < symbolNames.length; id++){
+            symbolNames[id] = program.getSymbolName(id);
+        }
+        return new AssemblyCache(checksum, source, lineEnds, format, kinds, operands, symbolNames, addresses, words,
+                lines - prefix - suffix, reencoded);
+    }
+
+    //DESCRIPTION: adds the command of an unchanged line from old cache to program
+    //PRECONDITION: oldIndex is the old instruction number of oldLine's command
+    //POSTCONDITION: kinds/operands[newLine] filled, returns old instruction number of the next line
+    private static int reuseLine(AssemblyCache old, int oldLine, int oldIndex, int newLine, InstructionList program,
+                                 byte[] kinds, int[] operands, int[] previous, int[] symbolIds){
+        byte kind = old.getKinds()[oldLine];
+        int operand = old.getOperands()[oldLine];
+
+        kinds[newLine] = kind;
+        switch(kind){
+            case AssemblyCache.A_LITERAL:
+                program.addLiteral(operand);
+                operands[newLine] = operand;
+                break;
+            case AssemblyCache.A_SYMBOL:
+                if(symbolIds[operand] == 0){
+                    program.addSymbol(old.getSymbolNames()[operand]);
+                    symbolIds[operand] = program.getOperand(program.size() - 1) + 1;
+                }
+                else{
+                    program.addSymbolReference(symbolIds[operand] - 1);
+                }
+                operands[newLine] = symbolIds[operand] - 1;
+                break;
+            case AssemblyCache.C_INSTRUCTION:
+                program.addCompute(operand & 0x7F, (operand >> 7) & 7, operand >> 10);
+                operands[newLine] = operand;
+                break;
+            case AssemblyCache.LABEL:
+                program.addLabel(old.getSymbolNames()[operand]);
+                operands[newLine] = program.getLabelSymbol(program.getLabelCount() - 1);
+                return oldIndex;
+            default:
+                return oldIndex;
+        }
+        previous[program.size() - 1] = oldIndex;
+        return oldIndex + 1;
+    }
+
+    //DESCRIPTION: lexes source[from..to) (whole lines, first one is line firstLine) into program
+    //PRECONDITION: from/to are line boundaries, labels holds the labels of the lines before from
+    //POSTCONDITION: kinds/operands filled for lines holding a command; every bad command is reported
+    // to diagnostics and added as @0, like Assembler.readProgram() does (commands that don't fit the ROM too)
+    private static void lexLines(byte[] source, int from, int to, int firstLine, InstructionList program,
+                                 byte[] kinds, int[] operands, int[] previous, BitSet labels, Diagnostics diagnostics){
+        Lexer lexer = new Lexer(source, from, to, firstLine + 1);
+
+        while(lexer.hasMoreCommands()){
+            lexer.advance();
+            int line = lexer.getSourceLine() - 1;
+
+            if(lexer.getCommandType() == Parser.C_COMMAND){
+                int comp = CInstructionMapper.compCode(lexer.getComp());
+                int dest = CInstructionMapper.destCode(lexer.getDest());
+                int jump = CInstructionMapper.jumpCode(lexer.getJump());
+
+                if(CInstructionMapper.instruction(comp, dest, jump) == CInstructionMapper.INVALID){
+                    Assembler.reportInstruction(lexer, comp, dest, jump, diagnostics);
+                    program.addLiteral(0);
+                }
+                else{
+                    program.addCompute(comp, dest, jump);
+                }
+                kinds[line] = AssemblyCache.C_INSTRUCTION;
+                operands[line] = comp | dest << 7 | jump << 10;
+            }
+            else if(lexer.getCommandType() == Parser.A_COMMAND){
+                int symbols = program.getSymbolCount();
+
+                if(!program.addAddress(lexer.getLine(), lexer.getSymbolStart(), lexer.getSymbolEnd())){
+                    diagnostics.error(lexer, 1, Assembler.numberError(lexer.getSymbol()));
+                    program.addLiteral(0);
+                }
+                else{
+                    Assembler.checkSymbol(program, symbols, lexer, diagnostics);
+                }
+                kinds[line] = (byte) program.getOpcode(program.size() - 1);
+                operands[line] = program.getOperand(program.size() - 1);
+            }
+            else if(lexer.getCommandType() == Parser.L_COMMAND){
+                program.addLabel(lexer.getSymbol());
+                kinds[line] = AssemblyCache.LABEL;
+                operands[line] = program.getLabelSymbol(program.getLabelCount() - 1);
+                Assembler.checkLabel(lexer, labels.get(operands[line]), diagnostics);
+                Assembler.checkAddress(lexer, program.size(), diagnostics);
+                labels.set(operands[line]);
+                continue;
+            }
+            else{
+                continue;
+            }
+            Assembler.checkAddress(lexer, program.size(), diagnostics);
+            previous[program.size() - 1] = -1;
+        }
+    }
+
+    //DESCRIPTION: checks a line taken from the old cache: its label against the labels before it
+    // (its name was fine in the old version, but an edited line may define it again) and its
+    // command against the ROM size (lines inserted above may have pushed it past the end)
+    //PRECONDITION: reuseLine() just filled kinds[line]
+    //POSTCONDITION: label added to labels, error added to diagnostics if it was defined before or
+    // the command doesn't fit the ROM
+    private static void checkReusedLine(InstructionList program, byte[] kinds, int line, BitSet labels,
+                                        byte[] source, int[] lineEnds, Diagnostics diagnostics){
+        if(kinds[line] == AssemblyCache.NO_COMMAND){
+            return;
+        }
+        if(program.size() > InstructionList.MAX_LITERAL){
+            // rare, so the line is only lexed again to report it at the right column
+            Assembler.checkAddress(lexLine(source, lineEnds, line), program.size(), diagnostics);
+        }
+        if(kinds[line] != AssemblyCache.LABEL){
+            return;
+        }
+        int id = program.getLabelSymbol(program.getLabelCount() - 1);
+        String message = Assembler.labelError(program.getSymbolName(id), labels.get(id));
+
+        if(message != null){
+            // at the label's name, like Assembler.checkLabel() reports it
+            diagnostics.error(lexLine(source, lineEnds, line), 1, message);
+        }
+        labels.set(id);
+    }
+
+    //DESCRIPTION: lexes one line of source for reporting an error in it
+    //PRECONDITION: 0 <= line < lineEnds.length, the line holds a command
+    //POSTCONDITION: returns lexer positioned at the command of the line
+    private static Lexer lexLine(byte[] source, int[] lineEnds, int line){
+        Lexer lexer = new Lexer(source, line == 0 ? 0 : lineEnds[line - 1], lineEnds[line], line + 1);
+
+        lexer.advance();
+        return lexer;
+    }
+
+    //DESCRIPTION: counts leading lines that are byte for byte the same in both versions
+    //PRECONDITION: ends came from AssemblyCache.lineEnds()
+    //POSTCONDITION: returns number of shared lines at the start
+    private static int commonPrefixLines(byte[] oldSource, int[] oldEnds, byte[] source, int[] ends){
+        int same = Arrays.mismatch(oldSource, source);
+        int lines = 0;
+
+        if(same < 0){
+            same = source.length;
+        }
+        while(lines < oldEnds.length && lines < ends.length && oldEnds[lines] == ends[lines] && ends[lines] <= same){
+            lines++;
+        }
+        return lines;
+    }
+
+    //DESCRIPTION: counts trailing lines that are byte for byte the same in both versions,
+    // not counting lines already shared at the start
+    //PRECONDITION: ends came from AssemblyCache.lineEnds(), prefix from commonPrefixLines()
+    //POSTCONDITION: returns number of shared lines at the end
+    private static int commonSuffixLines(byte[] oldSource, int[] oldEnds, byte[] source, int[] ends, int prefix){
+        int limit = Math.min(oldSource.length, source.length) - (prefix == 0 ? 0 : ends[prefix - 1]);
+        int from = 0;
+        int lines = 0;
+
+        // both versions lined up at their ends: bytes after the last mismatch are shared
+        while(true){
+            int mismatch = Arrays.mismatch(oldSource, oldSource.length - limit + from, oldSource.length,
+                    source, source.length - limit + from, source.length);
+            if(mismatch < 0){
+                break;
+            }
+            from += mismatch + 1;
+        }
+        int same = limit - from;
+
+        while(lines < Math.min(oldEnds.length, ends.length) - prefix){
+            int oldLine = oldEnds.length - 1 - lines;
+            int line = ends.length - 1 - lines;
+            int oldLength = oldSource.length - (oldLine == 0 ? 0 : oldEnds[oldLine - 1]);
+            int length = source.length - (line == 0 ? 0 : ends[line - 1]);
+
+            if(oldLength != length || length > same){
+                break;
+            }
+            lines++;
+        }
+        return lines;
+    }
+
+    //DESCRIPTION: registers directory (and with tree all directories below it) with watcher
+    //PRECONDITION: watcher open
+    //POSTCONDITION: returns number of directories registered; tree roots remembered in recursive
+    private static int register(WatchService watcher, Path directory, boolean tree, Set<Path> recursive) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+
+        if(!tree){
+            root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return 1;
+        }
+        int count = 0;
+        try (Stream<Path> paths = Files.walk(root)) {
+            for(Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator){
+                path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                recursive.add(path);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //DESCRIPTION: assembles one file for watch mode and prints what happened
+    //PRECONDITION: n/a
+    //POSTCONDITION: one status line printed, errors reported instead of thrown
+    private static void assembleAndReport(String file, AssemblerOptions options){
+        String key = Paths.get(file).toAbsolutePath().normalize().toString();
+        AssemblyCache before = CACHES.get(key);
+        long start = System.nanoTime();
+
+        try {
+            int count = assembleFile(file, options);
+            AssemblyCache after = CACHES.get(key);
+
+            if(after == before){
+                System.out.println("SAME   " + file);
+            }
+            else{
+                System.out.println("OK     " + file + " (" + count + " instructions, " + after.getRelexedLines()
+                        + " lines lexed, " + after.getReencodedWords() + " words encoded, "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            }
+        } catch (AssemblyException ex) {
+            System.out.println("FAILED " + file + ": " + Diagnostics.describe(ex));
+        } catch (IOException ex) {
+            System.out.println("FAILED " + file + ": " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            System.out.println("FAILED " + file + ": " + ex);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+// Memo of C-instruction lines already translated: generated Hack code repeats a few
+// dozen lines (D=M, M=D, AM=M-1, 0;JMP ...) thousands of times, so the readers look the
+// line up here before splitting it into dest, comp and jump and mapping each field.
+// Bounded and direct-mapped: the line's hash picks one slot, a miss puts the line there
+// and evicts whatever line held the slot. Parser keys it by the raw line (a hit skips
+// cleaning it too), Lexer by the clean bytes; only valid instructions are put.
+public class InstructionCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    // longer lines (a long comment on a Parser line) are not cached
+    public static final int MAX_KEY_LENGTH = 64;
+
+    //PRIVATE VARIABLES
+    private int mask;
+    // String (Parser) or byte[] (Lexer) per slot, null if empty
+    private Object[] keys;
+    private int[] hashes;
+    private short[] words;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    //DESCRIPTION: creates empty cache with DEFAULT_CAPACITY slots
+    //PRECONDITION: n/a
+    //POSTCONDITION: no lines cached
+    public InstructionCache(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    //DESCRIPTION: creates empty cache
+    //PRECONDITION: capacity is a power of two
+    //POSTCONDITION: no lines cached
+    public InstructionCache(int capacity){
+        mask = capacity - 1;
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        words = new short[capacity];
+    }
+
+
+    //DESCRIPTION: looks up raw source line (Parser)
+    //PRECONDITION: line not null
+    //POSTCONDITION: returns instruction word (hit counted), or CInstructionMapper.INVALID if the line
+    // isn't cached (blank lines, A-instructions and labels never are)
+    public int get(String line){
+        int hash = spread(line.hashCode());
+        int slot = hash & mask;
+
+        if(hashes[slot] == hash && line.equals(keys[slot])){
+            hits++;
+            return words[slot] & 0xFFFF;
+        }
+        return CInstructionMapper.INVALID;
+    }
+
+    //DESCRIPTION: counts a C-instruction that missed and had to be translated, and remembers its word
+    //PRECONDITION: word is the valid C-instruction of line
+    //POSTCONDITION: miss counted, line cached unless longer than MAX_KEY_LENGTH (evicting its slot's line)
+    public void put(String line, int word){
+        misses++;
+        if(line.length() <= MAX_KEY_LENGTH){
+            store(line, spread(line.hashCode()), word);
+        }
+    }
+
+    //DESCRIPTION: looks up clean line bytes[start..end) (Lexer)
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns instruction word (hit counted), or CInstructionMapper.INVALID if the line isn't cached
+    public int get(byte[] bytes, int start, int end){
+        int hash = hash(bytes, start, end);
+        int slot = hash & mask;
+
+        if(hashes[slot] == hash && keys[slot] instanceof byte[]
+                && Arrays.equals((byte[]) keys[slot], 0, ((byte[]) keys[slot]).length, bytes, start, end)){
+            hits++;
+            return words[slot] & 0xFFFF;
+        }
+        return CInstructionMapper.INVALID;
+    }
+
+    //DESCRIPTION: counts a C-instruction that missed and had to be translated, and remembers its word
+    //PRECONDITION: word is the valid C-instruction of clean line bytes[start..end)
+    //POSTCONDITION: miss counted, copy of the line cached unless longer than MAX_KEY_LENGTH (evicting its slot's line)
+    public void put(byte[] bytes, int start, int end, int word){
+        misses++;
+        if(end - start <= MAX_KEY_LENGTH){
+            store(Arrays.copyOfRange(bytes, start, end), hash(bytes, start, end), word);
+        }
+    }
+
+
+    //GETTER METHODS
+    public long getHits(){
+        return hits;
+    }
+
+    public long getMisses(){
+        return misses;
+    }
+
+    //DESCRIPTION: getter for lines pushed out by another line with the same slot
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of lines put in a slot that held another line
+    public long getEvictions(){
+        return evictions;
+    }
+
+    public int getCapacity(){
+        return keys.length;
+    }
+
+    //DESCRIPTION: formats counts for --stats
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns e.g. "line cache 9800 hits / 200 misses / 3 evictions"
+    public String toString(){
+        return "line cache " + hits + " hits / " + misses + " misses / " + evictions + " evictions";
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: puts key in its slot
+    //PRECONDITION: hash is the key's hash
+    //POSTCONDITION: slot holds key and word, eviction counted if it held another key
+    private void store(Object key, int hash, int word){
+        int slot = hash & mask;
+
+        if(keys[slot] != null){
+            evictions++;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        words[slot] = (short) word;
+    }
+
+    //DESCRIPTION: String.hashCode() of the line read as ASCII, spread
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns hash
+    private static int hash(byte[] bytes, int start, int end){
+        int hash = 0;
+
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + bytes[i];
+        }
+        return spread(hash);
+    }
+
+    //DESCRIPTION: mixes high bits of hash into the low bits that pick the slot
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns mixed hash
+    private static int spread(int hash){
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,374 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class InstructionList {
+
+    // OPCODES
+    public static final int A_LITERAL = 0;
+    public static final int A_SYMBOL = 1;
+    public static final int C_INSTRUCTION = 2;
+
+    // largest constant an A-instruction can hold (bit 15 would make it a C-instruction)
+    public static final int MAX_LITERAL = 0x7FFF;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // fewest instructions a core encodes in toWordsParallel(), below that a task costs more than it saves
+    private static final int MIN_CHUNK_SIZE = 1 << 11;
+    private static final int UNRESOLVED = -1;
+
+    //PRIVATE VARIABLES
+    private int size;
+    private int[] opcodes;
+    private int[] operands;
+    private int[] dests;
+    private int[] jumps;
+
+    // symbol id = entry number in this table (value is the id as well)
+    private PrimitiveSymbolTable symbols;
+
+    private int labelCount;
+    private int[] labelSymbols;
+    private int[] labelAddresses;
+
+    // source line of every instruction, only kept after trackSourceLines() (--source-map)
+    private int[] sourceLines;
+    private int sourceLine;
+
+
+    //DESCRIPTION: creates empty instruction list (parallel int arrays)
+    //PRECONDITION: n/a
+    //POSTCONDITION: list has no instructions, labels or symbols
+    public InstructionList(){
+        this(INITIAL_CAPACITY);
+    }
+
+    //DESCRIPTION: creates empty instruction list with room for capacity instructions
+    //PRECONDITION: capacity >= 1
+    //POSTCONDITION: list has no instructions, labels or symbols
+    public InstructionList(int capacity){
+        opcodes = new int[capacity];
+        operands = new int[capacity];
+        dests = new int[capacity];
+        jumps = new int[capacity];
+
+        symbols = new PrimitiveSymbolTable(256);
+
+        labelSymbols = new int[64];
+        labelAddresses = new int[64];
+    }
+
+
+    //DESCRIPTION: appends A-instruction with numeric constant
+    //PRECONDITION: value already parsed from decimal
+    //POSTCONDITION: instruction added at address size()-1
+    public void addLiteral(int value){
+        add(A_LITERAL, value, 0, 0);
+    }
+
+    //DESCRIPTION: appends A-instruction that references a symbol
+    //PRECONDITION: symbol is not numeric
+    //POSTCONDITION: instruction added, symbol given an id if new
+    public void addSymbol(String symbol){
+        add(A_SYMBOL, symbols.getOrAllocate(symbol, symbols.size()), 0, 0);
+    }
+
+    //DESCRIPTION: appends A-instruction for a symbol that already has an id
+    //PRECONDITION: 0 <= id < getSymbolCount()
+    //POSTCONDITION: instruction added at address size()-1
+    public void addSymbolReference(int id){
+        add(A_SYMBOL, id, 0, 0);
+    }
+
+    //DESCRIPTION: appends A-instruction for the bytes after '@' (e.g. straight from
+    // the Lexer's line buffer): leading digit means decimal constant, else symbol
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: instruction added and returns true, or returns false (nothing added) for
+    // a constant that isn't a decimal number from 0 to MAX_LITERAL
+    public boolean addAddress(byte[] bytes, int start, int end){
+        if(start < end && bytes[start] >= '0' && bytes[start] <= '9'){
+            int value = 0;
+
+            for(int i = start; i < end; i++){
+                if(bytes[i] < '0' || bytes[i] > '9'){
+                    return false;
+                }
+                value = value * 10 + (bytes[i] - '0');
+                if(value > MAX_LITERAL){
+                    return false;
+                }
+            }
+            addLiteral(value);
+        }
+        else{
+            add(A_SYMBOL, symbols.getOrAllocate(bytes, start, end, symbols.size()), 0, 0);
+        }
+        return true;
+    }
+
+    //DESCRIPTION: appends C-instruction with already translated fields
+    //PRECONDITION: comp (7 bits), dest (3 bits), jump (3 bits) are valid codes
+    //POSTCONDITION: instruction added at address size()-1
+    public void addCompute(int comp, int dest, int jump){
+        add(C_INSTRUCTION, comp, dest, jump);
+    }
+
+    //DESCRIPTION: records label at address of next instruction
+    //PRECONDITION: symbol is name inside (...) of L-command
+    //POSTCONDITION: label stored with address equal to current size()
+    public void addLabel(String symbol){
+        if(labelCount == labelSymbols.length){
+            labelSymbols = Arrays.copyOf(labelSymbols, labelCount * 2);
+            labelAddresses = Arrays.copyOf(labelAddresses, labelCount * 2);
+        }
+        labelSymbols[labelCount] = symbols.getOrAllocate(symbol, symbols.size());
+        labelAddresses[labelCount] = size;
+        labelCount++;
+    }
+
+
+    //DESCRIPTION: keeps the source line of every instruction added from now on
+    //PRECONDITION: called before the first instruction is added
+    //POSTCONDITION: getSourceLine() works for every instruction
+    public void trackSourceLines(){
+        sourceLines = new int[opcodes.length];
+    }
+
+    //DESCRIPTION: sets source line the next instructions come from (readProgram() calls it per command)
+    //PRECONDITION: line >= 1
+    //POSTCONDITION: line stored with the instructions added next if source lines are tracked
+    public void setSourceLine(int line){
+        sourceLine = line;
+    }
+
+
+    //DESCRIPTION: replaces the constant of an A-instruction (the optimizer moves numeric jump targets)
+    //PRECONDITION: 0 <= index < size(), opcode is A_LITERAL, 0 <= value <= MAX_LITERAL
+    //POSTCONDITION: instruction loads value
+    public void setLiteral(int index, int value){
+        operands[index] = value;
+    }
+
+    //DESCRIPTION: drops the instructions keep marks false, closing the gaps; a label on a
+    // dropped instruction moves to the next instruction that stays
+    //PRECONDITION: keep has at least size() entries
+    //POSTCONDITION: list holds the kept instructions in order, label addresses point at them;
+    // returns the new address of every old address from 0 to the old size() (an address that was
+    // dropped maps to the next instruction that stays)
+    public int[] retain(boolean[] keep){
+        int[] newIndex = new int[size + 1];
+        int kept = 0;
+
+        for(int i = 0; i < size; i++){
+            newIndex[i] = kept;
+            if(keep[i]){
+                opcodes[kept] = opcodes[i];
+                operands[kept] = operands[i];
+                dests[kept] = dests[i];
+                jumps[kept] = jumps[i];
+                if(sourceLines != null){
+                    sourceLines[kept] = sourceLines[i];
+                }
+                kept++;
+            }
+        }
+        newIndex[size] = kept;
+        size = kept;
+
+        for(int i = 0; i < labelCount; i++){
+            labelAddresses[i] = newIndex[labelAddresses[i]];
+        }
+        return newIndex;
+    }
+
+    //DESCRIPTION: enters labels, then allocates variables in order of first use
+    //PRECONDITION: symbol table only has predefined symbols (or earlier entries)
+    //POSTCONDITION: returns address for every symbol id (-1 if name is illegal),
+    // same order and addresses as firstPass()/secondPass() would produce
+    public int[] resolveSymbols(SymbolTable symbolTable){
+        int[] addresses = new int[symbols.size()];
+        int variableAddress = 16;
+
+        Arrays.fill(addresses, UNRESOLVED);
+
+        for(int i = 0; i < labelCount; i++){
+            symbolTable.addEntry(symbols.getKey(labelSymbols[i]), labelAddresses[i]);
+        }
+
+        for(int i = 0; i < size; i++){
+            if(opcodes[i] == A_SYMBOL && addresses[operands[i]] == UNRESOLVED){
+                int entries = symbolTable.size();
+
+                addresses[operands[i]] = symbolTable.getOrAllocate(symbols.getKey(operands[i]), variableAddress);
+                if(symbolTable.size() > entries){
+                    variableAddress++;
+                }
+            }
+        }
+        return addresses;
+    }
+
+    //DESCRIPTION: builds machine word for one instruction
+    //PRECONDITION: addresses came from resolveSymbols()
+    //POSTCONDITION: returns instruction word (A-value or 111 + comp + dest + jump)
+    public int encode(int index, int[] addresses){
+        if(opcodes[index] == A_LITERAL){
+            return operands[index];
+        }
+        else if(opcodes[index] == A_SYMBOL){
+            return addresses[operands[index]];
+        }
+        else{
+            return (7 << 13) | (operands[index] << 6) | (dests[index] << 3) | jumps[index];
+        }
+    }
+
+    //DESCRIPTION: encodes whole program into packed ROM image
+    //PRECONDITION: addresses came from resolveSymbols()
+    //POSTCONDITION: returns one 16-bit word per instruction, in ROM order
+    public short[] toWords(int[] addresses){
+        short[] words = new short[size];
+
+        encodeRange(0, size, addresses, words, 0);
+        return words;
+    }
+
+    //DESCRIPTION: encodes whole program on all cores, one chunk per core (at least
+    // MIN_CHUNK_SIZE instructions each); variables must already be settled by resolveSymbols()
+    // (sequential, first-use order) so every chunk encodes independently
+    //PRECONDITION: addresses came from resolveSymbols()
+    //POSTCONDITION: returns same words as toWords(addresses)
+    public short[] toWordsParallel(int[] addresses){
+        short[] words = new short[size];
+        int cores = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + cores - 1) / cores);
+        int chunks = (size + chunkSize - 1) / chunkSize;
+
+        IntStream.range(0, chunks).parallel().forEach(chunk ->
+                encodeRange(chunk * chunkSize, Math.min(size, (chunk + 1) * chunkSize), addresses, words,
+                        chunk * chunkSize));
+        return words;
+    }
+
+    //DESCRIPTION: encodes instructions [from..to) into words[offset..], for callers that
+    // hand the program on in batches (PipelinedAssembler)
+    //PRECONDITION: addresses came from resolveSymbols(), words has room for to - from entries at offset
+    //POSTCONDITION: words[offset..offset+to-from) hold 16-bit instruction words
+    public void encodeRange(int from, int to, int[] addresses, short[] words, int offset){
+        for(int i = from; i < to; i++){
+            words[offset + i - from] = (short) encode(i, addresses);
+        }
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for number of instructions (ROM words)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of A- and C-instructions
+    public int size(){
+        return size;
+    }
+
+    //DESCRIPTION: getter for opcode of instruction
+    //PRECONDITION: 0 <= index < size()
+    //POSTCONDITION: returns A_LITERAL, A_SYMBOL or C_INSTRUCTION
+    public int getOpcode(int index){
+        return opcodes[index];
+    }
+
+    //DESCRIPTION: getter for operand (literal value, symbol id or comp code)
+    //PRECONDITION: 0 <= index < size()
+    //POSTCONDITION: returns operand depending on opcode
+    public int getOperand(int index){
+        return operands[index];
+    }
+
+    //DESCRIPTION: getter for dest code of C-instruction
+    //PRECONDITION: 0 <= index < size(), opcode is C_INSTRUCTION
+    //POSTCONDITION: returns 3-bit dest code
+    public int getDest(int index){
+        return dests[index];
+    }
+
+    //DESCRIPTION: getter for jump code of C-instruction
+    //PRECONDITION: 0 <= index < size(), opcode is C_INSTRUCTION
+    //POSTCONDITION: returns 3-bit jump code
+    public int getJump(int index){
+        return jumps[index];
+    }
+
+    //DESCRIPTION: getter for source line of instruction
+    //PRECONDITION: 0 <= index < size(), trackSourceLines() was called
+    //POSTCONDITION: returns line (1 = first line of the file)
+    public int getSourceLine(int index){
+        return sourceLines[index];
+    }
+
+    //DESCRIPTION: checks if trackSourceLines() was called
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if source lines are kept
+    public boolean hasSourceLines(){
+        return sourceLines != null;
+    }
+
+    //DESCRIPTION: getter for number of distinct symbols
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of symbol ids handed out
+    public int getSymbolCount(){
+        return symbols.size();
+    }
+
+    //DESCRIPTION: getter for symbol name of id
+    //PRECONDITION: 0 <= id < getSymbolCount()
+    //POSTCONDITION: returns name of symbol
+    public String getSymbolName(int id){
+        return symbols.getKey(id);
+    }
+
+    //DESCRIPTION: getter for number of labels
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of L-commands seen
+    public int getLabelCount(){
+        return labelCount;
+    }
+
+    //DESCRIPTION: getter for symbol id of label
+    //PRECONDITION: 0 <= index < getLabelCount()
+    //POSTCONDITION: returns symbol id of label
+    public int getLabelSymbol(int index){
+        return labelSymbols[index];
+    }
+
+    //DESCRIPTION: getter for ROM address of label
+    //PRECONDITION: 0 <= index < getLabelCount()
+    //POSTCONDITION: returns address of instruction after label
+    public int getLabelAddress(int index){
+        return labelAddresses[index];
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: appends one row to the parallel arrays, growing if full
+    //PRECONDITION: fields are valid for opcode
+    //POSTCONDITION: size increased by one
+    private void add(int opcode, int operand, int dest, int jump){
+        if(size == opcodes.length){
+            int capacity = size * 2;
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            operands = Arrays.copyOf(operands, capacity);
+            dests = Arrays.copyOf(dests, capacity);
+            jumps = Arrays.copyOf(jumps, capacity);
+            if(sourceLines != null){
+                sourceLines = Arrays.copyOf(sourceLines, capacity);
+            }
+        }
+        opcodes[size] = opcode;
+        operands[size] = operand;
+        dests[size] = dest;
+        jumps[size] = jump;
+        if(sourceLines != null){
+            sourceLines[size] = sourceLine;
+        }
+        size++;
+    }
+}
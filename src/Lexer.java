@@ -0,0 +1,480 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class Lexer implements CommandReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // MNEMONICS RETURNED BY GETTERS (no new String when source matches one)
+    private static final String[] DEST_MNEMONICS = {"NULL", "M", "D", "MD", "A", "AM", "AD", "AMD"};
+    private static final String[] JUMP_MNEMONICS = {"NULL", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] COMP_MNEMONICS = {
+            "0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A", "D|A",
+            "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M"};
+
+    //PRIVATE VARIABLES
+    private ReadableByteChannel input;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private byte[] line;
+    private int[] columns;
+    private int lineLength;
+    private int lineNumber;
+    private int sourceLine;
+
+    private char commandType;
+    private int symbolStart;
+    private int symbolEnd;
+    private int destEnd;
+    private int compStart;
+    private int compEnd;
+    private int jumpStart;
+
+    private String symbol;
+    private String destMnemonic;
+    private String compMnemonic;
+    private String jumpMnemonic;
+
+    // word of a C-instruction line found in the cache, INVALID until known
+    private InstructionCache instructionCache;
+    private int instruction;
+
+
+    //DESCRIPTION: opens input file for reading in large chunks
+    //PRECONDITION: provided file is ASM file
+    //POSTCONDITION: if file can't be opened, throws AssemblyException w/ error message
+    public Lexer(String inFileName) {
+        try {
+            open(FileChannel.open(Paths.get(inFileName), StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new AssemblyException("ERROR WITH GETTING FILE: " + e.getMessage(), e);
+        }
+    }
+
+    //DESCRIPTION: prepares to lex from an already open channel
+    //PRECONDITION: channel is readable
+    //POSTCONDITION: lexer positioned at start of channel
+    public Lexer(ReadableByteChannel channel) {
+        open(channel);
+    }
+
+    //DESCRIPTION: lexes source[from..to) in place (no channel, no copy of the bytes)
+    //PRECONDITION: 0 <= from <= to <= source.length, source not changed while lexing
+    //POSTCONDITION: lexer positioned at from, first line is source line 1
+    public Lexer(byte[] source, int from, int to) {
+        this(source, from, to, 1);
+    }
+
+    //DESCRIPTION: lexes source[from..to) in place, numbering lines from firstLine
+    // (from is the start of that line of a larger source)
+    //PRECONDITION: 0 <= from <= to <= source.length, source not changed while lexing, firstLine >= 1
+    //POSTCONDITION: lexer positioned at from, getSourceLine() counts on from firstLine
+    public Lexer(byte[] source, int from, int to, int firstLine) {
+        sourceLine = firstLine - 1;
+        buffer = ByteBuffer.wrap(source);
+        bytes = source;
+        position = from;
+        limit = to;
+        endOfInput = true;
+        line = new byte[256];
+        columns = new int[256];
+        instructionCache = new InstructionCache();
+    }
+
+
+    //DESCRIPTION: returns boolean if more commands left, closes channel if not
+    //PRECONDITION: channel is open
+    //POSTCONDITION: returns true if more commands, else closes channel
+    public boolean hasMoreCommands(){
+        if(position < limit || fill()){
+            return true;
+        }
+        else{
+            close();
+            return false;
+        }
+    }
+
+
+    //DESCRIPTION: cleans next line byte by byte and classifies it
+    //PRECONDITION: called only if hasMoreCommands()
+    //POSTCONDITION: current instruction parts put into instance vars
+    public void advance(){
+        if(hasMoreCommands())
+        {
+            readLine();
+            parse();
+        }
+
+        if(commandType != Parser.NO_COMMAND && commandType != Parser.L_COMMAND)
+        {
+            lineNumber++;
+        }
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for command type
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns Command for type (N/A/C/L)
+    public char getCommandType(){
+        return commandType;
+    }
+
+    //DESCRIPTION: getter for symbol name, built from the line on first call
+    //PRECONDITION: advance was called, call for A- and L-commands only
+    //POSTCONDITION: returns string for symbol name
+    public String getSymbol(){
+        if(symbol == null){
+            symbol = new String(line, symbolStart, symbolEnd - symbolStart, StandardCharsets.UTF_8);
+        }
+        return symbol;
+    }
+
+    //DESCRIPTION: getter for dest part of C-instruction
+    //PRECONDITION: advance was called, call for C-instructions only
+    //POSTCONDITION: returns mnemonic (ASM symbol) for dest part
+    public String getDest(){
+        if(destMnemonic == null){
+            destMnemonic = destEnd < 0 ? "NULL" : mnemonic(DEST_MNEMONICS, 0, destEnd);
+        }
+        return destMnemonic;
+    }
+
+    //DESCRIPTION: getter for comp part of C-instruction
+    //PRECONDITION: advance was called, call for C-instructions only
+    //POSTCONDITION: returns mnemonic (ASM symbol) for comp part
+    public String getComp(){
+        if(compMnemonic == null){
+            compMnemonic = mnemonic(COMP_MNEMONICS, compStart, compEnd);
+        }
+        return compMnemonic;
+    }
+
+    //DESCRIPTION: getter for jump part of C-instruction
+    //PRECONDITION: advance was called, call for C-instructions only
+    //POSTCONDITION: returns mnemonic (ASM symbol) for jump part
+    public String getJump(){
+        if(jumpMnemonic == null){
+            jumpMnemonic = jumpStart < 0 ? "NULL" : mnemonic(JUMP_MNEMONICS, jumpStart, lineLength);
+        }
+        return jumpMnemonic;
+    }
+
+    //DESCRIPTION: getter for whole C-instruction word, from the instruction cache if the same
+    // clean line was translated before
+    //PRECONDITION: advance was called, call for C-instructions only
+    //POSTCONDITION: returns 111accccccdddjjj as int, or CInstructionMapper.INVALID if any part is unknown
+    public int getInstruction(){
+        if(instruction == CInstructionMapper.INVALID){
+            instruction = instructionCache.get(line, 0, lineLength);
+        }
+        if(instruction == CInstructionMapper.INVALID){
+            instruction = CInstructionMapper.instruction(getComp(), getDest(), getJump());
+
+            if(instruction != CInstructionMapper.INVALID){
+                instructionCache.put(line, 0, lineLength, instruction);
+            }
+        }
+        return instruction;
+    }
+
+    public InstructionCache getInstructionCache(){
+        return instructionCache;
+    }
+
+    //DESCRIPTION: shares a cache between lexers of one source (PipelinedAssembler lexes it in chunks)
+    //PRECONDITION: cache only used by one thread at a time
+    //POSTCONDITION: getInstruction() uses cache
+    public void setInstructionCache(InstructionCache cache){
+        instructionCache = cache;
+    }
+
+    //DESCRIPTION: getter for cleanLine (debugging)
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns string of current clean instruction
+    public String getCleanLine(){
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    //DESCRIPTION: getter for lineNumber (instruction counter)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns line number currently being processed from file
+    public int getLineNumber(){
+        return lineNumber;
+    }
+
+    //DESCRIPTION: getter for number of source line of current command (1 = first line)
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns count of lines read so far, blank and comment lines included
+    public int getSourceLine(){
+        return sourceLine;
+    }
+
+    //DESCRIPTION: maps position in clean line back to the source line (for diagnostics)
+    //PRECONDITION: advance was called, 0 <= offset <= getLineLength()
+    //POSTCONDITION: returns column (1 = first byte) of byte at offset, or just after the
+    // last one if offset is the length
+    public int getColumn(int offset){
+        if(offset < lineLength){
+            return columns[offset];
+        }
+        return lineLength == 0 ? 1 : columns[lineLength - 1] + 1;
+    }
+
+    //DESCRIPTION: getter for buffer holding current clean line
+    //PRECONDITION: advance was called; contents change on next advance()
+    //POSTCONDITION: returns clean bytes, valid from 0 to getLineLength()
+    public byte[] getLine(){
+        return line;
+    }
+
+    //DESCRIPTION: getter for length of current clean line
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns number of valid bytes in getLine()
+    public int getLineLength(){
+        return lineLength;
+    }
+
+    //DESCRIPTION: getters for field bounds inside getLine() (end exclusive)
+    //PRECONDITION: advance was called; dest/jump bounds are -1 when field absent
+    //POSTCONDITION: returns offset into clean line
+    public int getSymbolStart(){
+        return symbolStart;
+    }
+
+    public int getSymbolEnd(){
+        return symbolEnd;
+    }
+
+    public int getDestEnd(){
+        return destEnd;
+    }
+
+    public int getCompStart(){
+        return compStart;
+    }
+
+    public int getCompEnd(){
+        return compEnd;
+    }
+
+    public int getJumpStart(){
+        return jumpStart;
+    }
+
+
+    //ALL PRIVATE METHODS (LEXER HELPERS)
+
+    //DESCRIPTION: sets up buffers over channel
+    //PRECONDITION: channel is readable
+    //POSTCONDITION: buffer empty, first fill() will read from channel
+    private void open(ReadableByteChannel channel){
+        input = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        bytes = buffer.array();
+        line = new byte[256];
+        columns = new int[256];
+        lineNumber = 0;
+        sourceLine = 0;
+        instructionCache = new InstructionCache();
+    }
+
+
+    //DESCRIPTION: refills chunk buffer from channel (whole lines need not fit)
+    //PRECONDITION: all bytes before limit were consumed
+    //POSTCONDITION: returns true if new bytes available, false at end of input;
+    // throws AssemblyException if channel can't be read
+    private boolean fill(){
+        if(endOfInput){
+            return false;
+        }
+        try {
+            buffer.clear();
+            int read = 0;
+            while(read == 0){
+                read = input.read(buffer);
+            }
+            if(read < 0){
+                endOfInput = true;
+                position = 0;
+                limit = 0;
+                return false;
+            }
+            position = 0;
+            limit = buffer.position();
+            return true;
+        } catch (IOException e) {
+            close();
+            throw new AssemblyException("ERROR READING FILE: " + e.getMessage(), e);
+        }
+    }
+
+
+    //DESCRIPTION: copies next line into line buffer without spaces, tabs and // comment
+    //PRECONDITION: hasMoreCommands() returned true
+    //POSTCONDITION: line holds clean instruction, columns its source columns, '@' '(' ')' '=' ';' positions noted;
+    // same result as Parser.cleanLine() on the same line
+    private void readLine(){
+        boolean comment = false;
+        int length = 0;
+        int at = -1;
+        boolean paren = false;
+        int equals = -1;
+        int semicolon = -1;
+        int column = 0;
+
+        sourceLine++;
+        while(true){
+            if(position == limit && !fill()){
+                break;
+            }
+            byte b = bytes[position++];
+            column++;
+
+            if(b == '\n'){
+                break;
+            }
+            if(b == '\r'){
+                if((position < limit || fill()) && bytes[position] == '\n'){
+                    position++;
+                }
+                break;
+            }
+            if(comment || b == ' ' || b == '\t'){
+                continue;
+            }
+            if(b == '/' && length > 0 && line[length - 1] == '/'){
+                length--;
+                comment = true;
+                continue;
+            }
+            if(length == line.length){
+                byte[] bigger = new byte[length * 2];
+                System.arraycopy(line, 0, bigger, 0, length);
+                line = bigger;
+                columns = Arrays.copyOf(columns, length * 2);
+            }
+            line[length] = b;
+            columns[length] = column;
+
+            if(b == '@' && at < 0){
+                at = length;
+            }
+            else if(b == '(' || b == ')'){
+                paren = true;
+            }
+            else if(b == '=' && equals < 0){
+                equals = length;
+            }
+            else if(b == ';' && semicolon < 0){
+                semicolon = length;
+            }
+            length++;
+        }
+
+        lineLength = length;
+
+        if(length == 0){
+            commandType = Parser.NO_COMMAND;
+        }
+        else if(at >= 0){
+            commandType = Parser.A_COMMAND;
+        }
+        else if(paren){
+            commandType = Parser.L_COMMAND;
+        }
+        else{
+            commandType = Parser.C_COMMAND;
+        }
+
+        destEnd = equals;
+        jumpStart = semicolon < 0 ? -1 : semicolon + 1;
+        if(equals >= 0){
+            compStart = equals + 1;
+            compEnd = semicolon > equals ? semicolon : length;
+        }
+        else if(semicolon >= 0){
+            compStart = 0;
+            compEnd = semicolon;
+        }
+        else{
+            compStart = 0;
+            compEnd = length;
+        }
+    }
+
+
+    //DESCRIPTION: sets symbol bounds for A/L commands, clears cached strings
+    //PRECONDITION: readLine() was called
+    //POSTCONDITION: getters will build strings for the new line on demand
+    private void parse(){
+        if(commandType == Parser.A_COMMAND){
+            symbolStart = 1;
+            symbolEnd = lineLength;
+            symbol = null;
+        }
+        else if(commandType == Parser.L_COMMAND){
+            symbolStart = 1;
+            symbolEnd = Math.max(1, lineLength - 1);
+            symbol = null;
+        }
+        else if(commandType == Parser.C_COMMAND){
+            destMnemonic = null;
+            compMnemonic = null;
+            jumpMnemonic = null;
+            instruction = CInstructionMapper.INVALID;
+        }
+    }
+
+
+    //DESCRIPTION: returns known mnemonic equal to bytes of line, else new string
+    //PRECONDITION: 0 <= start <= end <= lineLength
+    //POSTCONDITION: returns string of line[start..end)
+    private String mnemonic(String[] known, int start, int end){
+        int length = end - start;
+
+        for(String candidate : known){
+            if(candidate.length() == length && matches(candidate, start)){
+                return candidate;
+            }
+        }
+        return new String(line, start, length, StandardCharsets.UTF_8);
+    }
+
+    //DESCRIPTION: compares ASCII string with bytes of line at offset
+    //PRECONDITION: line has candidate.length() bytes from start
+    //POSTCONDITION: returns true if every char equals its byte
+    private boolean matches(String candidate, int start){
+        for(int i = 0; i < candidate.length(); i++){
+            if(line[start + i] != candidate.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //DESCRIPTION: closes channel once input is used up
+    //PRECONDITION: n/a
+    //POSTCONDITION: channel closed, errors ignored
+    private void close(){
+        if(input == null){
+            return;
+        }
+        try {
+            input.close();
+        } catch (IOException e) {
+            // nothing left to read either way
+        }
+    }
+}
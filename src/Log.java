@@ -0,0 +1,63 @@
+public class Log {
+
+    // LEVELS
+    public static final int OFF = 0;
+    public static final int INFO = 1;
+    public static final int TRACE = 2;
+
+    // set once from the command line before any work starts
+    private static int level = OFF;
+
+
+    //DESCRIPTION: sets level of messages that get printed
+    //PRECONDITION: level is OFF, INFO or TRACE
+    //POSTCONDITION: messages above level are dropped
+    public static void setLevel(int newLevel){
+        level = newLevel;
+    }
+
+    //DESCRIPTION: converts command line name to level
+    //PRECONDITION: name is off, info or trace (any case)
+    //POSTCONDITION: returns level, or -1 if name is unknown
+    public static int parseLevel(String name){
+        switch(name.toLowerCase()){
+            case "off": return OFF;
+            case "info": return INFO;
+            case "trace": return TRACE;
+            default: return -1;
+        }
+    }
+
+    //DESCRIPTION: checks if info messages are printed; callers test this
+    // before building a message so nothing is built when logging is off
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if level is INFO or TRACE
+    public static boolean isInfo(){
+        return level >= INFO;
+    }
+
+    //DESCRIPTION: checks if per-instruction trace messages are printed
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if level is TRACE
+    public static boolean isTrace(){
+        return level >= TRACE;
+    }
+
+    //DESCRIPTION: prints message at info level
+    //PRECONDITION: caller checked isInfo() if message is costly to build
+    //POSTCONDITION: message printed to stderr if info enabled
+    public static void info(String message){
+        if(level >= INFO){
+            System.err.println(message);
+        }
+    }
+
+    //DESCRIPTION: prints message at trace level
+    //PRECONDITION: caller checked isTrace() before building message
+    //POSTCONDITION: message printed to stderr if trace enabled
+    public static void trace(String message){
+        if(level >= TRACE){
+            System.err.println(message);
+        }
+    }
+}
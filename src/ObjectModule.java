@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Relocatable object of one .asm module (--link): its words encoded as if the module
+// started at ROM address 0, plus what HackLinker needs to place it anywhere:
+//   labels      - every label of the module with its module-relative address (Hack has
+//                 no export syntax, so all of them are visible to the other modules)
+//   relocations - words holding a label of this module, the module's base is added
+//   imports     - symbols the module uses but doesn't define, in order of first use: a label
+//                 of another module or else a variable, the slots the linker allocates RAM for
+//   fixups      - words that take the address of an import
+// Predefined symbols and constants are final already.
+public class ObjectModule {
+
+    public static final String EXTENSION = ".hobj";
+
+    private static final int MAGIC = 0x484F424A; // "HOBJ"
+    private static final int VERSION = 1;
+
+    //PRIVATE VARIABLES
+    private String name;
+    // content hash of the source the object was compiled from (AssemblyCache.checksum())
+    private long checksum;
+    private short[] words;
+    private String[] labelNames;
+    private int[] labelAddresses;
+    private int[] relocations;
+    private String[] imports;
+    private int[] fixupAddresses;
+    private int[] fixupImports;
+
+
+    //DESCRIPTION: creates object from its tables
+    //PRECONDITION: tables as described above, fixupImports index imports
+    //POSTCONDITION: object holds given arrays (not copied)
+    public ObjectModule(String name, long checksum, short[] words, String[] labelNames, int[] labelAddresses,
+                        int[] relocations, String[] imports, int[] fixupAddresses, int[] fixupImports){
+        this.name = name;
+        this.checksum = checksum;
+        this.words = words;
+        this.labelNames = labelNames;
+        this.labelAddresses = labelAddresses;
+        this.relocations = relocations;
+        this.imports = imports;
+        this.fixupAddresses = fixupAddresses;
+        this.fixupImports = fixupImports;
+    }
+
+
+    //DESCRIPTION: assembles module source into an object
+    //PRECONDITION: name is the file name to report errors against
+    //POSTCONDITION: returns object, throws AssemblyException holding every error of the source
+    public static ObjectModule compile(String name, byte[] source){
+        Diagnostics diagnostics = new Diagnostics(name);
+        InstructionList program = Assembler.readProgram(new Lexer(source, 0, source.length), diagnostics);
+
+        if(diagnostics.hasErrors()){
+            throw diagnostics.toException();
+        }
+
+        // label address of every symbol id, -1 if the module doesn't define it
+        int[] labels = new int[program.getSymbolCount()];
+        int[] importOf = new int[program.getSymbolCount()];
+        String[] labelNames = new String[program.getLabelCount()];
+        int[] labelAddresses = new int[program.getLabelCount()];
+
+        Arrays.fill(labels, -1);
+        Arrays.fill(importOf, -1);
+        for(int i = 0; i < program.getLabelCount(); i++){
+            labels[program.getLabelSymbol(i)] = program.getLabelAddress(i);
+            labelNames[i] = program.getSymbolName(program.getLabelSymbol(i));
+            labelAddresses[i] = program.getLabelAddress(i);
+        }
+
+        short[] words = new short[program.size()];
+        List<String> imports = new ArrayList<>();
+        int[] relocations = new int[16];
+        int[] fixupAddresses = new int[16];
+        int[] fixupImports = new int[16];
+        int relocationCount = 0;
+        int fixupCount = 0;
+
+        for(int i = 0; i < program.size(); i++){
+            if(program.getOpcode(i) != InstructionList.A_SYMBOL){
+                words[i] = (short) program.encode(i, null);
+                continue;
+            }
+            int id = program.getOperand(i);
+            int predefined = SymbolTable.getPredefinedAddress(program.getSymbolName(id));
+
+            if(labels[id] >= 0){
+                words[i] = (short) labels[id];
+                if(relocationCount == relocations.length){
+                    relocations = Arrays.copyOf(relocations, relocationCount * 2);
+                }
+                relocations[relocationCount++] = i;
+            }
+            else if(predefined >= 0){
+                words[i] = (short) predefined;
+            }
+            else{
+                if(importOf[id] < 0){
+                    importOf[id] = imports.size();
+                    imports.add(program.getSymbolName(id));
+                }
+                if(fixupCount == fixupAddresses.length){
+                    fixupAddresses = Arrays.copyOf(fixupAddresses, fixupCount * 2);
+                    fixupImports = Arrays.copyOf(fixupImports, fixupCount * 2);
+                }
+                fixupAddresses[fixupCount] = i;
+                fixupImports[fixupCount] = importOf[id];
+                fixupCount++;
+            }
+        }
+        return new ObjectModule(name, AssemblyCache.checksum(source), words, labelNames, labelAddresses,
+                Arrays.copyOf(relocations, relocationCount), imports.toArray(new String[0]),
+                Arrays.copyOf(fixupAddresses, fixupCount), Arrays.copyOf(fixupImports, fixupCount));
+    }
+
+    //DESCRIPTION: reads object file written by save()
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns object, or null if file is missing, unreadable, damaged or from another version
+    public static ObjectModule load(Path objectFile){
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(objectFile));
+
+            if(in.getInt() != MAGIC || in.getInt() != VERSION){
+                return null;
+            }
+            String name = getString(in);
+            long checksum = in.getLong();
+            short[] words = new short[in.getInt()];
+            in.asShortBuffer().get(words);
+            in.position(in.position() + 2 * words.length);
+
+            String[] labelNames = getStrings(in);
+            int[] labelAddresses = getInts(in, labelNames.length);
+            int[] relocations = getInts(in, in.getInt());
+            String[] imports = getStrings(in);
+            int[] fixupAddresses = getInts(in, in.getInt());
+            int[] fixupImports = getInts(in, fixupAddresses.length);
+
+            return new ObjectModule(name, checksum, words, labelNames, labelAddresses, relocations, imports,
+                    fixupAddresses, fixupImports);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | RuntimeException ex) {
+            Log.info("Ignoring unreadable object " + objectFile + ": " + ex);
+            return null;
+        }
+    }
+
+    //DESCRIPTION: writes object to a temporary file and moves it over objectFile, so a
+    // parallel link or a crash never leaves half an object behind
+    //PRECONDITION: n/a
+    //POSTCONDITION: objectFile holds this object, throws IOException if it can't be written
+    public void save(Path objectFile) throws IOException {
+        Path temporary = objectFile.resolveSibling(objectFile.getFileName() + ".tmp");
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[][] labelBytes = toBytes(labelNames);
+        byte[][] importBytes = toBytes(imports);
+        int size = 4 + 4 + 4 + nameBytes.length + 8 + 4 + 2 * words.length + sizeOf(labelBytes) + 4 * labelAddresses.length
+                + 4 + 4 * relocations.length + sizeOf(importBytes) + 4 + 8 * fixupAddresses.length;
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION);
+        out.putInt(nameBytes.length).put(nameBytes);
+        out.putLong(checksum);
+        out.putInt(words.length);
+        out.asShortBuffer().put(words);
+        out.position(out.position() + 2 * words.length);
+        putStrings(out, labelBytes);
+        putInts(out, labelAddresses);
+        out.putInt(relocations.length);
+        putInts(out, relocations);
+        putStrings(out, importBytes);
+        out.putInt(fixupAddresses.length);
+        putInts(out, fixupAddresses);
+        putInts(out, fixupImports);
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(out.hasRemaining()){
+                channel.write(out);
+            }
+        }
+        try {
+            Files.move(temporary, objectFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, objectFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //DESCRIPTION: object file name for a module source (next to it)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns name with .hobj instead of .asm
+    public static String objectFileName(String sourceFileName){
+        if(sourceFileName.endsWith(".asm")){
+            return sourceFileName.substring(0, sourceFileName.length() - 4) + EXTENSION;
+        }
+        return sourceFileName + EXTENSION;
+    }
+
+
+    //GETTER METHODS
+    public String getName(){
+        return name;
+    }
+
+    public long getChecksum(){
+        return checksum;
+    }
+
+    public short[] getWords(){
+        return words;
+    }
+
+    public String[] getLabelNames(){
+        return labelNames;
+    }
+
+    public int[] getLabelAddresses(){
+        return labelAddresses;
+    }
+
+    public int[] getRelocations(){
+        return relocations;
+    }
+
+    public String[] getImports(){
+        return imports;
+    }
+
+    public int[] getFixupAddresses(){
+        return fixupAddresses;
+    }
+
+    public int[] getFixupImports(){
+        return fixupImports;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: UTF-8 bytes of every string
+    //PRECONDITION: strings not null
+    //POSTCONDITION: returns one array per string
+    private static byte[][] toBytes(String[] strings){
+        byte[][] bytes = new byte[strings.length][];
+
+        for(int i = 0; i < strings.length; i++){
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    //DESCRIPTION: bytes putStrings() writes
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count, length prefixes included
+    private static int sizeOf(byte[][] strings){
+        int size = 4;
+
+        for(byte[] string : strings){
+            size += 4 + string.length;
+        }
+        return size;
+    }
+
+    //DESCRIPTION: writes count, then every string as length and UTF-8 bytes
+    //PRECONDITION: out has sizeOf(strings) bytes left
+    //POSTCONDITION: strings written
+    private static void putStrings(ByteBuffer out, byte[][] strings){
+        out.putInt(strings.length);
+        for(byte[] string : strings){
+            out.putInt(string.length).put(string);
+        }
+    }
+
+    //DESCRIPTION: reads strings written by putStrings()
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns strings, throws RuntimeException if in runs out
+    private static String[] getStrings(ByteBuffer in){
+        String[] strings = new String[in.getInt()];
+
+        for(int i = 0; i < strings.length; i++){
+            strings[i] = getString(in);
+        }
+        return strings;
+    }
+
+    private static String getString(ByteBuffer in){
+        byte[] bytes = new byte[in.getInt()];
+
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //DESCRIPTION: writes / reads ints without a count
+    //PRECONDITION: n/a
+    //POSTCONDITION: buffer position moved past the ints
+    private static void putInts(ByteBuffer out, int[] values){
+        out.asIntBuffer().put(values);
+        out.position(out.position() + 4 * values.length);
+    }
+
+    private static int[] getInts(ByteBuffer in, int count){
+        int[] values = new int[count];
+
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+}
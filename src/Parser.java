@@ -1,7 +1,8 @@
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.Scanner;
-public class Parser {
+public class Parser implements CommandReader {
 
     // COMMANDS
     public static final char NO_COMMAND = 'N';
@@ -13,6 +14,7 @@ public class Parser {
     private Scanner input;
 
     private int lineNumber;
+    private int sourceLine;
     private String rawLine;
     private String cleanLine;
 
@@ -22,19 +24,34 @@ public class Parser {
     private String compMnemonic;
     private String jumpMnemonic;
 
+    // word of a C-instruction line found in the cache, INVALID until known
+    private InstructionCache instructionCache;
+    private int instruction;
+
 
     //DESCRIPTION: opens input file/stream and prepares to parse
     //PRECONDITION: provided file is ASM file
-    //POSTCONDITION: if file can’t be opened, ends program w/ error message
+    //POSTCONDITION: if file can’t be opened, throws AssemblyException w/ error message
     public Parser(String inFileName) {
-        System.out.println("FILENAME: " + inFileName);
+        if(Log.isInfo()){
+            Log.info("FILENAME: " + inFileName);
+        }
         try {
             input = new Scanner(new FileInputStream(inFileName));
         } catch (FileNotFoundException e) {
-            System.out.println("ERROR WITH GETTING FILE: " + e);
-            System.exit(0);
+            throw new AssemblyException("ERROR WITH GETTING FILE: " + e.getMessage(), e);
         }
         lineNumber = 0;
+        instructionCache = new InstructionCache();
+    }
+
+    //DESCRIPTION: parses an already open stream (e.g. a program held in memory)
+    //PRECONDITION: stream holds ASM code
+    //POSTCONDITION: parser positioned at first line, stream closed when commands run out
+    public Parser(InputStream in) {
+        input = new Scanner(in);
+        lineNumber = 0;
+        instructionCache = new InstructionCache();
     }
 
 
@@ -54,14 +71,29 @@ public class Parser {
 
     //DESCRIPTION: reads next line from file and parses it into instance vars
     //PRECONDITION: file stream is open, called only if hasMoreCommands()
-    //POSTCONDITION: current instruction parts put into instance vars
+    //POSTCONDITION: current instruction parts put into instance vars (for a line found in
+    // the instruction cache they are only worked out if a getter asks for them)
     public void advance(){
         if(hasMoreCommands())
         {
             this.rawLine = input.nextLine();
-            cleanLine();
-            parseCommandType();
-            parse();
+            sourceLine++;
+            this.instruction = instructionCache.get(rawLine);
+
+            if(this.instruction != CInstructionMapper.INVALID)
+            {
+                this.commandType = C_COMMAND;
+                this.cleanLine = null;
+                this.destMnemonic = null;
+                this.compMnemonic = null;
+                this.jumpMnemonic = null;
+            }
+            else
+            {
+                cleanLine();
+                parseCommandType();
+                parse();
+            }
         }
 
         if(commandType != NO_COMMAND && commandType != L_COMMAND  )
@@ -142,7 +174,9 @@ public class Parser {
         }
         else if(this.commandType == L_COMMAND){
             this.symbol = getCleanLine().substring(1, cleanLine.length() - 1);
-            System.out.println(this.symbol + ": THE STYMBOL FOR L");
+            if(Log.isTrace()){
+                Log.trace(this.symbol + ": THE SYMBOL FOR L");
+            }
         }
     }
 
@@ -161,7 +195,9 @@ public class Parser {
         {
             this.destMnemonic = "NULL";
         }
-        System.out.println("DEST: " + destMnemonic);
+        if(Log.isTrace()){
+            Log.trace("DEST: " + destMnemonic);
+        }
     }
 
 
@@ -177,14 +213,21 @@ public class Parser {
         {
             if(line.contains("="))
             {
-                this.compMnemonic = line.substring((line.indexOf('=')) + 1);
+                int end = line.indexOf(';', line.indexOf('='));
+                this.compMnemonic = line.substring((line.indexOf('=')) + 1, end < 0 ? line.length() : end);
             }
             else if(line.contains(";"))
             {
                 this.compMnemonic = line.substring(0, line.indexOf(';'));
             }
+            else
+            {
+                this.compMnemonic = line;
+            }
+        }
+        if(Log.isTrace()){
+            Log.trace("COMP: " + compMnemonic);
         }
-        System.out.println("COMP: " + compMnemonic);
     }
 
 
@@ -197,7 +240,6 @@ public class Parser {
         {
             if(this.getCleanLine().contains(";"))
             {
-                System.out.println("There is a semicolon");
                 this.jumpMnemonic = getCleanLine().substring((getCleanLine().indexOf(";")) + 1);
             }
             else
@@ -205,7 +247,9 @@ public class Parser {
                 this.jumpMnemonic = "NULL";
             }
         }
-        System.out.println("JUMP: " + jumpMnemonic);
+        if(Log.isTrace()){
+            Log.trace("JUMP: " + jumpMnemonic);
+        }
     }
 
 
@@ -231,6 +275,9 @@ public class Parser {
     // call for C-instructions only (use getCommandType())
     //POSTCONDITION: returns mnemonic (ASM symbol) for dest part
     public String getDest(){
+        if(destMnemonic == null){
+            parseDest();
+        }
         return destMnemonic;
     }
 
@@ -239,6 +286,9 @@ public class Parser {
     // call for C-instructions only (use getCommandType())
     //POSTCONDITION: returns mnemonic (ASM symbol) for comp part
     public String getComp(){
+        if(compMnemonic == null){
+            parseComp();
+        }
         return compMnemonic;
     }
 
@@ -247,9 +297,31 @@ public class Parser {
     // call for C-instructions only (use getCommandType())
     //POSTCONDITION: returns mnemonic (ASM symbol) for jump part
     public String getJump(){
+        if(jumpMnemonic == null){
+            parseJump();
+        }
         return jumpMnemonic;
     }
 
+    //DESCRIPTION: getter for whole C-instruction word, from the instruction cache if the same
+    // raw line was translated before
+    //PRECONDITION: advance was called, command is C
+    //POSTCONDITION: returns 111accccccdddjjj as int, or CInstructionMapper.INVALID if any part is unknown
+    public int getInstruction(){
+        if(instruction == CInstructionMapper.INVALID){
+            instruction = CInstructionMapper.instruction(getComp(), getDest(), getJump());
+
+            if(instruction != CInstructionMapper.INVALID){
+                instructionCache.put(rawLine, instruction);
+            }
+        }
+        return instruction;
+    }
+
+    public InstructionCache getInstructionCache(){
+        return instructionCache;
+    }
+
     //DESCRIPTION: getter for rawLine from file (debugging)
     //PRECONDITION: advance() was called to put value from file in here
     //POSTCONDITION: returns string of current original line from file
@@ -261,6 +333,9 @@ public class Parser {
     //PRECONDITION: advance() and cleanLine() were called
     //POSTCONDITION: returns string of current clean instruction from file
     public String getCleanLine(){
+        if(cleanLine == null && rawLine != null){
+            cleanLine();
+        }
         return cleanLine;
     }
 
@@ -271,7 +346,33 @@ public class Parser {
         return lineNumber;
     }
 
+    //DESCRIPTION: getter for number of source line of current command (1 = first line)
+    //PRECONDITION: advance was called
+    //POSTCONDITION: returns count of lines read so far, blank and comment lines included
+    public int getSourceLine(){
+        return sourceLine;
+    }
 
+    //DESCRIPTION: maps position in cleanLine back to rawLine (for diagnostics)
+    //PRECONDITION: advance was called, 0 <= offset <= cleanLine length
+    //POSTCONDITION: returns column (1 = first char) of char at offset, or just after the
+    // last one if offset is the length
+    public int getColumn(int offset){
+        int kept = 0;
+        int last = 0;
 
+        for(int i = 0; i < rawLine.length(); i++){
+            char c = rawLine.charAt(i);
 
+            if(c == ' ' || c == '\t'){
+                continue;
+            }
+            if(kept == offset){
+                return i + 1;
+            }
+            kept++;
+            last = i + 1;
+        }
+        return last + 1;
+    }
 }
@@ -0,0 +1,274 @@
+import java.util.BitSet;
+
+// Optional pass of --optimize between reading and encoding: one walk over the instruction
+// list that tracks what the A register holds and drops instructions that can't change the
+// result, then moves the labels to the shortened program. Jumps to labels follow the labels;
+// a jump to a numeric address (@5, D=D, then D;JGT) is pointed at the instruction's new address
+// when A serves only as the jump target there, else nothing before its target is removed.
+public class PeepholeOptimizer {
+
+    // jump code of the unconditional 0;JMP, dest bits that write A and M
+    private static final int JMP = 0b111;
+    private static final int DEST_A = 0b100;
+    private static final int DEST_M = 0b001;
+    // zy bit of the comp code: set if the ALU ignores its A/M input
+    private static final int COMP_NO_Y = 0b1000;
+    // A value is not known (start, after a label or after a C-instruction wrote A)
+    private static final long UNKNOWN = Long.MIN_VALUE;
+    // keys of loadedValue() for numeric jump targets, below those of labels
+    private static final long JUMP_TARGET = -1L << 32;
+
+    //PRIVATE VARIABLES
+    private int before;
+    private int after;
+    private int redundantLoads;
+    private int deadLoads;
+    private int unreachable;
+    private int movedJumps;
+    private int pinnedJumps;
+    private int computedJumps;
+    private int pinned;
+
+
+    //DESCRIPTION: removes A-instructions that load the value A already holds, A-instructions
+    // whose value the next A-instruction overwrites, and code after 0;JMP that no label or numeric
+    // jump reaches; then gives every label its new address in the program, symbolTable and addresses,
+    // and every numeric jump target it can move (see findNumericJumps()) its new address
+    //PRECONDITION: addresses came from program.resolveSymbols(symbolTable), so variables keep
+    // the RAM addresses of the unoptimized program
+    //POSTCONDITION: program encodes to a program with the same behavior, counts updated
+    public void optimize(InstructionList program, SymbolTable symbolTable, int[] addresses){
+        int size = program.size();
+        BitSet labelIds = new BitSet();
+        BitSet targets = new BitSet();
+        // A-instructions whose constant is a jump target to move
+        BitSet moved = new BitSet();
+
+        before = size;
+        for(int i = 0; i < program.getLabelCount(); i++){
+            labelIds.set(program.getLabelSymbol(i));
+            targets.set(program.getLabelAddress(i));
+        }
+        findNumericJumps(program, labelIds, addresses, targets, moved);
+
+        boolean[] keep = new boolean[size];
+        boolean reachable = true;
+        long known = UNKNOWN;
+
+        for(int i = 0; i < size; i++){
+            if(targets.get(i)){
+                reachable = true;
+                known = UNKNOWN;
+            }
+            if(!reachable){
+                if(i < pinned){
+                    keep[i] = true;
+                }
+                else{
+                    unreachable++;
+                }
+                continue;
+            }
+
+            if(program.getOpcode(i) == InstructionList.C_INSTRUCTION){
+                keep[i] = true;
+                if((program.getDest(i) & DEST_A) != 0){
+                    known = UNKNOWN;
+                }
+                if(program.getJump(i) == JMP){
+                    reachable = false;
+                }
+                continue;
+            }
+
+            long value = moved.get(i) ? JUMP_TARGET - program.getOperand(i) : loadedValue(program, i, labelIds, addresses);
+
+            if(value == known && i >= pinned){
+                redundantLoads++;
+            }
+            else if(i + 1 < size && program.getOpcode(i + 1) != InstructionList.C_INSTRUCTION && i >= pinned){
+                // the next instruction runs right after this one (a label only adds ways in)
+                deadLoads++;
+            }
+            else{
+                keep[i] = true;
+                known = value;
+            }
+        }
+
+        int[] newIndex = program.retain(keep);
+        after = program.size();
+
+        for(int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1)){
+            if(keep[i]){
+                program.setLiteral(newIndex[i], newIndex[program.getOperand(newIndex[i])]);
+            }
+        }
+        for(int i = 0; i < program.getLabelCount(); i++){
+            int id = program.getLabelSymbol(i);
+
+            addresses[id] = program.getLabelAddress(i);
+            symbolTable.setAddress(program.getSymbolName(id), addresses[id]);
+        }
+    }
+
+
+    //GETTER METHODS
+    public int getBefore(){
+        return before;
+    }
+
+    public int getAfter(){
+        return after;
+    }
+
+    public int getRedundantLoads(){
+        return redundantLoads;
+    }
+
+    public int getDeadLoads(){
+        return deadLoads;
+    }
+
+    public int getUnreachable(){
+        return unreachable;
+    }
+
+    public int getMovedJumps(){
+        return movedJumps;
+    }
+
+    public int getPinnedJumps(){
+        return pinnedJumps;
+    }
+
+    public int getComputedJumps(){
+        return computedJumps;
+    }
+
+    //DESCRIPTION: before/after line for the --optimize report
+    //PRECONDITION: optimize() was called
+    //POSTCONDITION: returns e.g. "Rect.asm: 28 -> 25 instructions (2 redundant A-loads, ...)"
+    public String getReport(String name){
+        String report = name + ": " + before + " -> " + after + " instructions (" + redundantLoads + " redundant A-loads, "
+                + deadLoads + " dead A-loads, " + unreachable + " unreachable removed";
+
+        if(movedJumps > 0){
+            report += ", " + movedJumps + " numeric jumps moved";
+        }
+        if(pinnedJumps > 0 || computedJumps > 0){
+            report += ", nothing removed before address " + pinned + " for " + pinnedJumps + " numeric and "
+                    + computedJumps + " computed jumps";
+        }
+        return report + ")";
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: finds jumps whose target isn't a label, which would land elsewhere once
+    // instructions move. The target is what the last A-instruction before the jump loaded, as long
+    // as the C-instructions in between don't write A (an entry there by a jump brings in its own
+    // address, which moves along). A constant whose only use is the jump goes to moved (see
+    // isJumpOnly()), for any other target nothing before it may be removed (pinned). A jump to an
+    // address computed into A (A=M) may go to any address the program loads, so those are pinned too
+    //PRECONDITION: labelIds holds the symbol ids of all labels
+    //POSTCONDITION: targets inside the program added to targets, counts and pinned set
+    private void findNumericJumps(InstructionList program, BitSet labelIds, int[] addresses, BitSet targets, BitSet moved){
+        movedJumps = 0;
+        pinnedJumps = 0;
+        computedJumps = 0;
+        pinned = 0;
+
+        for(int i = 0; i < program.size(); i++){
+            if(program.getOpcode(i) != InstructionList.C_INSTRUCTION || program.getJump(i) == 0){
+                continue;
+            }
+            int j = i - 1;
+
+            while(j >= 0 && program.getOpcode(j) == InstructionList.C_INSTRUCTION && (program.getDest(j) & DEST_A) == 0){
+                j--;
+            }
+            if(j < 0){
+                // A still holds 0 from the start, and address 0 never moves
+                continue;
+            }
+            if(program.getOpcode(j) == InstructionList.C_INSTRUCTION){
+                computedJumps++;
+                continue;
+            }
+            boolean literal = program.getOpcode(j) == InstructionList.A_LITERAL;
+            int operand = program.getOperand(j);
+
+            if(!literal && labelIds.get(operand)){
+                continue;
+            }
+            int target = literal ? operand : addresses[operand];
+
+            if(target > program.size()){
+                // past the end of the program is past it after optimizing as well
+                continue;
+            }
+            targets.set(target);
+            if(literal && isJumpOnly(program, j, i)){
+                moved.set(j);
+                movedJumps++;
+            }
+            else{
+                pinned = Math.max(pinned, target);
+                pinnedJumps++;
+            }
+        }
+        if(computedJumps > 0){
+            pinLoadedAddresses(program, labelIds, addresses, targets, moved);
+        }
+    }
+
+    //DESCRIPTION: for computed jumps: treats every number or variable the program loads that
+    // could be a ROM address (@5 D=A, then stored and jumped to via A=M) as a jump target that
+    // nothing before may move; loaded labels move with their instructions anyway
+    //PRECONDITION: labelIds holds the symbol ids of all labels
+    //POSTCONDITION: those addresses added to targets, pinned raised to the highest
+    private void pinLoadedAddresses(InstructionList program, BitSet labelIds, int[] addresses, BitSet targets, BitSet moved){
+        for(int i = 0; i < program.size(); i++){
+            if(program.getOpcode(i) == InstructionList.C_INSTRUCTION || moved.get(i)){
+                continue;
+            }
+            long value = loadedValue(program, i, labelIds, addresses);
+
+            if(value >= 0 && value <= program.size()){
+                targets.set((int) value);
+                pinned = Math.max(pinned, (int) value);
+            }
+        }
+    }
+
+    //DESCRIPTION: checks that the constant loaded at j is used only as the target of the jump at i:
+    // no instruction from j + 1 to i reads A or M or writes M, and A is loaded again before anything
+    // after i could read it
+    //PRECONDITION: instruction j is an A-instruction, j + 1 to i are C-instructions that keep A,
+    // the last one has a jump
+    //POSTCONDITION: returns true if the A-instruction at j can load another address
+    private static boolean isJumpOnly(InstructionList program, int j, int i){
+        for(int k = j + 1; k <= i; k++){
+            if((program.getOperand(k) & COMP_NO_Y) == 0 || (program.getDest(k) & DEST_M) != 0){
+                return false;
+            }
+        }
+        return program.getJump(i) == JMP || (program.getDest(i) & DEST_A) != 0 || i + 1 == program.size()
+                || program.getOpcode(i + 1) != InstructionList.C_INSTRUCTION;
+    }
+
+    //DESCRIPTION: value an A-instruction loads, comparable across literals and symbols
+    // (@0 and @R0 load the same value; labels compare by symbol, their addresses still move)
+    //PRECONDITION: instruction i is an A-instruction
+    //POSTCONDITION: returns RAM/ROM value, or a negative key for a label
+    private static long loadedValue(InstructionList program, int i, BitSet labelIds, int[] addresses){
+        int operand = program.getOperand(i);
+
+        if(program.getOpcode(i) == InstructionList.A_LITERAL){
+            return operand;
+        }
+        return labelIds.get(operand) ? -1L - operand : addresses[operand];
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.concurrent.BlockingQueue;
+
+// Timing of one stage of PipelinedAssembler. Time a stage spends waiting for its input
+// means the stage before it is slower, time spent blocked on a full output queue
+// (backpressure) means the stage after it is; the stage that is busy most of the time
+// is the bottleneck.
+public class PipelineStage {
+
+    //PRIVATE VARIABLES
+    private String name;
+    private long startNanos;
+    private long endNanos;
+    private long inputWaitNanos;
+    private long outputWaitNanos;
+    private long batches;
+    private long queuedBatches;
+    private int queueCapacity;
+
+
+    //DESCRIPTION: creates stage with no time counted
+    //PRECONDITION: name says what the stage does
+    //POSTCONDITION: stage ready to start()
+    public PipelineStage(String name){
+        this.name = name;
+    }
+
+
+    //DESCRIPTION: marks start and end of the stage's thread
+    //PRECONDITION: called on the stage's thread, start() before finish()
+    //POSTCONDITION: elapsed time is known after finish()
+    public void start(){
+        startNanos = System.nanoTime();
+        endNanos = startNanos;
+    }
+
+    public void finish(){
+        endNanos = System.nanoTime();
+    }
+
+    //DESCRIPTION: takes next batch from the stage before, counting the wait
+    //PRECONDITION: called on the stage's thread
+    //POSTCONDITION: returns batch, throws InterruptedException if the pipeline is stopped
+    public <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+        long start = System.nanoTime();
+        T batch = queue.take();
+
+        inputWaitNanos += System.nanoTime() - start;
+        return batch;
+    }
+
+    //DESCRIPTION: hands batch to the stage after, counting the time the full queue held it back
+    //PRECONDITION: called on the stage's thread
+    //POSTCONDITION: batch queued, throws InterruptedException if the pipeline is stopped
+    public <T> void put(BlockingQueue<T> queue, T batch) throws InterruptedException {
+        long start = System.nanoTime();
+
+        queuedBatches += queue.size();
+        queueCapacity = queue.size() + queue.remainingCapacity();
+        queue.put(batch);
+        outputWaitNanos += System.nanoTime() - start;
+        batches++;
+    }
+
+    //DESCRIPTION: hands the end-of-input marker to the stage after; the wait counts, but the
+    // marker is no batch
+    //PRECONDITION: called on the stage's thread
+    //POSTCONDITION: end queued, throws InterruptedException if the pipeline is stopped
+    public <T> void putEnd(BlockingQueue<T> queue, T end) throws InterruptedException {
+        long start = System.nanoTime();
+
+        queueCapacity = queue.size() + queue.remainingCapacity();
+        queue.put(end);
+        outputWaitNanos += System.nanoTime() - start;
+    }
+
+
+    //GETTER METHODS
+    public String getName(){
+        return name;
+    }
+
+    public long getElapsedNanos(){
+        return endNanos - startNanos;
+    }
+
+    public long getInputWaitNanos(){
+        return inputWaitNanos;
+    }
+
+    public long getOutputWaitNanos(){
+        return outputWaitNanos;
+    }
+
+    //DESCRIPTION: getter for time the stage did its own work
+    //PRECONDITION: finish() was called
+    //POSTCONDITION: returns elapsed time less the waits on both queues
+    public long getBusyNanos(){
+        return Math.max(0, getElapsedNanos() - inputWaitNanos - outputWaitNanos);
+    }
+
+    public long getBatches(){
+        return batches;
+    }
+
+    //DESCRIPTION: getter for how full the output queue was when the stage handed on a batch
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns average number of batches already waiting (0 if nothing handed on)
+    public double getAverageQueued(){
+        return batches == 0 ? 0 : (double) queuedBatches / batches;
+    }
+
+    //DESCRIPTION: formats stage for the --pipeline report
+    //PRECONDITION: finish() was called
+    //POSTCONDITION: returns e.g. "parse: busy 120 ms (80%), waited for input 20 ms, blocked on output 10 ms,
+    // 64 batches out, queue 1.5/4" (no output part for the last stage)
+    public String toString(){
+        long elapsed = Math.max(1, getElapsedNanos());
+        String text = name + ": busy " + getBusyNanos() / 1_000_000 + " ms (" + getBusyNanos() * 100 / elapsed
+                + "%), waited for input " + inputWaitNanos / 1_000_000 + " ms";
+
+        if(queueCapacity == 0){
+            return text;
+        }
+        return text + ", blocked on output " + outputWaitNanos / 1_000_000 + " ms, " + batches + " batches out, queue "
+                + String.format("%.1f", getAverageQueued()) + "/" + queueCapacity;
+    }
+}
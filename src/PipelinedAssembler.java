@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+// --pipeline: the single pass split into four threads joined by bounded queues,
+//   read (line-aligned chunks of the file) -> parse (Lexer into one InstructionList)
+//   -> encode (batches of words) -> write (HackWriter)
+// so reading the file overlaps parsing and encoding overlaps writing. Labels can be used
+// before they are defined, so encoding starts once the whole file is parsed and resolved.
+// A full queue blocks the stage before it; PipelineStage counts those waits.
+public class PipelinedAssembler {
+
+    // bytes read per chunk (cut back to the last line end), words per encoded batch; small
+    // enough that a program the ROM can hold still comes in enough batches for stages to overlap
+    public static final int CHUNK_BYTES = 1 << 14;
+    public static final int BATCH_WORDS = 1 << 10;
+    // batches a queue holds before the stage feeding it has to wait
+    public static final int QUEUE_CAPACITY = 4;
+
+    // end of input on each queue (compared by identity)
+    private static final Chunk END_OF_SOURCE = new Chunk(new byte[0], 0, 0);
+    private static final short[] END_OF_WORDS = new short[0];
+    private static final int[] NO_PROGRAM = new int[0];
+
+    //PRIVATE VARIABLES
+    private String inputFileName;
+    private PeepholeOptimizer optimizer;
+    private SourceMap sourceMap;
+    private BlockingQueue<Chunk> chunks;
+    private BlockingQueue<int[]> resolved;
+    private BlockingQueue<short[]> batches;
+    private PipelineStage[] stages;
+    private Thread[] threads;
+    private AtomicReference<Throwable> failure;
+    // set by stop(): stages may no longer take from the queues
+    private volatile boolean stopped;
+    // handed from parse to encode through resolved
+    private InstructionList program;
+    // source lines and labels the parse stage saw (read after assemble() returns)
+    private int lines;
+    private int labels;
+    // shared by the lexers of all chunks
+    private InstructionCache instructionCache;
+
+
+    //DESCRIPTION: creates pipeline for one input file
+    //PRECONDITION: optimizer is null unless --optimize, sourceMap is null unless --source-map
+    //POSTCONDITION: ready to assemble()
+    public PipelinedAssembler(String inputFileName, PeepholeOptimizer optimizer, SourceMap sourceMap){
+        this.inputFileName = inputFileName;
+        this.optimizer = optimizer;
+        this.sourceMap = sourceMap;
+        this.chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.resolved = new ArrayBlockingQueue<>(1);
+        this.batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.stages = new PipelineStage[] {new PipelineStage("read"), new PipelineStage("parse"),
+                new PipelineStage("encode"), new PipelineStage("write")};
+        this.failure = new AtomicReference<>();
+        this.instructionCache = new InstructionCache();
+    }
+
+
+    //DESCRIPTION: runs the four stages and waits for them
+    //PRECONDITION: input file exists, symbol table only holds predefined symbols
+    //POSTCONDITION: output holds the same words Assembler's single pass would write, returns number of
+    // instructions (nothing written if diagnostics got errors); throws the first exception a stage threw
+    public int assemble(SymbolTable symbolTable, HackWriter outputFile, Diagnostics diagnostics) throws IOException {
+        FileChannel input;
+        int[] written = new int[1];
+
+        try {
+            input = FileChannel.open(Paths.get(inputFileName), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new AssemblyException("ERROR WITH GETTING FILE: " + e.getMessage(), e);
+        }
+
+        threads = new Thread[] {
+                stageThread(stages[0], () -> read(stages[0], input)),
+                stageThread(stages[1], () -> parse(stages[1], symbolTable, diagnostics)),
+                stageThread(stages[2], () -> encode(stages[2])),
+                stageThread(stages[3], () -> written[0] = write(stages[3], outputFile))};
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            stop();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Assembly of " + inputFileName + " interrupted");
+        }
+
+        Throwable thrown = failure.get();
+        if (thrown instanceof IOException) {
+            throw (IOException) thrown;
+        } else if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown instanceof Error) {
+            throw (Error) thrown;
+        } else if (thrown != null) {
+            throw new IOException(thrown);
+        }
+        return written[0];
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for the timing of every stage
+    //PRECONDITION: assemble() returned
+    //POSTCONDITION: returns read, parse, encode and write stage in pipeline order
+    public List<PipelineStage> getStages(){
+        return Arrays.asList(stages);
+    }
+
+    public int getLines(){
+        return lines;
+    }
+
+    public int getLabels(){
+        return labels;
+    }
+
+    public InstructionCache getInstructionCache(){
+        return instructionCache;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: read stage: cuts file into chunks that end at a line end, numbering their lines
+    //PRECONDITION: input open at its start
+    //POSTCONDITION: whole file queued as chunks, then END_OF_SOURCE; input closed
+    private void read(PipelineStage stage, FileChannel input) throws IOException, InterruptedException {
+        try (FileChannel channel = input) {
+            byte[] carry = new byte[0];
+            int firstLine = 1;
+            boolean endOfInput = false;
+
+            while (!endOfInput) {
+                byte[] source = Arrays.copyOf(carry, Math.max(CHUNK_BYTES, carry.length * 2));
+                int length = carry.length;
+
+                while (length < source.length) {
+                    int count = channel.read(ByteBuffer.wrap(source, length, source.length - length));
+                    if (count < 0) {
+                        endOfInput = true;
+                        break;
+                    }
+                    length += count;
+                }
+
+                int cut = endOfInput ? length : lastLineEnd(source, length);
+                if (cut > 0) {
+                    stage.put(chunks, new Chunk(source, cut, firstLine));
+                    firstLine += countLines(source, cut);
+                }
+                // a line longer than a chunk stays in carry until its end is read
+                carry = Arrays.copyOfRange(source, cut, length);
+            }
+        } finally {
+            end(stage, chunks, END_OF_SOURCE);
+        }
+    }
+
+    //DESCRIPTION: parse stage: lexes every chunk into one program, then resolves (and optimizes) it
+    //PRECONDITION: read stage feeds chunks
+    //POSTCONDITION: program and its addresses handed to encode (NO_PROGRAM if diagnostics got errors),
+    // its lines and labels added to the source map
+    private void parse(PipelineStage stage, SymbolTable symbolTable, Diagnostics diagnostics) throws InterruptedException {
+        InstructionList parsed = new InstructionList();
+        BitSet definedLabels = new BitSet();
+        int[] addresses = NO_PROGRAM;
+
+        if (sourceMap != null) {
+            parsed.trackSourceLines();
+        }
+        try {
+            for (Chunk chunk = stage.take(chunks); chunk != END_OF_SOURCE; chunk = stage.take(chunks)) {
+                Lexer lexer = new Lexer(chunk.source, 0, chunk.length, chunk.firstLine);
+
+                lexer.setInstructionCache(instructionCache);
+                Assembler.readProgram(lexer, parsed, definedLabels, diagnostics);
+                lines = lexer.getSourceLine();
+            }
+            labels = parsed.getLabelCount();
+            if (!diagnostics.hasErrors()) {
+                addresses = parsed.resolveSymbols(symbolTable);
+                if (optimizer != null) {
+                    optimizer.optimize(parsed, symbolTable, addresses);
+                }
+                if (sourceMap != null) {
+                    sourceMap.addProgram(parsed);
+                }
+                program = parsed;
+            }
+        } finally {
+            stage.put(resolved, addresses);
+        }
+    }
+
+    //DESCRIPTION: encode stage: turns the resolved program into batches of words
+    //PRECONDITION: parse stage hands over the program
+    //POSTCONDITION: all words queued in order, then END_OF_WORDS
+    private void encode(PipelineStage stage) throws InterruptedException {
+        try {
+            int[] addresses = stage.take(resolved);
+
+            if (addresses != NO_PROGRAM) {
+                for (int from = 0; from < program.size(); from += BATCH_WORDS) {
+                    int to = Math.min(program.size(), from + BATCH_WORDS);
+                    short[] words = new short[to - from];
+
+                    program.encodeRange(from, to, addresses, words, 0);
+                    stage.put(batches, words);
+                }
+            }
+        } finally {
+            end(stage, batches, END_OF_WORDS);
+        }
+    }
+
+    //DESCRIPTION: write stage: writes batches to the output file
+    //PRECONDITION: encode stage feeds batches
+    //POSTCONDITION: returns number of words written
+    private int write(PipelineStage stage, HackWriter outputFile) throws IOException, InterruptedException {
+        int count = 0;
+
+        for (short[] words = stage.take(batches); words != END_OF_WORDS; words = stage.take(batches)) {
+            outputFile.write(words, 0, words.length);
+            count += words.length;
+        }
+        return count;
+    }
+
+    //DESCRIPTION: wraps stage body in a thread that times it and stops the pipeline if it fails
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns thread, not started
+    private Thread stageThread(PipelineStage stage, StageBody body){
+        Thread thread = new Thread(() -> {
+            AssemblyPhaseEvent event = AssemblyStats.isRecording() ? new AssemblyPhaseEvent() : null;
+
+            if (event != null) {
+                event.begin();
+            }
+            stage.start();
+            try {
+                body.run();
+            } catch (InterruptedException ex) {
+                // another stage failed and stopped the pipeline
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+                stop();
+            } finally {
+                stage.finish();
+                if (event != null && event.shouldCommit()) {
+                    event.file = inputFileName;
+                    event.phase = stage.getName();
+                    event.commit();
+                }
+            }
+        }, "pipeline-" + stage.getName());
+
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    //DESCRIPTION: queues the end-of-input marker for the stage after; once the pipeline is stopped
+    // that stage may be gone and leave the queue full, so the marker is then only queued if there is room
+    //PRECONDITION: called on the stage's thread, from its finally block
+    //POSTCONDITION: end queued (or dropped if stopped), throws InterruptedException if stopped while waiting
+    private <T> void end(PipelineStage stage, BlockingQueue<T> queue, T end) throws InterruptedException {
+        if (stopped) {
+            queue.offer(end);
+        } else {
+            stage.putEnd(queue, end);
+        }
+    }
+
+    //DESCRIPTION: interrupts every stage so none stays blocked on a queue
+    //PRECONDITION: threads created
+    //POSTCONDITION: stages return soon
+    private void stop(){
+        stopped = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    //DESCRIPTION: finds where the last complete line of source[0..length) ends
+    //PRECONDITION: 0 <= length <= source.length
+    //POSTCONDITION: returns index after the last \n, 0 if there is none (\r\n is never split
+    // between chunks, so the Lexer counts lines the same as for the whole file)
+    private static int lastLineEnd(byte[] source, int length){
+        for (int i = length - 1; i >= 0; i--) {
+            if (source[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    //DESCRIPTION: counts line ends of source[0..length) as the Lexer does (\n, \r\n or \r)
+    //PRECONDITION: source[length - 1] is \n (a chunk cut by lastLineEnd)
+    //POSTCONDITION: returns number of lines in the chunk
+    private static int countLines(byte[] source, int length){
+        int lines = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (source[i] == '\n' || (source[i] == '\r' && (i + 1 == length || source[i + 1] != '\n'))) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+
+    // body of a stage thread
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    // line-aligned piece of the input
+    private static final class Chunk {
+        private final byte[] source;
+        private final int length;
+        private final int firstLine;
+
+        private Chunk(byte[] source, int length, int firstLine){
+            this.source = source;
+            this.length = length;
+            this.firstLine = firstLine;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class PrimitiveSymbolTable {
+
+    public static final int NOT_FOUND = -1;
+
+    //PRIVATE VARIABLES
+    // open addressing, linear probing: slots[2*i] = hash, slots[2*i+1] = entry + 1 (0 = empty)
+    private int[] slots;
+    private int mask;
+
+    // entries in insertion order, key bytes (UTF-8) packed one after another
+    private byte[] keys;
+    private int keysLength;
+    private int[] keyStarts;
+    private int[] keyLengths;
+    private int[] values;
+    private boolean[] nonAscii;
+    // String of each entry once one exists (entered as String or asked for by getKey),
+    // so String lookups compare with String.equals instead of char by char
+    private String[] names;
+    private int size;
+
+
+    //DESCRIPTION: creates empty table sized for expected number of symbols
+    //PRECONDITION: expectedSize >= 0
+    //POSTCONDITION: table holds expectedSize symbols before first resize
+    public PrimitiveSymbolTable(int expectedSize){
+        int capacity = 16;
+        while(capacity < expectedSize * 2){
+            capacity *= 2;
+        }
+        slots = new int[capacity * 2];
+        mask = capacity - 1;
+        keys = new byte[Math.max(64, expectedSize * 8)];
+        keyStarts = new int[Math.max(8, expectedSize)];
+        keyLengths = new int[keyStarts.length];
+        values = new int[keyStarts.length];
+        nonAscii = new boolean[keyStarts.length];
+        names = new String[keyStarts.length];
+    }
+
+    //DESCRIPTION: creates empty table for a small program
+    //PRECONDITION: n/a
+    //POSTCONDITION: table empty
+    public PrimitiveSymbolTable(){
+        this(32);
+    }
+
+
+    //DESCRIPTION: looks up value of symbol given as bytes of a buffer (no String needed)
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns value, or NOT_FOUND
+    public int get(byte[] bytes, int start, int end){
+        int slot = find(bytes, start, end, hash(bytes, start, end));
+        return slots[2 * slot + 1] == 0 ? NOT_FOUND : values[slots[2 * slot + 1] - 1];
+    }
+
+    //DESCRIPTION: looks up value of symbol (uses String's cached hash code and
+    // compares chars with stored bytes, no conversion)
+    //PRECONDITION: symbol not null
+    //POSTCONDITION: returns value, or NOT_FOUND
+    public int get(CharSequence symbol){
+        int slot = find(symbol, hash(symbol));
+        return slots[2 * slot + 1] == 0 ? NOT_FOUND : values[slots[2 * slot + 1] - 1];
+    }
+
+    //DESCRIPTION: adds symbol with value if not in table yet
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns true if added, false if symbol was already there (value kept)
+    public boolean put(byte[] bytes, int start, int end, int value){
+        int before = size;
+        getOrAllocate(bytes, start, end, value);
+        return size > before;
+    }
+
+    public boolean put(CharSequence symbol, int value){
+        int before = size;
+        getOrAllocate(symbol, value);
+        return size > before;
+    }
+
+    //DESCRIPTION: changes value of a symbol already in the table
+    //PRECONDITION: symbol not null
+    //POSTCONDITION: returns true if symbol was there (value replaced), false if not (nothing added)
+    public boolean set(CharSequence symbol, int value){
+        int slot = find(symbol, hash(symbol));
+
+        if(slots[2 * slot + 1] == 0){
+            return false;
+        }
+        values[slots[2 * slot + 1] - 1] = value;
+        return true;
+    }
+
+    //DESCRIPTION: one lookup that returns the value of a known symbol, or enters the
+    // symbol with nextVariableAddress; a new entry shows up as size() growing by one
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns value of symbol (nextVariableAddress if it was added)
+    public int getOrAllocate(byte[] bytes, int start, int end, int nextVariableAddress){
+        int hash = hash(bytes, start, end);
+        int slot = find(bytes, start, end, hash);
+
+        if(slots[2 * slot + 1] != 0){
+            return values[slots[2 * slot + 1] - 1];
+        }
+        growKeys(end - start);
+        System.arraycopy(bytes, start, keys, keysLength, end - start);
+        insert(slot, hash, end - start, nextVariableAddress);
+        return nextVariableAddress;
+    }
+
+    public int getOrAllocate(CharSequence symbol, int nextVariableAddress){
+        int hash = hash(symbol);
+        int slot = find(symbol, hash);
+
+        if(slots[2 * slot + 1] != 0){
+            return values[slots[2 * slot + 1] - 1];
+        }
+        byte[] bytes = symbol.toString().getBytes(StandardCharsets.UTF_8);
+        growKeys(bytes.length);
+        System.arraycopy(bytes, 0, keys, keysLength, bytes.length);
+        insert(slot, hash, bytes.length, nextVariableAddress);
+        if(symbol instanceof String){
+            names[size - 1] = (String) symbol;
+        }
+        return nextVariableAddress;
+    }
+
+
+    //GETTER METHODS
+    //DESCRIPTION: getter for number of symbols
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of entries (entries are numbered 0..size()-1 in insertion order)
+    public int size(){
+        return size;
+    }
+
+    //DESCRIPTION: getter for symbol name of entry
+    //PRECONDITION: 0 <= entry < size()
+    //POSTCONDITION: returns String of symbol
+    public String getKey(int entry){
+        if(names[entry] == null){
+            names[entry] = new String(keys, keyStarts[entry], keyLengths[entry], StandardCharsets.UTF_8);
+        }
+        return names[entry];
+    }
+
+    //DESCRIPTION: getter for value of entry
+    //PRECONDITION: 0 <= entry < size()
+    //POSTCONDITION: returns value stored with symbol
+    public int getValue(int entry){
+        return values[entry];
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: probes for key given as bytes
+    //PRECONDITION: hash is hash(bytes, start, end)
+    //POSTCONDITION: returns slot holding key, or the empty slot where it belongs
+    private int find(byte[] bytes, int start, int end, int hash){
+        int slot = hash & mask;
+        int length = end - start;
+
+        while(slots[2 * slot + 1] != 0){
+            int entry = slots[2 * slot + 1] - 1;
+
+            if(slots[2 * slot] == hash && keyLengths[entry] == length
+                    && Arrays.equals(keys, keyStarts[entry], keyStarts[entry] + length, bytes, start, end)){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //DESCRIPTION: probes for key given as chars
+    //PRECONDITION: hash is hash(symbol)
+    //POSTCONDITION: returns slot holding key, or the empty slot where it belongs
+    private int find(CharSequence symbol, int hash){
+        int slot = hash & mask;
+
+        while(slots[2 * slot + 1] != 0){
+            int entry = slots[2 * slot + 1] - 1;
+
+            if(slots[2 * slot] == hash && equalKey(entry, symbol)){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //DESCRIPTION: compares stored key of entry with chars
+    //PRECONDITION: 0 <= entry < size
+    //POSTCONDITION: returns true if same characters
+    private boolean equalKey(int entry, CharSequence symbol){
+        int length = keyLengths[entry];
+
+        if(names[entry] != null || nonAscii[entry]){
+            return getKey(entry).contentEquals(symbol);
+        }
+        if(length != symbol.length()){
+            return false;
+        }
+        int keyStart = keyStarts[entry];
+        for(int i = 0; i < length; i++){
+            if(keys[keyStart + i] != symbol.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //DESCRIPTION: makes room for key bytes at keysLength
+    //PRECONDITION: length >= 0
+    //POSTCONDITION: keys has length free bytes after keysLength
+    private void growKeys(int length){
+        if(keysLength + length > keys.length){
+            keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + length));
+        }
+    }
+
+    //DESCRIPTION: adds entry whose key bytes were just copied to keysLength, fills empty slot
+    //PRECONDITION: slot is empty slot returned by find() for this key
+    //POSTCONDITION: new entry numbered size()-1, table resized if more than half full
+    private void insert(int slot, int hash, int length, int value){
+        if(size == values.length){
+            keyStarts = Arrays.copyOf(keyStarts, size * 2);
+            keyLengths = Arrays.copyOf(keyLengths, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            nonAscii = Arrays.copyOf(nonAscii, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        for(int i = keysLength; i < keysLength + length; i++){
+            nonAscii[size] |= keys[i] < 0;
+        }
+        keyStarts[size] = keysLength;
+        keyLengths[size] = length;
+        values[size] = value;
+        keysLength += length;
+        size++;
+
+        slots[2 * slot] = hash;
+        slots[2 * slot + 1] = size;
+
+        if(size * 2 > mask + 1){
+            rehash();
+        }
+    }
+
+    //DESCRIPTION: doubles slot array and re-inserts all entries (hashes are kept in slots)
+    //PRECONDITION: table more than half full
+    //POSTCONDITION: same entries, twice the slots
+    private void rehash(){
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        mask = (mask << 1) | 1;
+
+        for(int i = 0; i < old.length; i += 2){
+            if(old[i + 1] != 0){
+                int slot = old[i] & mask;
+                while(slots[2 * slot + 1] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                slots[2 * slot] = old[i];
+                slots[2 * slot + 1] = old[i + 1];
+            }
+        }
+    }
+
+    //DESCRIPTION: hash of key bytes, equal to hash(symbol) of the decoded symbol
+    // (String.hashCode over ASCII bytes; non-ASCII keys are decoded first)
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns hash (same symbol gives same hash)
+    private static int hash(byte[] bytes, int start, int end){
+        int hash = 0;
+
+        for(int i = start; i < end; i++){
+            if(bytes[i] < 0){
+                return spread(new String(bytes, start, end - start, StandardCharsets.UTF_8).hashCode());
+            }
+            hash = 31 * hash + bytes[i];
+        }
+        return spread(hash);
+    }
+
+    //DESCRIPTION: hash of symbol; a String's hash code is cached, so repeated
+    // lookups of the same String don't walk its chars again
+    //PRECONDITION: symbol not null
+    //POSTCONDITION: returns hash
+    private static int hash(CharSequence symbol){
+        return spread(symbol instanceof String ? symbol.hashCode() : symbol.toString().hashCode());
+    }
+
+    //DESCRIPTION: scrambles hash before it picks a slot; names like LOOP_1, LOOP_2...
+    // have nearly consecutive hash codes, which would form long linear-probing runs
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns spread hash
+    private static int spread(int hash){
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
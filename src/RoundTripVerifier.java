@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+// --verify: assembles each file (or reads its machine code), disassembles the ROM,
+// assembles that text again and compares the two ROMs word by word. Everything stays in
+// memory, so a corpus goes through at the speed of InMemoryAssembler.
+public class RoundTripVerifier {
+
+    //PRIVATE VARIABLES
+    private HackDisassembler disassembler;
+
+
+    //DESCRIPTION: creates verifier (one per thread, it reuses its text buffer)
+    //PRECONDITION: n/a
+    //POSTCONDITION: ready to verify()
+    public RoundTripVerifier(){
+        disassembler = new HackDisassembler("\n");
+    }
+
+
+    //DESCRIPTION: disassembles rom, reassembles the text and compares
+    //PRECONDITION: rom not null
+    //POSTCONDITION: returns null if the same words came back, else what went wrong
+    public String verify(short[] rom){
+        if(rom.length > HackEmulator.ROM_SIZE){
+            // the assembler refuses such a program, but a .hack file can hold one
+            return "ROM has " + rom.length + " words, more than the " + HackEmulator.ROM_SIZE + " an A-instruction can address";
+        }
+        AssemblyResult result = InMemoryAssembler.assemble(disassembler.disassemble(rom));
+
+        if(!result.isSuccess()){
+            return "disassembly does not assemble, " + result.getDiagnostics().get(0);
+        }
+        short[] again = result.getRom();
+        int word = Arrays.mismatch(rom, again);
+
+        if(word < 0){
+            return null;
+        }
+        if(word >= rom.length || word >= again.length){
+            return "reassembled " + again.length + " words instead of " + rom.length;
+        }
+        return "word " + word + " is " + HackWriter.toBinaryString(rom[word]) + " (" + HackDisassembler.instruction(rom[word])
+                + "), reassembled " + HackWriter.toBinaryString(again[word]);
+    }
+
+    //DESCRIPTION: reads or assembles one file and verifies its ROM
+    //PRECONDITION: file is .asm, .hack or .bin
+    //POSTCONDITION: returns the ROM checked, throws AssemblyException naming the failure,
+    // IOException if the file can't be read
+    public short[] verifyFile(String fileName) throws IOException {
+        short[] rom;
+
+        if(AssemblerOptions.isMachineCode(fileName)){
+            rom = HackReader.read(fileName);
+        }
+        else{
+            AssemblyResult result = InMemoryAssembler.assemble(Files.readAllBytes(Paths.get(fileName)));
+
+            if(!result.isSuccess()){
+                throw new AssemblyException("does not assemble (" + result.getDiagnostics().get(0) + ")");
+            }
+            rom = result.getRom();
+        }
+        String mismatch = verify(rom);
+
+        if(mismatch != null){
+            throw new AssemblyException(mismatch);
+        }
+        return rom;
+    }
+
+
+    //DESCRIPTION: verifies every input (directories and globs expand to their .asm files)
+    //PRECONDITION: options parsed, inputs not empty
+    //POSTCONDITION: prints one status line per file and a summary to out, returns number of files that failed
+    public static int run(AssemblerOptions options, PrintStream out){
+        List<String> files = BatchAssembler.expandInputs(options.getInputs());
+        RoundTripVerifier verifier = new RoundTripVerifier();
+        int failed = 0;
+        long instructions = 0;
+        long start = System.nanoTime();
+
+        for(String file : files){
+            try {
+                int count = verifier.verifyFile(file).length;
+                instructions += count;
+                out.println("OK     " + file + " (" + count + " instructions)");
+            } catch (AssemblyException | IOException ex) {
+                failed++;
+                out.println("FAILED " + file + ": " + ex.getMessage());
+            }
+        }
+
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        out.println(files.size() + " files, " + failed + " failed, " + instructions + " instructions round-tripped in "
+                + elapsed / 1_000_000 + " ms (" + instructions * 1_000_000_000L / elapsed + " instructions/sec)");
+        return failed;
+    }
+}
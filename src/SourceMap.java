@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Source line of every ROM address plus the labels, written next to the .hack file with
+// --source-map (HackProfiler folds cycle counts back onto them). Binary and small:
+//   "HMAP", version, source file name (UTF), address count,
+//   line of each address as a varint delta from the one before (lines only go up),
+//   label count, then name (UTF) and varint address of every label in address order
+public class SourceMap {
+
+    public static final String EXTENSION = ".map";
+
+    private static final int MAGIC = 0x484D4150;
+    private static final int VERSION = 1;
+
+    //PRIVATE VARIABLES
+    private String sourceFile;
+    private int[] lines;
+    private int size;
+    private List<String> labelNames;
+    private List<Integer> labelAddresses;
+
+
+    //DESCRIPTION: creates empty map for a source file
+    //PRECONDITION: sourceFile is the name the .asm was assembled from
+    //POSTCONDITION: map has no addresses or labels
+    public SourceMap(String sourceFile){
+        this.sourceFile = sourceFile;
+        this.lines = new int[1024];
+        this.labelNames = new ArrayList<>();
+        this.labelAddresses = new ArrayList<>();
+    }
+
+
+    //DESCRIPTION: records source line of the next ROM address
+    //PRECONDITION: line >= the line of the address before
+    //POSTCONDITION: address size()-1 maps to line
+    public void add(int line){
+        if(size == lines.length){
+            lines = Arrays.copyOf(lines, size * 2);
+        }
+        lines[size++] = line;
+    }
+
+    //DESCRIPTION: records label
+    //PRECONDITION: address is the label's ROM address
+    //POSTCONDITION: label kept (sorted by address when written)
+    public void addLabel(String name, int address){
+        labelNames.add(name);
+        labelAddresses.add(address);
+    }
+
+    //DESCRIPTION: records every instruction and label of a resolved (and optimized) program
+    //PRECONDITION: program.hasSourceLines(), map is empty
+    //POSTCONDITION: address i maps to the source line of instruction i
+    public void addProgram(InstructionList program){
+        for(int i = 0; i < program.size(); i++){
+            add(program.getSourceLine(i));
+        }
+        for(int i = 0; i < program.getLabelCount(); i++){
+            addLabel(program.getSymbolName(program.getLabelSymbol(i)), program.getLabelAddress(i));
+        }
+    }
+
+    //DESCRIPTION: writes map file
+    //PRECONDITION: all addresses and labels added
+    //POSTCONDITION: file written, throws IOException if it can't be
+    public void write(String fileName) throws IOException {
+        sortLabels();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(sourceFile);
+            writeVarint(out, size);
+            int previous = 0;
+            for(int i = 0; i < size; i++){
+                writeVarint(out, lines[i] - previous);
+                previous = lines[i];
+            }
+            writeVarint(out, labelNames.size());
+            for(int i = 0; i < labelNames.size(); i++){
+                out.writeUTF(labelNames.get(i));
+                writeVarint(out, labelAddresses.get(i));
+            }
+        }
+    }
+
+    //DESCRIPTION: reads map file written by write()
+    //PRECONDITION: file exists
+    //POSTCONDITION: returns map, throws IOException if the file can't be read or isn't a source map
+    public static SourceMap read(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName))))) {
+            if(in.readInt() != MAGIC || in.readUnsignedByte() != VERSION){
+                throw new IOException(fileName + " is not a source map");
+            }
+            SourceMap map = new SourceMap(in.readUTF());
+            int count = readVarint(in);
+            int line = 0;
+
+            map.lines = new int[Math.max(1, count)];
+            for(int i = 0; i < count; i++){
+                line += readVarint(in);
+                map.add(line);
+            }
+            int labels = readVarint(in);
+            for(int i = 0; i < labels; i++){
+                map.addLabel(in.readUTF(), readVarint(in));
+            }
+            return map;
+        }
+    }
+
+
+    //GETTER METHODS
+    public String getSourceFile(){
+        return sourceFile;
+    }
+
+    //DESCRIPTION: getter for number of ROM addresses
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of add() calls
+    public int size(){
+        return size;
+    }
+
+    //DESCRIPTION: getter for source line of ROM address
+    //PRECONDITION: address >= 0
+    //POSTCONDITION: returns line, 0 if the address is past the mapped program
+    public int getLine(int address){
+        return address < size ? lines[address] : 0;
+    }
+
+    public int getLabelCount(){
+        return labelNames.size();
+    }
+
+    //DESCRIPTION: getters for label by index (labels in address order after write() or read())
+    //PRECONDITION: 0 <= index < getLabelCount()
+    //POSTCONDITION: returns name / ROM address
+    public String getLabelName(int index){
+        return labelNames.get(index);
+    }
+
+    public int getLabelAddress(int index){
+        return labelAddresses.get(index);
+    }
+
+    //DESCRIPTION: finds label whose code holds address (last label at or before it)
+    //PRECONDITION: labels in address order
+    //POSTCONDITION: returns label index, -1 if address comes before the first label
+    public int labelAt(int address){
+        int low = 0;
+        int high = labelAddresses.size() - 1;
+        int found = -1;
+
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+
+            if(labelAddresses.get(middle) <= address){
+                found = middle;
+                low = middle + 1;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    //DESCRIPTION: map file name for a .hack, .bin or .asm file
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns name with .map instead of the extension
+    public static String fileName(String programFileName){
+        int dot = programFileName.lastIndexOf('.');
+        int slash = Math.max(programFileName.lastIndexOf('/'), programFileName.lastIndexOf('\\'));
+
+        return (dot > slash ? programFileName.substring(0, dot) : programFileName) + EXTENSION;
+    }
+
+
+    //ALL PRIVATE METHODS
+
+    //DESCRIPTION: orders labels by address, keeping source order for equal addresses
+    //PRECONDITION: n/a
+    //POSTCONDITION: labelNames and labelAddresses sorted together
+    private void sortLabels(){
+        Integer[] order = new Integer[labelNames.size()];
+
+        for(int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Integer.compare(labelAddresses.get(x), labelAddresses.get(y)));
+
+        List<String> names = new ArrayList<>();
+        List<Integer> addresses = new ArrayList<>();
+        for(int i : order){
+            names.add(labelNames.get(i));
+            addresses.add(labelAddresses.get(i));
+        }
+        labelNames = names;
+        labelAddresses = addresses;
+    }
+
+    //DESCRIPTION: writes value 7 bits per byte, low bits first, high bit set on all but the last
+    //PRECONDITION: value >= 0
+    //POSTCONDITION: 1 to 5 bytes written
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7F) != 0){
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    //DESCRIPTION: reads value written by writeVarint()
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns value, throws IOException at end of file
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+
+        for(int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("Bad number in source map");
+    }
+}
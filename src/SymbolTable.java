@@ -1,74 +1,143 @@
-import java.util.HashMap;
+// Symbols of one assembly: a frozen base of the predefined symbols, built once and shared
+// by every table, under a small overlay of the job's own labels and variables. The base is
+// filled while the class initializes and never written after, so any number of threads
+// read it without locking; a new table only allocates its empty overlay.
 public class SymbolTable {
     private static final String INITIAL_VALID_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_.$:";
     private static final String ALL_VALID_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_.$:0123456789";
-    private HashMap<String,Integer> symbolTable;
+    private static final String[] PREDEFINED_NAMES = {
+            "R0", "R1", "R2", "R3", "R4", "R5", "R6", "R7", "R8", "R9", "R10", "R11", "R12", "R13", "R14", "R15",
+            "SCREEN", "KBD", "SP", "LCL", "ARG", "THIS", "THAT"};
+    private static final int[] PREDEFINED_ADDRESSES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16384, 24576, 0, 1, 2, 3, 4};
+    // entered as Strings, so lookups only read it (PrimitiveSymbolTable.getKey() never fills in a name)
+    private static final PrimitiveSymbolTable PREDEFINED = new PrimitiveSymbolTable(PREDEFINED_NAMES.length);
+
+    static {
+        for(int i = 0; i < PREDEFINED_NAMES.length; i++){
+            PREDEFINED.put(PREDEFINED_NAMES[i], PREDEFINED_ADDRESSES[i]);
+        }
+    }
+
+    // labels and variables of this table
+    private PrimitiveSymbolTable symbolTable;
+    // getOrAllocate() calls that found the symbol / entered it (--stats)
+    private long hits;
+    private long misses;
 
 
-    //DESCRIPTION: initializes hashmap with predefined symbols
+    //DESCRIPTION: initializes table holding the predefined symbols (shared base, nothing copied)
     //PRECONDITION: follows symbols/values from book/appendix
-    //POSTCONDITION: all hashmap values have valid address integer
+    //POSTCONDITION: all table values have valid address integer
     public SymbolTable(){
-        symbolTable = new HashMap<>();
-
-        symbolTable.put("R0", 0);
-        symbolTable.put("R1", 1);
-        symbolTable.put("R2", 2);
-        symbolTable.put("R3", 3);
-        symbolTable.put("R4", 4);
-        symbolTable.put("R5", 5);
-        symbolTable.put("R6", 6);
-        symbolTable.put("R7", 7);
-        symbolTable.put("R8", 8);
-        symbolTable.put("R9", 9);
-        symbolTable.put("R10", 10);
-        symbolTable.put("R11", 11);
-        symbolTable.put("R12", 12);
-        symbolTable.put("R13", 13);
-        symbolTable.put("R14", 14);
-        symbolTable.put("R15", 15);
-
-        symbolTable.put("SCREEN", 16384);
-        symbolTable.put("KBD", 24576);
+        symbolTable = new PrimitiveSymbolTable();
     }
 
 
-    //DESCRIPTION: adds new pair of symbol/address to hashmap
-    //PRECONDITION: symbol/address pair not in hashmap (check contains() 1st)
-    //POSTCONDITION: adds pair, returns true if added, false if illegal name
+    //DESCRIPTION: adds new pair of symbol/address to table
+    //PRECONDITION: symbol/address pair not in table (check contains() 1st)
+    //POSTCONDITION: adds pair, returns true if added, false if illegal name or already in table
     public boolean addEntry(String symbol, int address){
-        if(symbolTable.containsKey(symbol)){
+        if(!isValidName(symbol) || PREDEFINED.get(symbol) != PrimitiveSymbolTable.NOT_FOUND){
             return false;
         }
-        else if(isValidName(symbol)){
-            symbolTable.put(symbol,address);
-        }
-        return true;
+        return symbolTable.put(symbol,address);
+    }
+
+    //DESCRIPTION: moves symbol already in table to another address (labels after the optimizer
+    // took instructions out)
+    //PRECONDITION: symbol was entered with addEntry() or getOrAllocate()
+    //POSTCONDITION: returns true if address changed, false if symbol isn't in table or is predefined
+    public boolean setAddress(String symbol, int address){
+        return symbolTable.set(symbol, address);
     }
 
-    //DESCRIPTION: returns boolean of whether hashmap has symbol or not
+    //DESCRIPTION: returns boolean of whether table has symbol or not
     //PRECONDITION: table has been initialized
     //POSTCONDITION: returns boolean if arg is in table or not
     public boolean contains(String symbol){
-        return symbolTable.containsKey(symbol);
+        return getAddress(symbol) != PrimitiveSymbolTable.NOT_FOUND;
     }
 
-    //DESCRIPTION: returns address in hashmap of given symbol
-    //PRECONDITION: symbol is in hashmap (check w/ contains() first)
-    //POSTCONDITION: returns address associated with symbol in hashmap
+    //DESCRIPTION: returns address in table of given symbol (one lookup, no boxing)
+    //PRECONDITION: symbol is in table (check w/ contains() first)
+    //POSTCONDITION: returns address associated with symbol in table, else -1
     public int getAddress(String symbol){
-        if(symbolTable.containsKey(symbol)){
-            return symbolTable.get(symbol);
+        int address = symbolTable.get(symbol);
+
+        return address != PrimitiveSymbolTable.NOT_FOUND ? address : PREDEFINED.get(symbol);
+    }
+
+    //DESCRIPTION: returns address of symbol given as bytes of the input buffer
+    //PRECONDITION: 0 <= start <= end <= bytes.length
+    //POSTCONDITION: returns address associated with symbol, else -1
+    public int getAddress(byte[] bytes, int start, int end){
+        int address = symbolTable.get(bytes, start, end);
+
+        return address != PrimitiveSymbolTable.NOT_FOUND ? address : PREDEFINED.get(bytes, start, end);
+    }
+
+    //DESCRIPTION: replaces contains() + addEntry() + getAddress() with one lookup:
+    // returns address of known symbol, else enters symbol as variable at nextVariableAddress
+    //PRECONDITION: nextVariableAddress is the next free RAM address
+    //POSTCONDITION: returns address (-1 for illegal name, which is not entered);
+    // caller moves to next RAM address when size() grew
+    public int getOrAllocate(String symbol, int nextVariableAddress){
+        if(!isValidName(symbol)){
+            return PrimitiveSymbolTable.NOT_FOUND;
+        }
+        int address = symbolTable.get(symbol);
+
+        if(address == PrimitiveSymbolTable.NOT_FOUND){
+            address = PREDEFINED.get(symbol);
+        }
+        if(address == PrimitiveSymbolTable.NOT_FOUND){
+            address = symbolTable.getOrAllocate(symbol, nextVariableAddress);
+            misses++;
         }
         else{
-            return -1;
+            hits++;
         }
+        return address;
+    }
+
+    //DESCRIPTION: getters for getOrAllocate() calls that found the symbol and that entered a variable
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns counts since the table was created
+    public long getHits(){
+        return hits;
+    }
+
+    public long getMisses(){
+        return misses;
+    }
+
+    //DESCRIPTION: returns number of symbols in table (predefined ones included)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns count of entries
+    public int size(){
+        return PREDEFINED.size() + symbolTable.size();
+    }
+
+    //DESCRIPTION: checks if symbol is one of the predefined ones (R0-R15, SCREEN, KBD, SP, LCL, ARG, THIS, THAT)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns true if every new table already holds symbol
+    public static boolean isPredefined(String symbol){
+        return PREDEFINED.get(symbol) != PrimitiveSymbolTable.NOT_FOUND;
+    }
+
+    //DESCRIPTION: address of a predefined symbol without building a table (e.g. memory map of the emulator)
+    //PRECONDITION: n/a
+    //POSTCONDITION: returns address, or -1 if symbol isn't predefined
+    public static int getPredefinedAddress(String symbol){
+        return PREDEFINED.get(symbol);
     }
 
     //DESCRIPTION: checks validity of identifiers for assembly code symbols
     //PRECONDITION: start with letters or “_.$:” only, numbers allowed after
     //POSTCONDITION: returns true if valid identifier, false otherwise
-    private boolean isValidName(String symbol){
+    public static boolean isValidName(String symbol){
         if (symbol == null || symbol.isEmpty()) {
             return false;
         }